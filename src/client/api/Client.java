@@ -5,10 +5,10 @@ import mapreduce.client.Job;
 import ecs.KeyHashRange;
 import ecs.Metadata;
 import ecs.NodeInfo;
-import management.MessageSerializer;
 import mapreduce.common.ApplicationID;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import protocol.FrameDecoder;
 import protocol.kv.*;
 import protocol.kv.IMessage.Status;
 import util.HashUtils;
@@ -16,24 +16,51 @@ import util.LogUtils;
 import util.StringUtils;
 import util.Validate;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
-
-import static protocol.Constants.MAX_BUFFER_LENGTH;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Client implements IClient {
     public static final String CLIENT_LOG = "kvClient";
     private static Logger LOG = LogManager.getLogger(Client.CLIENT_LOG);
+
+    /**
+     * number of times an asynchronous request is sent before its last response is taken as it is
+     */
+    private static final int MAX_ASYNC_ATTEMPTS = 8;
+
+    /**
+     * pause before sending an asynchronous request again to a stopped or write-locked server, doubled every attempt
+     */
+    private static final long ASYNC_RETRY_DELAY_MS = 50;
+
+    /**
+     * handle the responses to asynchronous requests, so that rerouting, which may connect to another server, does
+     * not hold up the threads reading the responses
+     */
+    private static final ExecutorService ASYNC_WORKERS = Executors.newCachedThreadPool(daemonThreads("client-async-"));
+
+    /**
+     * delays the retries of asynchronous requests
+     */
+    private static final ScheduledExecutorService ASYNC_RETRY_TIMER =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("client-retry-"));
+
     /**
      * The client socket
      */
@@ -45,17 +72,22 @@ public class Client implements IClient {
     private BufferedOutputStream bos;
 
     /**
-     * the input stream for receiving data to server
+     * splits the data received from the server into messages. Created for every connection
      */
-    private BufferedInputStream bis;
+    private FrameDecoder decoder;
 
     private String address;
     private int port;
 
     /**
-     * List of the storage servers with their addresses
+     * protocol to talk to the servers in. Servers also serve the {@link WireProtocol#SERIALIZED} protocol of older clients
+     */
+    private WireProtocol protocol = WireProtocol.BINARY;
+
+    /**
+     * List of the storage servers with their addresses. Also updated by the responses to asynchronous requests
      */
-    private Metadata metadata;
+    private volatile Metadata metadata;
 
     /**
      * Info of the server the client is currently connected to
@@ -64,6 +96,11 @@ public class Client implements IClient {
 
     private Driver driver;
 
+    /**
+     * connections of the asynchronous API, one per server by "host:port"
+     */
+    private final Map<String, PipelinedConnection> pipelines = new HashMap<>();
+
     /**
      * Creates a new client and opens a client socket to immediately connect to the
      * server identified by the parameters
@@ -94,6 +131,7 @@ public class Client implements IClient {
         try {
             socket = new Socket();
             socket.connect(new InetSocketAddress(address, port), 5000);
+            decoder = new FrameDecoder();
             if (connectedNode == null && metadata == null)
                 requestMetadata();
         } catch (UnknownHostException uhe) {
@@ -106,8 +144,20 @@ public class Client implements IClient {
     }
 
 
+    /**
+     * Disconnects from the server and closes the connections of the asynchronous API. Their requests in flight fail
+     */
     @Override
     public void disconnect() {
+        closeSocket();
+        synchronized (pipelines) {
+            for (PipelinedConnection pipeline : pipelines.values())
+                pipeline.close();
+            pipelines.clear();
+        }
+    }
+
+    private void closeSocket() {
         try {
             if (socket != null && !socket.isClosed() && socket.isConnected()) {
                 socket.shutdownOutput();
@@ -115,13 +165,13 @@ public class Client implements IClient {
             }
             if (bos != null)
                 bos.close();
-            if (bis != null)
-                bis.close();
+            if (decoder != null)
+                decoder.release();
             if (socket != null) {
                 socket.close();
             }
             bos = null;
-            bis = null;
+            decoder = null;
             socket = null;
         } catch (IOException e) {
             LogUtils.printLogError(LOG, e, "Connection is already closed.");
@@ -152,37 +202,37 @@ public class Client implements IClient {
     }
 
     /**
-     * Receives a KV-Message
+     * Receives a KV-Message. Blocks until the message has arrived completely
      *
-     * @return the received message
-     * @throws IOException
+     * @return the bytes of the received message, null if the connection is closed or broken
      */
     @Override
     public byte[] receive() {
-        byte[] messageBuffer = new byte[MAX_BUFFER_LENGTH];
-        int justRead = 0;
-        while (true) {
-            try {
-                bis = new BufferedInputStream(socket.getInputStream());
-                justRead = bis.read(messageBuffer);
-
-                if (justRead < 0)
-                    return null;
-
-                byte[] res = Arrays.copyOfRange(messageBuffer, 0, justRead);
-
-                LOG.info("RECEIVE \t<"
-                        + socket.getInetAddress().getHostAddress() + ":"
-                        + socket.getPort() + ">: '"
-                        + res.length + " bytes'");
+        try {
+            byte[] res = decoder.readFrame(socket.getInputStream());
 
-                return res;
+            LOG.info("RECEIVE \t<"
+                    + socket.getInetAddress().getHostAddress() + ":"
+                    + socket.getPort() + ">: '"
+                    + res.length + " bytes'");
+            return res;
+        } catch (IOException e) {
+            LOG.error(e);
+            return null;
+        }
+    }
 
-            } catch (EOFException e) {
-                LOG.error("CATCH EOFException", e);
-            } catch (IOException e) {
-                LOG.error(e);
-            }
+    /**
+     * Receives a KV-Message and decodes it without copying its bytes
+     *
+     * @return the received message, null if the connection is closed or broken
+     */
+    private IMessage receiveMessage() {
+        try {
+            return decoder.read(socket.getInputStream());
+        } catch (IOException e) {
+            LOG.error(e);
+            return null;
         }
     }
 
@@ -206,12 +256,12 @@ public class Client implements IClient {
      * Reconnects to the correct server for the key on server miss
      */
     private void reroute() throws IOException {
-        if (socket == null && bos == null && bis == null) {
+        if (socket == null && bos == null) {
             LOG.warn("Client is disconnected");
             return;
         }
 
-        disconnect();
+        closeSocket();
         this.address = connectedNode.getHost();
         this.port = connectedNode.getPort();
         LOG.info("Server isn't responsible for the key. RECONNECTING to server " + address + ":" + port);
@@ -253,6 +303,145 @@ public class Client implements IClient {
         }
     }
 
+    /**
+     * Retrieves the value for a given key without waiting for the response. Many requests can be in flight at the
+     * same time over a single connection per server, independent of the connection of the synchronous API.
+     * Requests in flight at the same time are not ordered, e.g. a GET sent before the response to a PUT of the same
+     * key arrived may not see the new value
+     *
+     * @param key the key that identifies the value
+     * @return future of the server response, {@link Status#GET_ERROR} if the request failed
+     */
+    public CompletableFuture<IMessage> getAsync(String key) {
+        return getAsync(new Message(Status.GET, new K(key)));
+    }
+
+    public CompletableFuture<IMessage> getAsync(IMessage message) {
+        return submitAsync(message, message.hasMRToken())
+                .exceptionally(e -> {
+                    LOG.error("GET failed", e);
+                    return new Message(Status.GET_ERROR);
+                });
+    }
+
+    /**
+     * Inserts, updates or deletes a key-value pair without waiting for the response, like {@link #getAsync(String)}
+     *
+     * @param key   the key that identifies the given value
+     * @param value the value, the key is deleted if it is null
+     * @return future of the server response, {@link Status#PUT_ERROR} or {@link Status#DELETE_ERROR} if the request
+     * failed
+     */
+    public CompletableFuture<IMessage> putAsync(String key, String value) {
+        value = StringUtils.isBlank(value);
+        return putAsync(Message.createPUTMessage(key, value));
+    }
+
+    public CompletableFuture<IMessage> putAsync(IMessage message) {
+        return submitAsync(message, true)
+                .exceptionally(e -> {
+                    LOG.error("PUT failed", e);
+                    return new Message((message.getV() == null) ? Status.DELETE_ERROR : Status.PUT_ERROR);
+                });
+    }
+
+    private CompletableFuture<IMessage> submitAsync(IMessage message, boolean write) {
+        return submitAsync(message, write, 1);
+    }
+
+    /**
+     * Sends a request over the connection to the server responsible for its key. Sends it again to another server if
+     * the response tells that the server is not responsible, and to the same server after a pause if the server is
+     * stopped or write-locked, e.g. while it moves data. After {@value #MAX_ASYNC_ATTEMPTS} attempts the last response
+     * is taken as it is. The responses are handled by the {@link #ASYNC_WORKERS}
+     *
+     * @param message the request
+     * @param write   true to send the request to the coordinator of the key, false to any server holding it
+     * @param attempt number of the attempt, starting at 1
+     * @return future of the final server response
+     */
+    private CompletableFuture<IMessage> submitAsync(IMessage message, boolean write, int attempt) {
+        PipelinedConnection pipeline;
+        try {
+            pipeline = getPipeline(selectAsyncServer(message.getKeyHashed(), write));
+        } catch (IOException e) {
+            CompletableFuture<IMessage> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return pipeline.submit(message).thenComposeAsync(response -> {
+            Status status = response.getStatus();
+            if (attempt >= MAX_ASYNC_ATTEMPTS)
+                return CompletableFuture.completedFuture(response);
+            if (status == Status.SERVER_NOT_RESPONSIBLE) {
+                try {
+                    updateMetadata(response.getMetadata());
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                return submitAsync(message, write, attempt + 1);
+            }
+            if (status == Status.SERVER_STOPPED || status == Status.SERVER_WRITE_LOCK) {
+                LOG.info("Server responded " + status + ". Retrying in " + getAsyncRetryDelay(attempt) + " ms");
+                return delay(getAsyncRetryDelay(attempt))
+                        .thenComposeAsync(ignored -> submitAsync(message, write, attempt + 1), ASYNC_WORKERS);
+            }
+            return CompletableFuture.completedFuture(response);
+        }, ASYNC_WORKERS);
+    }
+
+    private static long getAsyncRetryDelay(int attempt) {
+        return ASYNC_RETRY_DELAY_MS << (attempt - 1);
+    }
+
+    private static CompletableFuture<Void> delay(long millis) {
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        ASYNC_RETRY_TIMER.schedule(() -> delayed.complete(null), millis, TimeUnit.MILLISECONDS);
+        return delayed;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private NodeInfo selectAsyncServer(String keyHashed, boolean write) throws IOException {
+        Metadata metadata = this.metadata;
+        if (metadata == null)
+            return connectedNode;
+        NodeInfo node = write ? metadata.getCoordinator(keyHashed) : metadata.getNodeToReadFrom(keyHashed);
+        if (node == null)
+            throw LogUtils.printLogError(LOG, new IOException(), "No server found responsible for key can't route request.");
+        return node;
+    }
+
+    /**
+     * @return the open connection of the asynchronous API to the server, connected now if there is none. Connecting
+     * does not hold the lock of {@link #pipelines}, so that requests to other servers are not held up by it
+     */
+    private PipelinedConnection getPipeline(NodeInfo node) throws IOException {
+        String key = node.getHost() + ":" + node.getPort();
+        synchronized (pipelines) {
+            PipelinedConnection pipeline = pipelines.get(key);
+            if (pipeline != null && pipeline.isOpen())
+                return pipeline;
+        }
+        PipelinedConnection connected = new PipelinedConnection(node.getHost(), node.getPort(), protocol);
+        synchronized (pipelines) {
+            PipelinedConnection pipeline = pipelines.get(key);
+            if (pipeline != null && pipeline.isOpen()) {
+                connected.close();
+                return pipeline;
+            }
+            pipelines.put(key, connected);
+            return connected;
+        }
+    }
+
     private void selectWriteServer(String keyHashed) throws IOException {
         if (checkBeforeSelectingServer(keyHashed)) return;
 
@@ -294,6 +483,14 @@ public class Client implements IClient {
         this.metadata = metadata;
     }
 
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(WireProtocol protocol) {
+        this.protocol = protocol;
+    }
+
     /**
      * Handles retrying an operation if it targeted the wrong server
      *
@@ -340,8 +537,8 @@ public class Client implements IClient {
      * @throws IOException
      */
     private IMessage submit(IMessage message) throws IOException {
-        send(MessageSerializer.serialize(message));
-        IMessage response = MessageSerializer.deserialize(receive());
+        send(protocol.encode(message));
+        IMessage response = receiveMessage();
         if (response == null)
             LOG.info("Received from server: null");
         else
@@ -368,8 +565,8 @@ public class Client implements IClient {
     public boolean requestMetadata() {
         try {
             IMessage toSend = new Message(Status.GET_METADATA);
-            send(MessageSerializer.serialize(toSend));
-            IMessage resp = MessageSerializer.deserialize(receive());
+            send(protocol.encode(toSend));
+            IMessage resp = receiveMessage();
             if (!resp.getStatus().equals(Status.METADATA)) {
                 LOG.warn("Couldn't get METADATA. Server responses " + resp.getStatus());
                 return false;
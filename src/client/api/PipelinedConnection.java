@@ -0,0 +1,155 @@
+package client.api;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import protocol.FrameDecoder;
+import protocol.kv.IMessage;
+import protocol.kv.WireProtocol;
+import util.ConnectionExecutor;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection of the asynchronous API of {@link Client} to one server, which lets many requests be in flight at the
+ * same time. Every request gets an id that the server copies into its response, so that responses are matched to
+ * their requests in whatever order they arrive.
+ * Requests are written by the threads submitting them, responses are read by a handler of the connection, which
+ * completes the futures of the requests. If the connection breaks, the futures of all requests in flight fail.
+ */
+class PipelinedConnection implements Runnable {
+    private static Logger LOG = LogManager.getLogger(Client.CLIENT_LOG);
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final WireProtocol protocol;
+    private final FrameDecoder decoder;
+
+    /**
+     * futures of the requests sent but not answered yet, by request id
+     */
+    private final Map<Integer, CompletableFuture<IMessage>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger lastRequestId = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * Connects to a server and starts reading its responses
+     *
+     * @param host     host of the server
+     * @param port     service port of the server
+     * @param protocol protocol to send the requests in
+     * @throws IOException if the server cannot be reached
+     */
+    PipelinedConnection(String host, int port, WireProtocol protocol) throws IOException {
+        this.protocol = protocol;
+        this.decoder = new FrameDecoder(protocol);
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), 5000);
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        ConnectionExecutor.executeInternal(this);
+    }
+
+    /**
+     * Sends a request without waiting for the response. Sets the request id of the message
+     *
+     * @param message the request
+     * @return future of the response, failed if the connection breaks before the response arrived
+     */
+    CompletableFuture<IMessage> submit(IMessage message) {
+        CompletableFuture<IMessage> response = new CompletableFuture<>();
+        int requestId = nextRequestId();
+        inFlight.put(requestId, response);
+        if (closed) {
+            inFlight.remove(requestId);
+            response.completeExceptionally(new IOException("Connection is closed"));
+            return response;
+        }
+
+        message.setRequestId(requestId);
+        byte[] toSend = protocol.encode(message);
+        try {
+            synchronized (out) {
+                out.write(toSend);
+                out.flush();
+            }
+            LOG.debug("SEND request " + requestId + " \t<" + socket.getInetAddress().getHostAddress() + ":"
+                    + socket.getPort() + ">: '" + toSend.length + " bytes'");
+        } catch (IOException e) {
+            LOG.error(e);
+            close(e);
+        }
+        return response;
+    }
+
+    /**
+     * Reads the responses until the connection is closed
+     */
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                IMessage response = decoder.read(socket.getInputStream());
+                CompletableFuture<IMessage> request = inFlight.remove(response.getRequestId());
+                if (request == null) {
+                    LOG.warn("Dropping response to unknown request " + response.getRequestId() + ": " + response);
+                    continue;
+                }
+                request.complete(response);
+            }
+        } catch (IOException e) {
+            if (!closed)
+                LOG.error("Error! Connection lost!", e);
+            close(e);
+        } finally {
+            decoder.release();
+        }
+    }
+
+    /**
+     * @return false once the connection is closed or broken
+     */
+    boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Closes the connection. Requests still in flight fail
+     */
+    void close() {
+        close(new IOException("Connection closed by the client"));
+    }
+
+    private void close(IOException cause) {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.error("Connection is already closed.", e);
+        }
+        for (Integer requestId : inFlight.keySet()) {
+            CompletableFuture<IMessage> request = inFlight.remove(requestId);
+            if (request != null)
+                request.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * @return a positive id, as 0 marks requests of clients that do not pipeline
+     */
+    private int nextRequestId() {
+        int requestId;
+        do {
+            requestId = lastRequestId.incrementAndGet() & Integer.MAX_VALUE;
+        } while (requestId == 0);
+        return requestId;
+    }
+}
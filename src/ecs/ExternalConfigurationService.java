@@ -2,6 +2,8 @@ package ecs;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import server.storage.StorageConfig;
+import server.storage.stats.StorageStats;
 import util.Validate;
 
 import java.io.IOException;
@@ -54,6 +56,11 @@ public class ExternalConfigurationService implements IECS {
 
     @Override
     public void initService(int numberOfNodes, int cacheSize, String displacementStrategy) {
+        initService(numberOfNodes, cacheSize, displacementStrategy, new StorageConfig());
+    }
+
+    @Override
+    public void initService(int numberOfNodes, int cacheSize, String displacementStrategy, StorageConfig storageConfig) {
         if (numberOfNodes > serverPool.size()) {
             LOG.warn("Number of available servers is less than chosen to initialize. Starting all available servers");
             numberOfNodes = this.serverPool.size();
@@ -71,7 +78,7 @@ public class ExternalConfigurationService implements IECS {
             kvServer.launch(launched -> {
                 if (launched) {
                     LOG.debug(String.format("Server %s:%d launched with admin port %d", kvServer.getHost(), kvServer.getServicePort(), kvServer.getAdminPort()));
-                    kvServer.init(chord.getMetadata(), cacheSize, displacementStrategy);
+                    kvServer.init(chord.getMetadata(), cacheSize, displacementStrategy, storageConfig);
                 } else {
                     LOG.error("Couldn't initialize server " + kvServer.getServerId() + ", bringing it back to server pool");
                     putBackToPool(kvServer);
@@ -206,6 +213,11 @@ public class ExternalConfigurationService implements IECS {
 
     @Override
     public void addNode(int cacheSize, String displacementStrategy) {
+        addNode(cacheSize, displacementStrategy, new StorageConfig());
+    }
+
+    @Override
+    public void addNode(int cacheSize, String displacementStrategy, StorageConfig storageConfig) {
         int n = ThreadLocalRandom.current().nextInt(this.serverPool.size());
         KVServer newNode = this.serverPool.get(n);
 
@@ -215,7 +227,7 @@ public class ExternalConfigurationService implements IECS {
 
         newNode.launch(launched -> {
             if (launched) {
-                boolean done = newNode.init(chord.getMetadata(), cacheSize, displacementStrategy);
+                boolean done = newNode.init(chord.getMetadata(), cacheSize, displacementStrategy, storageConfig);
                 Validate.isTrue(done, "Init failed!");
 
                 done = newNode.startServer();
@@ -250,6 +262,14 @@ public class ExternalConfigurationService implements IECS {
         broadcastMetadata();
     }
 
+    @Override
+    public Map<String, StorageStats> getStats() {
+        Map<String, StorageStats> stats = new LinkedHashMap<>();
+        for (KVServer kvServer : chord.nodes())
+            stats.put(kvServer.getServerId(), kvServer.getStats());
+        return stats;
+    }
+
     private KeyHashRange getWriteRange(KVServer node) {
         return chord.getMetadata().getCoordinator(node.getHashKey()).getWriteRange();
     }
@@ -278,7 +298,7 @@ public class ExternalConfigurationService implements IECS {
         broadcastMetadata();
 
         //TODO: Try to restart failed server and add it instead
-        addNode(failedNode.getCacheSize(), failedNode.getDisplacementStrategy());
+        addNode(failedNode.getCacheSize(), failedNode.getDisplacementStrategy(), failedNode.getStorageConfig());
         return true;
     }
 
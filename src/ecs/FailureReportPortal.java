@@ -2,6 +2,7 @@ package ecs;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import util.ConnectionExecutor;
 
 import java.io.*;
 import java.net.BindException;
@@ -74,7 +75,7 @@ public class FailureReportPortal implements Runnable {
                 Socket peer = reportSocket.accept();
                 ReporterConnection failureConnection = new ReporterConnection(this, peer, ecs);
                 connectionTable.add(failureConnection);
-                new Thread(failureConnection).start();
+                ConnectionExecutor.executeInternal(failureConnection);
             }
         } catch (IOException ioe) {
             LOG.warn("Failure report portal is closed!");
@@ -1,8 +1,11 @@
 package ecs;
 
+import server.storage.StorageConfig;
+import server.storage.stats.StorageStats;
 import server.storage.cache.CacheDisplacementStrategy;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Interface the External Configuration Service provides to the ECS Client
@@ -19,6 +22,17 @@ public interface IECS {
 	 * @throws Exception
 	 */
 	void initService (int numberOfNodes, int cacheSize, String displacementStrategy) throws Exception;
+
+	/**
+	 * Starts up the storage service on a number of servers and establishes connection with them
+	 *
+	 * @param numberOfNodes the number of servers that are started up
+	 * @param cacheSize the cache loadedDataSize the servers are started with
+	 * @param displacementStrategy the strategy according to which the servers manage their cache
+	 * @param storageConfig the settings according to which the servers keep their data on disk
+	 * @throws Exception
+	 */
+	void initService (int numberOfNodes, int cacheSize, String displacementStrategy, StorageConfig storageConfig) throws Exception;
 	
 	/**
 	 * Starts the storage service on all connected servers
@@ -44,9 +58,27 @@ public interface IECS {
 	 * @throws IOException
 	 */
 	void addNode(int cacheSize, String displacementStrategy) throws InterruptedException, IOException;
+
+	/**
+	 * Adds a storage server to the storage service
+	 *
+	 * @param cacheSize the cache loadedDataSize the server is started with
+	 * @param displacementStrategy the strategy according to which the server manages its cache
+	 * @param storageConfig the settings according to which the server keeps its data on disk
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	void addNode(int cacheSize, String displacementStrategy, StorageConfig storageConfig) throws InterruptedException, IOException;
 	
 	/**
 	 * Removes an arbitrary node from the storage service
 	 */
 	void removeNode();
+
+	/**
+	 * Polls the cache and storage statistics of all active servers
+	 *
+	 * @return the statistics by server id, null for servers that could not provide them
+	 */
+	Map<String, StorageStats> getStats();
 }
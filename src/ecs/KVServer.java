@@ -5,6 +5,10 @@ import management.ConfigStatus;
 import management.MessageSerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import protocol.FrameDecoder;
+import protocol.kv.WireProtocol;
+import server.storage.StorageConfig;
+import server.storage.stats.StorageStats;
 import util.FileUtils;
 import util.HashUtils;
 
@@ -12,12 +16,9 @@ import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
-import static protocol.Constants.MAX_KV_MESSAGE_LENGTH;
-
 /**
  * Handles connection from ECS to one key-value storage server
  */
@@ -29,14 +30,19 @@ public class KVServer implements Comparable<KVServer> {
     private String hashKey;
     private int cacheSize;
     private String displacementStrategy;
+    private StorageConfig storageConfig = new StorageConfig();
 
     private String serverId;
     private int servicePort;
     private InetSocketAddress address;
     private Socket socket;
-    private BufferedInputStream bis;
     private BufferedOutputStream bos;
 
+    /**
+     * splits the received bytes into messages
+     */
+    private final FrameDecoder decoder = new FrameDecoder(WireProtocol.SERIALIZED);
+
     private String[] sshCMD;
     private boolean launched = false;
 
@@ -146,30 +152,26 @@ public class KVServer implements Comparable<KVServer> {
      * @throws IOException
      */
     private ConfigMessage receive() throws IOException {
-        byte[] messageBuffer = new byte[MAX_KV_MESSAGE_LENGTH];
-        while (true) {
-            try {
-                bis = new BufferedInputStream(socket.getInputStream());
-                int justRead = bis.read(messageBuffer);
-                if (justRead < 0)
-                    return null;
-                ConfigMessage message = MessageSerializer.deserialize(Arrays.copyOfRange(messageBuffer, 0, justRead));
-
-                LOG.info("RECEIVE \t<"
-                        + socket.getInetAddress().getHostAddress() + ":"
-                        + socket.getPort() + ">: '"
-                        + message.toString().trim() + "'");
-                return message;
-            } catch (EOFException e) {
-                LOG.error("CATCH EOFException", e);
-            }
+        ConfigMessage message;
+        try {
+            message = decoder.read(socket.getInputStream());
+        } catch (EOFException e) {
+            LOG.info(e.getMessage());
+            return null;
         }
+
+        LOG.info("RECEIVE \t<"
+                + socket.getInetAddress().getHostAddress() + ":"
+                + socket.getPort() + ">: '"
+                + message.toString().trim() + "'");
+        return message;
     }
 
-    boolean init(Metadata metadata, int cacheSize, String strategy) {
+    boolean init(Metadata metadata, int cacheSize, String strategy, StorageConfig storageConfig) {
         this.cacheSize = cacheSize;
         this.displacementStrategy = strategy;
-        ConfigMessage msg = new ConfigMessage(ConfigStatus.INIT, cacheSize, strategy.toUpperCase(), metadata);
+        this.storageConfig = storageConfig;
+        ConfigMessage msg = new ConfigMessage(ConfigStatus.INIT, cacheSize, strategy.toUpperCase(), storageConfig, metadata);
         return sendAndExpect(msg, ConfigStatus.INIT_SUCCESS);
     }
 
@@ -198,7 +200,7 @@ public class KVServer implements Comparable<KVServer> {
         return sendAndExpect(msg, ConfigStatus.UNLOCK_WRITE_SUCCESS);
     }
 
-    boolean moveData(KeyHashRange range, KVServer target) {
+    synchronized boolean moveData(KeyHashRange range, KVServer target) {
         NodeInfo meta = new NodeInfo(target.getServerId(), target.getHost(), target.getServicePort(), range);
         ConfigMessage msg = new ConfigMessage(ConfigStatus.MOVE_DATA, meta);
         boolean success = false;
@@ -217,6 +219,25 @@ public class KVServer implements Comparable<KVServer> {
         return sendAndExpect(msg, ConfigStatus.UPDATE_METADATA_SUCCESS);
     }
 
+    /**
+     * Polls the statistics of the cache and the storage of the server. Like {@link #sendAndExpect}, the request and its
+     * response are exchanged holding the lock of this object, so that a poll never takes the response to a command
+     *
+     * @return the statistics or null if the server could not provide them
+     */
+    synchronized StorageStats getStats() {
+        try {
+            send(new ConfigMessage(ConfigStatus.STATS));
+            ConfigMessage response = receive();
+            if (response == null || !response.getStatus().equals(ConfigStatus.STATS_SUCCESS))
+                return null;
+            return response.getStats();
+        } catch (IOException e) {
+            LOG.error(e);
+            return null;
+        }
+    }
+
     /**
      * Sends a ConfigMessage and checks if the server response matches an expected response
      *
@@ -225,7 +246,7 @@ public class KVServer implements Comparable<KVServer> {
      * @return true if server response matches the expected one
      * @throws IOException
      */
-    private boolean sendAndExpect(ConfigMessage toSend, ConfigStatus expected) {
+    private synchronized boolean sendAndExpect(ConfigMessage toSend, ConfigStatus expected) {
         try {
             send(toSend);
             ConfigMessage response = receive();
@@ -258,6 +279,10 @@ public class KVServer implements Comparable<KVServer> {
         return displacementStrategy;
     }
 
+    public StorageConfig getStorageConfig() {
+        return storageConfig;
+    }
+
     public boolean isLaunched() {
         return launched;
     }
@@ -289,14 +314,13 @@ public class KVServer implements Comparable<KVServer> {
         try {
             socket.close();
             bos.close();
-            bis.close();
+            decoder.release();
         } catch (IOException e) {
             LOG.error("Couldn't close socket or streams");
             throw e;
         }
         socket = null;
         bos = null;
-        bis = null;
     }
 
 
@@ -5,16 +5,15 @@ import management.MessageSerializer;
 import management.ReportStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import protocol.FrameDecoder;
+import protocol.kv.WireProtocol;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Arrays;
 
 import static ecs.FailureReportPortal.FAILURE_LOG;
-import static protocol.Constants.MAX_KV_MESSAGE_LENGTH;
 
 /**
  * Responsible for receiving failure reports from servers in the storage service
@@ -30,9 +29,13 @@ public class ReporterConnection implements Runnable {
     private Socket serverSocket;
 
     private ExternalConfigurationService ecs;
-    private BufferedInputStream bis;
     private BufferedOutputStream bos;
 
+    /**
+     * splits the received bytes into messages
+     */
+    private final FrameDecoder decoder = new FrameDecoder(WireProtocol.SERIALIZED);
+
     public ReporterConnection(FailureReportPortal manager, Socket serverSocket, ExternalConfigurationService ecs) {
         this.manager = manager;
         this.serverSocket = serverSocket;
@@ -79,15 +82,13 @@ public class ReporterConnection implements Runnable {
      */
     public void close() throws IOException {
         boolean success = manager.getConnectionTable().remove(this);
-        if (bis != null)
-            bis.close();
         if (bos != null)
             bos.close();
         if (serverSocket != null) {
             LOG.warn("remove success=" + success + ". Closing connection to " + serverSocket.getInetAddress());
             serverSocket.close();
         }
-        bis = null;
+        decoder.release();
         bos = null;
         serverSocket = null;
     }
@@ -140,24 +141,18 @@ public class ReporterConnection implements Runnable {
      * @throws IOException
      */
     private FailureReportMessage poll() throws IOException {
-        byte[] messageBuffer = new byte[MAX_KV_MESSAGE_LENGTH];
-        while (true) {
-            try {
-                bis = new BufferedInputStream(serverSocket.getInputStream());
-                int justRead = bis.read(messageBuffer);
-                if (justRead < 0)
-                    return null;
-
-                FailureReportMessage message = MessageSerializer.deserialize(Arrays.copyOfRange(messageBuffer, 0, justRead));
-
-                LOG.info("RECEIVE \t<"
-                        + serverSocket.getInetAddress().getHostAddress() + ":"
-                        + serverSocket.getPort() + ">: '"
-                        + message.toString().trim() + "'");
-                return message;
-            } catch (EOFException e) {
-                LOG.error("CATCH EOFException", e);
-            }
+        FailureReportMessage message;
+        try {
+            message = decoder.read(serverSocket.getInputStream());
+        } catch (EOFException e) {
+            LOG.info(e.getMessage());
+            return null;
         }
+
+        LOG.info("RECEIVE \t<"
+                + serverSocket.getInetAddress().getHostAddress() + ":"
+                + serverSocket.getPort() + ">: '"
+                + message.toString().trim() + "'");
+        return message;
     }
 }
@@ -7,6 +7,8 @@ import ecs.ExternalConfigurationService;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import server.storage.StorageConfig;
+import server.storage.stats.StorageStats;
 import util.StringUtils;
 
 import static util.FileUtils.SEP;
@@ -21,6 +23,7 @@ public class ECSApplication {
     private static final String SHUTDOWN = "shutdown";
     private static final String ADD = "add";
     private static final String REMOVE = "remove";
+    private static final String STATS = "stats";
     private static final String HELP = "help";
     private static final String QUIT = "quit";
 
@@ -68,6 +71,9 @@ public class ECSApplication {
                 case REMOVE:
                     handleRemoveNode();
                     break;
+                case STATS:
+                    handleStats(cmdComponents);
+                    break;
                 case HELP:
                     printHelp();
                     break;
@@ -101,8 +107,12 @@ public class ECSApplication {
         if (!isValidCacheSize(cmdArgs[0]) || !isValidDisplacementStrategy(cmdArgs[1])) {
             return;
         }
+        StorageConfig storageConfig = parseStorageConfig(Arrays.copyOfRange(cmdArgs, 2, cmdArgs.length));
+        if (storageConfig == null) {
+            return;
+        }
         try {
-            ecs.addNode(Integer.parseInt(cmdArgs[0]), cmdArgs[1]);
+            ecs.addNode(Integer.parseInt(cmdArgs[0]), cmdArgs[1], storageConfig);
             print("Add node successfully! The ring topology currently has " + ecs.getChord().size() + " nodes");
         } catch (RuntimeException e) {
             LOG.error(e);
@@ -141,11 +151,15 @@ public class ECSApplication {
         if (!isValidCacheSize(cmdArgs[1]) || !isValidDisplacementStrategy(cmdArgs[2])) {
             return;
         }
+        StorageConfig storageConfig = parseStorageConfig(Arrays.copyOfRange(cmdArgs, 3, cmdArgs.length));
+        if (storageConfig == null) {
+            return;
+        }
         if (ecs.isRingUp() && ecs.getChord().size() > 0) {
             print("Storage service is already running.");
             return;
         }
-        ecs.initService(serverNumber, Integer.parseInt(cmdArgs[1]), cmdArgs[2]);
+        ecs.initService(serverNumber, Integer.parseInt(cmdArgs[1]), cmdArgs[2], storageConfig);
         print(ecs.isRingUp() ? "Service initiated with " + serverNumber + " Servers." : "Initializing service failed");
     }
 
@@ -217,6 +231,26 @@ public class ECSApplication {
     }
 
 
+    /**
+     * Handles the command {@see STATS}
+     *
+     * @param cmdComponents User input separated by the first whitespace. The
+     *                      optional second component is the id of the only server to poll
+     */
+    private static void handleStats(String[] cmdComponents) {
+        if (ecs.isEmpty()) {
+            print("Service currently has no active nodes.");
+            return;
+        }
+        String serverId = (cmdComponents.length > 1) ? cmdComponents[1].trim() : null;
+        for (Map.Entry<String, StorageStats> entry : ecs.getStats().entrySet()) {
+            if (serverId != null && !entry.getKey().equalsIgnoreCase(serverId))
+                continue;
+            StorageStats stats = entry.getValue();
+            print("Server " + entry.getKey() + ":\n" + ((stats == null) ? "\tno statistics available\n" : stats));
+        }
+    }
+
     /**
      * Handles the command {@see START}
      */
@@ -253,7 +287,7 @@ public class ECSApplication {
     public static void printHelp() {
         print("This application works as an external configuration service. The command set is as follows:\n" + getUsage(START)
                 + getUsage(STOP) + getUsage(INIT) + getUsage(SHUTDOWN) + getUsage(ADD) + getUsage(REMOVE)
-                + getUsage(HELP) + getUsage(QUIT)
+                + getUsage(STATS) + getUsage(HELP) + getUsage(QUIT)
 
         );
     }
@@ -271,13 +305,25 @@ public class ECSApplication {
             case STOP:
                 return "'" + STOP + "' - servers stop processing client requests\n";
             case INIT:
-                return "'" + INIT + "' <numberOfNodes> <cacheSize> <displacementStrategy>' - starts the storage service with the given parameters\n";
+                return "'" + INIT + "' <numberOfNodes> <cacheSize> <displacementStrategy> [<storageOption>=<value> ...]' - starts the storage service with the given parameters\n"
+                        + "\tstorage options: '" + StorageConfig.STORAGE_ENGINE + "=FILE|LOG'"
+                        + ", '" + StorageConfig.SEGMENT_SIZE + "=<bytes>', '" + StorageConfig.COMPACTION_RATIO + "=<0..1>'"
+                        + ", '" + StorageConfig.COMPACTION_RATE + "=<bytes per second>'"
+                        + ", '" + StorageConfig.DURABILITY + "=ALWAYS|INTERVAL|OS', '" + StorageConfig.DURABILITY_INTERVAL + "=<ms>'"
+                        + ", '" + StorageConfig.READ_MODE + "=CHANNEL|MMAP'"
+                        + ", '" + StorageConfig.COMPRESSION + "=NONE|DEFLATE', '" + StorageConfig.COMPRESSION_THRESHOLD + "=<bytes>'"
+                        + ", '" + StorageConfig.CACHE_BYTES + "=<bytes>', '" + StorageConfig.LFU_AGING + "=<accesses>'"
+                        + ", '" + StorageConfig.CACHE_OFF_HEAP + "=true|false'"
+                        + ", '" + StorageConfig.NEGATIVE_CACHE_SIZE + "=<keys>', '" + StorageConfig.NEGATIVE_CACHE_TTL + "=<ms>'"
+                        + ", '" + StorageConfig.CACHE_WARM_UP + "=<keys>'\n";
             case SHUTDOWN:
                 return "'" + SHUTDOWN + "' - stop all servers and exit the remote process\n";
             case ADD:
-                return "'" + ADD + "' <cacheSize> <displacementStrategy> - create a storage server and add it to storage service at arbitrary position\n";
+                return "'" + ADD + "' <cacheSize> <displacementStrategy> [<storageOption>=<value> ...] - create a storage server and add it to storage service at arbitrary position\n";
             case REMOVE:
                 return "'" + REMOVE + "' - remove arbitrary node from storage service\n";
+            case STATS:
+                return "'" + STATS + "' [<serverId>] - display cache hits, evictions and disk latencies of all servers or of one server\n";
             case HELP:
                 return "'" + HELP + "'- display list of commands\n";
             case QUIT:
@@ -324,11 +370,11 @@ public class ECSApplication {
     private static boolean isValidArgs(String commandName, String[] cmdComponents) {
         switch (commandName) {
             case INIT:
-                if (cmdComponents.length != 2 || cmdComponents[1].split(StringUtils.WHITE_SPACE).length != 3)
+                if (cmdComponents.length != 2 || cmdComponents[1].split(StringUtils.WHITE_SPACE).length < 3)
                     return handleInvalidArgs(commandName, cmdComponents);
                 break;
             case ADD:
-                if (cmdComponents.length != 2 || cmdComponents[1].split(StringUtils.WHITE_SPACE).length != 2)
+                if (cmdComponents.length != 2 || cmdComponents[1].split(StringUtils.WHITE_SPACE).length < 2)
                     return handleInvalidArgs(commandName, cmdComponents);
                 break;
         }
@@ -370,12 +416,34 @@ public class ECSApplication {
                 return true;
             case "LFU":
                 return true;
+            case "WTINYLFU":
+                return true;
+            case "ARC":
+                return true;
+            case "CLOCK":
+                return true;
             default:
-                print("Illegal Displacement Strategy. Please choose either 'FIFO', 'LRU' or 'LFU'.");
+                print("Illegal Displacement Strategy. Please choose either 'FIFO', 'LRU', 'LFU', 'WTINYLFU', 'ARC' or 'CLOCK'.");
                 return false;
         }
     }
 
+    /**
+     * Parses the optional storage settings given after the mandatory arguments of a command
+     *
+     * @param options settings in format <code>name=value</code>
+     * @return the parsed {@link StorageConfig} or null if the options are invalid
+     */
+    private static StorageConfig parseStorageConfig(String[] options) {
+        try {
+            return StorageConfig.parse(options);
+        } catch (IllegalArgumentException iae) {
+            print(iae.getMessage());
+            LOG.info("Invalid storage options " + Arrays.toString(options), iae);
+            return null;
+        }
+    }
+
     /**
      * prints to console and log if user provided illegal arguments
      *
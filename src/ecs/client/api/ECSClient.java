@@ -1,7 +1,12 @@
 package ecs.client.api;
 
 import ecs.IECS;
+import server.storage.StorageConfig;
 import server.storage.cache.CacheDisplacementStrategy;
+import server.storage.stats.StorageStats;
+
+import java.util.Collections;
+import java.util.Map;
 
 public class ECSClient implements IECS {
 
@@ -20,6 +25,11 @@ public class ECSClient implements IECS {
 
 	}
 
+	@Override
+	public void initService(int numberOfNodes, int cacheSize, String displacementStrategy, StorageConfig storageConfig) {
+
+	}
+
 	@Override
 	public void startService() {
 		// TODO Auto-generated method stub
@@ -43,6 +53,11 @@ public class ECSClient implements IECS {
 
 	}
 
+	@Override
+	public void addNode(int cacheSize, String displacementStrategy, StorageConfig storageConfig) {
+
+	}
+
 	public void addNode(int cacheSize, CacheDisplacementStrategy displacementStrategy) {
 		// TODO Auto-generated method stub
 		
@@ -53,5 +68,10 @@ public class ECSClient implements IECS {
 		// TODO Auto-generated method stub
 		
 	}
+
+	@Override
+	public Map<String, StorageStats> getStats() {
+		return Collections.emptyMap();
+	}
 	
 }
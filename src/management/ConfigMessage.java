@@ -3,6 +3,8 @@ package management;
 import ecs.KeyHashRange;
 import ecs.NodeInfo;
 import ecs.Metadata;
+import server.storage.StorageConfig;
+import server.storage.stats.StorageStats;
 
 import java.io.Serializable;
 
@@ -12,6 +14,8 @@ public class ConfigMessage implements Serializable {
     private String strategy;
     private Metadata metadata;
     private NodeInfo targetServer;
+    private StorageConfig storageConfig;
+    private StorageStats stats;
 
     public ConfigMessage(ConfigStatus status) {
         this.status = status;
@@ -28,6 +32,11 @@ public class ConfigMessage implements Serializable {
         this.metadata = metadata;
     }
 
+    public ConfigMessage(ConfigStatus status, int cacheSize, String strategy, StorageConfig storageConfig, Metadata metadata) {
+        this(status, cacheSize, strategy, metadata);
+        this.storageConfig = storageConfig;
+    }
+
     public ConfigMessage(ConfigStatus status, NodeInfo target) {
         this.status = status;
         this.targetServer = target;
@@ -39,6 +48,11 @@ public class ConfigMessage implements Serializable {
         this.metadata = md;
     }
 
+    public ConfigMessage(ConfigStatus status, StorageStats stats) {
+        this.status = status;
+        this.stats = stats;
+    }
+
     public int getCacheSize() {
         return cacheSize;
     }
@@ -55,6 +69,14 @@ public class ConfigMessage implements Serializable {
         return targetServer;
     }
 
+    public StorageConfig getStorageConfig() {
+        return (storageConfig == null) ? new StorageConfig() : storageConfig;
+    }
+
+    public StorageStats getStats() {
+        return stats;
+    }
+
     @Override
     public String toString() {
         return "ConfigMessage{" +"status=" + status +'}';
@@ -11,6 +11,7 @@ public enum ConfigStatus implements Serializable {
         UNLOCK_WRITE,
         MOVE_DATA,
         UPDATE_METADATA,
+        STATS,
 
         INIT_SUCCESS,
         START_SUCCESS,
@@ -20,6 +21,7 @@ public enum ConfigStatus implements Serializable {
         UNLOCK_WRITE_SUCCESS,
         MOVE_DATA_SUCCESS,
         UPDATE_METADATA_SUCCESS,
+        STATS_SUCCESS,
 
         ERROR
 }
@@ -1,9 +1,12 @@
 package management;
 
 import ecs.Metadata;
+import server.storage.StorageConfig;
+import server.storage.stats.StorageStats;
 
 public interface IExternalConfigurationService {
     boolean initKVServer(Metadata metadata, int cacheSize, String strategy);
+    boolean initKVServer(Metadata metadata, int cacheSize, String strategy, StorageConfig storageConfig);
 
     boolean stopService();
     boolean startService();
@@ -12,5 +15,10 @@ public interface IExternalConfigurationService {
     boolean lockWrite();
     boolean unlockWrite();
     boolean update(Metadata metadata);
+
+    /**
+     * @return statistics of the cache and the storage of the server, null if it is not initialized
+     */
+    StorageStats getStats();
 }
 
@@ -4,6 +4,7 @@ import ecs.NodeInfo;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import protocol.mapreduce.CallbackInfo;
+import util.ConnectionExecutor;
 import util.Validate;
 
 import java.io.IOException;
@@ -12,6 +13,8 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static protocol.Constants.MR_TASK_HANDLER_PORT_DISTANCE;
@@ -28,7 +31,7 @@ public class StatusReceiver implements Runnable {
 
     private CallbackInfo callbackInfo;
     private Set<String> expectedConnections;
-    private HashSet<Thread> workerConnections;
+    private HashSet<Future<?>> workerConnections;
 
     private Driver driver;
 
@@ -79,9 +82,7 @@ public class StatusReceiver implements Runnable {
                 }
 
                 WorkerConnection workerConnection = new WorkerConnection(this, worker);
-                Thread t = new Thread(workerConnection);
-                workerConnections.add(t);
-                t.start();
+                workerConnections.add(ConnectionExecutor.executeInternal(workerConnection));
                 LOG.info("A WorkerConnection started");
                 LOG.info("Connected to " + worker.getInetAddress().getHostName() + " on servicePort " + callbackSocket.getLocalPort());
             } catch (IOException e) {
@@ -101,12 +102,10 @@ public class StatusReceiver implements Runnable {
     }
 
     private void waitWorkerConnections() {
-        for (Thread t : workerConnections) {
+        for (Future<?> workerConnection : workerConnections) {
             try {
-                if (!t.isAlive())
-                    continue;
-                t.join();
-            } catch (InterruptedException e) {
+                workerConnection.get();
+            } catch (InterruptedException | ExecutionException e) {
                 LOG.error(e);
             }
         }
@@ -3,16 +3,16 @@ package mapreduce.client;
 import management.MessageSerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import protocol.FrameDecoder;
+import protocol.kv.WireProtocol;
 import protocol.mapreduce.StatusMessage;
 import util.StringUtils;
 import util.Validate;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Arrays;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -25,9 +25,13 @@ public class WorkerConnection implements Runnable {
     private Socket workerSocket;
 
     private boolean isOpen;
-    private BufferedInputStream bis;
     private BufferedOutputStream bos;
 
+    /**
+     * splits the received bytes into messages
+     */
+    private final FrameDecoder decoder = new FrameDecoder(WireProtocol.SERIALIZED);
+
     public WorkerConnection(StatusReceiver statusReceiver, Socket workerSocket) {
         this.statusReceiver = statusReceiver;
         this.workerSocket = workerSocket;
@@ -107,25 +111,18 @@ public class WorkerConnection implements Runnable {
      * @throws IOException
      */
     private StatusMessage receive() throws IOException {
-        byte[] messageBuffer = new byte[1024 * 1024];
-        while (true) {
-            try {
-                bis = new BufferedInputStream(workerSocket.getInputStream());
-                int justRead = bis.read(messageBuffer);
-
-                if (justRead < 0)
-                    return null;
-
-                StatusMessage message = MessageSerializer.deserialize(Arrays.copyOfRange(messageBuffer, 0, justRead));
-
-                LOG.info("RECEIVE \t<"
-                        + workerSocket.getInetAddress().getHostAddress() + ":"
-                        + workerSocket.getPort() + ">: '"
-                        + message.toString().trim() + "'");
-                return message;
-            } catch (EOFException e) {
-                LOG.error("CATCH EOFException", e);
-            }
+        StatusMessage message;
+        try {
+            message = decoder.read(workerSocket.getInputStream());
+        } catch (EOFException e) {
+            LOG.info(e.getMessage());
+            return null;
         }
+
+        LOG.info("RECEIVE \t<"
+                + workerSocket.getInetAddress().getHostAddress() + ":"
+                + workerSocket.getPort() + ">: '"
+                + message.toString().trim() + "'");
+        return message;
     }
 }
@@ -4,10 +4,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import protocol.mapreduce.Utils;
 import server.app.Server;
+import server.storage.disk.IPersistenceManager;
 import util.StringUtils;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
@@ -19,7 +20,13 @@ public abstract class MapReduce<KT, VT> {
 
     protected String prefix;
 
-    public MapReduce(String prefix) {
+    /**
+     * the persistence layer holding the data to process
+     */
+    protected IPersistenceManager pm;
+
+    public MapReduce(IPersistenceManager pm, String prefix) {
+        this.pm = pm;
         files = new ArrayList<>();
         output = new TreeMap<>();
         input = new TreeSet<>();
@@ -48,22 +55,26 @@ public abstract class MapReduce<KT, VT> {
         return input;
     }
 
-    protected void collectFiles(String[] indexFiles) {
-        for (String indexFile : indexFiles) {
-            List<String> appliedFiles = null;
-            try {
-                LOG.debug("Reading all lines from index file: " + indexFile);
-                appliedFiles = Files.readAllLines(Paths.get(indexFile));
-            } catch (IOException e) {
-                LOG.error(e);
-            }
-            if (appliedFiles == null)
-                continue;
-            LOG.debug("Adding files to collection: " + Arrays.toString(appliedFiles.toArray()));
-            files.addAll(appliedFiles);
-        }
+    protected void collectFiles(Iterator<Path> appliedFiles) {
+        while (appliedFiles.hasNext())
+            files.add(appliedFiles.next().toString());
+        LOG.debug("Collected files: " + Arrays.toString(files.toArray()));
         LOG.info("Number of files to process: " + files.size());
     }
 
+    /**
+     * reads the value of a collected file through the persistence layer
+     *
+     * @param file path of the value as listed in the index files
+     * @return the value
+     * @throws IOException if the value does not exist (anymore)
+     */
+    protected String getValue(String file) throws IOException {
+        byte[] value = pm.read(Paths.get(file));
+        if (value == null)
+            throw new IOException("No value found for " + file);
+        return new String(value);
+    }
+
 
 }
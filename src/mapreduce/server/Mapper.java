@@ -2,14 +2,14 @@ package mapreduce.server;
 
 import ecs.KeyHashRange;
 import server.api.BatchDataTransferProcessor;
+import server.storage.disk.IPersistenceManager;
 import util.StringUtils;
 
 public abstract class Mapper<KT, VT> extends MapReduce<KT, VT>{
     public abstract void map();
 
-    public Mapper(String dbPath, KeyHashRange appliedRange) {
-        super(StringUtils.EMPTY_STRING);
-        String[] indexFiles = new BatchDataTransferProcessor(dbPath).indexData(appliedRange);
-        collectFiles(indexFiles);
+    public Mapper(IPersistenceManager pm, KeyHashRange appliedRange) {
+        super(pm, StringUtils.EMPTY_STRING);
+        collectFiles(new BatchDataTransferProcessor(pm).indexData(appliedRange));
     }
 }
@@ -2,16 +2,16 @@ package mapreduce.server;
 
 import ecs.KeyHashRange;
 import server.api.BatchDataTransferProcessor;
+import server.storage.disk.IPersistenceManager;
 
 import java.util.Set;
 
 public abstract class Reducer<KT, VT> extends MapReduce<KT, VT>{
     public abstract void reduce();
 
-    public Reducer(String dbPath, KeyHashRange appliedRange, String prefix) {
-        super(prefix);
-        BatchDataTransferProcessor batchProcessor = new BatchDataTransferProcessor(dbPath, prefix);
-        String[] indexFiles = batchProcessor.indexData(appliedRange);
-        collectFiles(indexFiles);
+    public Reducer(IPersistenceManager pm, KeyHashRange appliedRange, String prefix) {
+        super(pm, prefix);
+        BatchDataTransferProcessor batchProcessor = new BatchDataTransferProcessor(pm, prefix);
+        collectFiles(batchProcessor.indexData(appliedRange));
     }
 }
@@ -17,6 +17,7 @@ import protocol.mapreduce.StatusMessage;
 import protocol.mapreduce.TaskMessage;
 import protocol.mapreduce.Utils;
 import server.app.Server;
+import server.storage.disk.IPersistenceManager;
 import util.Validate;
 
 import java.io.BufferedOutputStream;
@@ -36,7 +37,7 @@ public class TaskHandler implements Runnable {
     private Socket outputOutboundSocket;
     private BufferedOutputStream bos;
     private Server server;
-    private String dbPath;
+    private IPersistenceManager pm;
     private KeyHashRange appliedRange;
 
     private Reducer reducer;
@@ -75,7 +76,7 @@ public class TaskHandler implements Runnable {
 
 
     private void setPathAndRange(KeyHashRange taskRange) {
-        dbPath = server.getCacheManager().getPersistenceManager().getDbPath();
+        pm = server.getCacheManager().getPersistenceManager();
         appliedRange = (taskRange == null) ? server.getWriteRange() : taskRange;
     }
 
@@ -106,7 +107,7 @@ public class TaskHandler implements Runnable {
             try {
                 task = taskMessage.getTask();
                 setPathAndRange(task.getAppliedRange());
-                LOG.info("Current Path:" + dbPath);
+                LOG.info("Current Path:" + pm.getDbPath());
                 setCurrJobId(task.getJobId());
                 LOG.info("Current JobId: " + currJobId);
 
@@ -181,22 +182,22 @@ public class TaskHandler implements Runnable {
     }
 
     private void startWordCountMapper() {
-        mapper = new WordCountMapper(dbPath, appliedRange);
+        mapper = new WordCountMapper(pm, appliedRange);
         mapper.map();
     }
 
     private void startWordCountReducer() {
-        reducer = new WordCountReducer(dbPath, appliedRange, currJobId);
+        reducer = new WordCountReducer(pm, appliedRange, currJobId);
         reducer.reduce();
     }
 
     private void startInvertedIndexMapper() {
-        mapper = new InvertedIndexMapper(dbPath, appliedRange, task.getInput());
+        mapper = new InvertedIndexMapper(pm, appliedRange, task.getInput());
         mapper.map();
     }
 
     private void startInvertedIndexReducer() {
-        reducer = new InvertedIndexReducer(dbPath, appliedRange, currJobId);
+        reducer = new InvertedIndexReducer(pm, appliedRange, currJobId);
         reducer.reduce();
     }
 
@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import protocol.Constants;
 import server.app.Server;
+import util.ConnectionExecutor;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
@@ -33,7 +34,7 @@ public class TaskReceiver implements Runnable {
                 taskInboundSocket.receive(taskPacket);
 
                 TaskHandler taskHandler = new TaskHandler(taskPacket, server);
-                new Thread(taskHandler).start();
+                ConnectionExecutor.executeInternal(taskHandler);
                 LOG.info("TaskHandler started. Handling task ....");
             }
         } catch (IOException e) {
@@ -2,7 +2,7 @@ package mapreduce.server.inverted_index;
 
 import ecs.KeyHashRange;
 import mapreduce.server.Mapper;
-import util.FileUtils;
+import server.storage.disk.IPersistenceManager;
 import util.StringUtils;
 
 import java.io.IOException;
@@ -13,8 +13,8 @@ import static util.FileUtils.getKeyFromStringPath;
 
 public class InvertedIndexMapper extends Mapper<String, String> {
 
-    public InvertedIndexMapper(String dbPath, KeyHashRange appliedRange, TreeSet<String> inputs) {
-        super(dbPath, appliedRange);
+    public InvertedIndexMapper(IPersistenceManager pm, KeyHashRange appliedRange, TreeSet<String> inputs) {
+        super(pm, appliedRange);
         setInput(inputs);
     }
 
@@ -26,7 +26,7 @@ public class InvertedIndexMapper extends Mapper<String, String> {
                 String key = StringUtils.decode(Paths.get(file).getFileName().toString());
                 LOG.info("key: " + key);
 
-                String val = FileUtils.getValue(file);
+                String val = getValue(file);
                 LOG.info("val: " + val);
 
                 List<String> bestMatches = new ArrayList<>();
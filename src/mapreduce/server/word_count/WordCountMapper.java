@@ -2,7 +2,7 @@ package mapreduce.server.word_count;
 
 import ecs.KeyHashRange;
 import mapreduce.server.Mapper;
-import util.FileUtils;
+import server.storage.disk.IPersistenceManager;
 import util.StringUtils;
 
 import java.io.IOException;
@@ -10,15 +10,15 @@ import java.util.Arrays;
 import java.util.Map;
 
 public class WordCountMapper extends Mapper<String, Integer> {
-    public WordCountMapper(String dbPath, KeyHashRange appliedRange) {
-        super(dbPath, appliedRange);
+    public WordCountMapper(IPersistenceManager pm, KeyHashRange appliedRange) {
+        super(pm, appliedRange);
     }
 
     @Override
     public void map() {
         for (String file : files) {
             try {
-                count(FileUtils.getValue(file));
+                count(getValue(file));
 
             } catch (IOException e) {
                 LOG.error(e);
@@ -2,7 +2,7 @@ package mapreduce.server.word_count;
 
 import ecs.KeyHashRange;
 import mapreduce.server.Reducer;
-import util.FileUtils;
+import server.storage.disk.IPersistenceManager;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -10,8 +10,8 @@ import java.util.Arrays;
 import static util.FileUtils.getKeyFromStringPath;
 
 public class WordCountReducer extends Reducer<String, Integer> {
-    public WordCountReducer(String dbPath, KeyHashRange appliedRange, String prefix) {
-        super(dbPath, appliedRange, prefix);
+    public WordCountReducer(IPersistenceManager pm, KeyHashRange appliedRange, String prefix) {
+        super(pm, appliedRange, prefix);
     }
 
     @Override
@@ -21,7 +21,7 @@ public class WordCountReducer extends Reducer<String, Integer> {
             String key = getKeyFromStringPath(file);
             LOG.info("key: " + key);
             try {
-                String val = FileUtils.getValue(file);
+                String val = getValue(file);
                 LOG.info("val: " + val);
                 accumulate(key, val);
             } catch (IOException e) {
@@ -0,0 +1,78 @@
+package protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Pool of heap buffers to read messages into, so that connections do not allocate a buffer for every message and
+ * idle connections do not hold one at all.
+ * Buffers come in capacities of powers of two between {@value #MIN_CAPACITY} bytes and
+ * {@link Constants#MAX_BUFFER_LENGTH}. Larger buffers are allocated on demand and not pooled. Each capacity keeps at
+ * most a fixed number of released buffers, the larger the capacity the fewer.
+ */
+public class BufferPool {
+    public static final int MIN_CAPACITY = 4096;
+
+    /**
+     * buffers kept of the smallest capacity, halved for every doubling of the capacity but at least 2
+     */
+    private static final int MAX_POOLED_SMALLEST = 256;
+
+    public static final BufferPool SHARED = new BufferPool();
+
+    private final List<Queue<ByteBuffer>> pooled;
+    private final AtomicIntegerArray counts;
+
+    public BufferPool() {
+        int classes = sizeClass(Constants.MAX_BUFFER_LENGTH) + 1;
+        pooled = new ArrayList<>(classes);
+        for (int i = 0; i < classes; i++)
+            pooled.add(new ConcurrentLinkedQueue<>());
+        counts = new AtomicIntegerArray(classes);
+    }
+
+    /**
+     * @param capacity minimum capacity
+     * @return an empty buffer of at least the capacity
+     */
+    public ByteBuffer acquire(int capacity) {
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass >= pooled.size())
+            return ByteBuffer.allocate(capacity);
+        ByteBuffer buffer = pooled.get(sizeClass).poll();
+        if (buffer == null)
+            return ByteBuffer.allocate(MIN_CAPACITY << sizeClass);
+        counts.decrementAndGet(sizeClass);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards
+     *
+     * @param buffer a buffer from {@link #acquire(int)}
+     */
+    public void release(ByteBuffer buffer) {
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass >= pooled.size() || buffer.capacity() != MIN_CAPACITY << sizeClass)
+            return;
+        if (counts.incrementAndGet(sizeClass) > Math.max(2, MAX_POOLED_SMALLEST >> sizeClass)) {
+            counts.decrementAndGet(sizeClass);
+            return;
+        }
+        buffer.clear();
+        pooled.get(sizeClass).offer(buffer);
+    }
+
+    /**
+     * @return index of the smallest capacity of at least the given one
+     */
+    private static int sizeClass(int capacity) {
+        if (capacity <= MIN_CAPACITY)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros((capacity - 1) / MIN_CAPACITY);
+    }
+}
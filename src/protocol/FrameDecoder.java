@@ -0,0 +1,319 @@
+package protocol;
+
+import protocol.kv.MessageCodec;
+import protocol.kv.WireProtocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static protocol.Constants.MAX_BUFFER_LENGTH;
+
+/**
+ * Splits the bytes read from a connection into messages, however the network split or merged them: a message may
+ * arrive in several reads and a read may hold several messages. Bytes are accumulated until a message is complete and
+ * bytes of the next message stay buffered for the next call.
+ * A message of the {@link WireProtocol#BINARY} protocol is complete once its whole frame has arrived, its length is
+ * known from the header. A serialized message is complete as soon as the bytes buffered so far deserialize into an
+ * object. As long as the last read left more bytes ready to be read, deserializing is only retried once the buffered
+ * bytes have doubled since the last attempt, so that a large message arriving in many small reads is not deserialized
+ * from its start after every one of them. If no protocol is given, it is detected from the first byte of the
+ * connection.
+ * The buffer is taken from a {@link BufferPool} and given back as soon as no bytes are buffered, so that idle
+ * connections do not hold one. A decoder is not thread-safe, each connection uses its own.
+ */
+public class FrameDecoder {
+    private final BufferPool pool;
+
+    /**
+     * protocol of the connection, null until detected
+     */
+    private WireProtocol protocol;
+
+    /**
+     * bytes read but not decoded yet, from index 0 to the position. Null while no bytes are buffered
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * number of buffered bytes when deserializing last failed for lack of bytes, -1 if there is none
+     */
+    private int incompleteLength = -1;
+
+    /**
+     * true if the last read left more bytes that can be read without blocking
+     */
+    private boolean moreAvailable;
+
+    /**
+     * length of the serialized message decoded last
+     */
+    private int decodedLength;
+
+    public FrameDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param protocol protocol of the connection, null to detect it from the first byte
+     */
+    public FrameDecoder(WireProtocol protocol) {
+        this(protocol, BufferPool.SHARED);
+    }
+
+    public FrameDecoder(WireProtocol protocol, BufferPool pool) {
+        this.protocol = protocol;
+        this.pool = pool;
+    }
+
+    /**
+     * Blocks until the next message is complete
+     *
+     * @param in stream of the connection
+     * @return the message
+     * @throws EOFException if the stream ends before the next message does
+     * @throws IOException  if reading fails or the bytes are not a message
+     */
+    public <T> T read(InputStream in) throws IOException {
+        T message;
+        while ((message = next()) == null) {
+            if (readFrom(in) < 0)
+                throw endOfStream();
+        }
+        return message;
+    }
+
+    /**
+     * Blocks until the next message is complete, like {@link #read(InputStream)}
+     *
+     * @param in stream of the connection
+     * @return the bytes of the message
+     */
+    public byte[] readFrame(InputStream in) throws IOException {
+        byte[] frame;
+        while ((frame = nextFrame()) == null) {
+            if (readFrom(in) < 0)
+                throw endOfStream();
+        }
+        return frame;
+    }
+
+    /**
+     * Reads once from the stream into the buffer. Blocks until at least one byte is available
+     *
+     * @param in stream of the connection
+     * @return number of bytes read, -1 at the end of the stream
+     */
+    public int readFrom(InputStream in) throws IOException {
+        ensureRoom();
+        int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read > 0)
+            buffer.position(buffer.position() + read);
+        moreAvailable = read > 0 && in.available() > 0;
+        releaseIfEmpty();
+        return read;
+    }
+
+    /**
+     * Reads the bytes available on the channel into the buffer
+     *
+     * @param channel channel of the connection, blocking or not
+     * @return number of bytes read, -1 at the end of the stream
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        ensureRoom();
+        int read = channel.read(buffer);
+        moreAvailable = read > 0 && !buffer.hasRemaining();
+        releaseIfEmpty();
+        return read;
+    }
+
+    /**
+     * Decodes the next message from the buffered bytes without reading
+     *
+     * @return the message, null if its bytes have not all arrived yet
+     * @throws IOException if the bytes are not a message
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T next() throws IOException {
+        if (!detectProtocol())
+            return null;
+        if (protocol == WireProtocol.BINARY) {
+            ByteBuffer frame = buffer.duplicate();
+            frame.flip();
+            Object message;
+            try {
+                message = MessageCodec.decode(frame);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Not a message", e);
+            }
+            if (message != null)
+                consume(frame.position());
+            return (T) message;
+        }
+        Object message = deserialize();
+        if (message != null)
+            consume(decodedLength);
+        return (T) message;
+    }
+
+    /**
+     * Takes the bytes of the next message from the buffered bytes without reading
+     *
+     * @return copy of the bytes of the message, null if they have not all arrived yet
+     * @throws IOException if the bytes are not a message
+     */
+    public byte[] nextFrame() throws IOException {
+        if (!detectProtocol())
+            return null;
+        int length;
+        if (protocol == WireProtocol.BINARY) {
+            ByteBuffer frame = buffer.duplicate();
+            frame.flip();
+            try {
+                length = MessageCodec.getFrameLength(frame);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Not a message", e);
+            }
+            if (length < 0 || length > buffer.position())
+                return null;
+        } else {
+            if (deserialize() == null)
+                return null;
+            length = decodedLength;
+        }
+        byte[] bytes = Arrays.copyOfRange(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + length);
+        consume(length);
+        return bytes;
+    }
+
+    /**
+     * @return protocol of the connection, null if it is not known yet
+     */
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return true if bytes have been read that are not decoded yet, i.e. the start of the next message
+     */
+    public boolean hasBufferedBytes() {
+        return buffer != null;
+    }
+
+    /**
+     * Gives the buffer back to the pool and drops the buffered bytes
+     */
+    public void release() {
+        if (buffer != null)
+            pool.release(buffer);
+        buffer = null;
+        incompleteLength = -1;
+    }
+
+    /**
+     * @return true if there are buffered bytes and the protocol is known
+     */
+    private boolean detectProtocol() throws IOException {
+        if (buffer == null)
+            return false;
+        if (protocol == null) {
+            protocol = WireProtocol.detect(buffer.get(0));
+            if (protocol == null)
+                throw new IOException("Unknown protocol, first byte is " + buffer.get(0));
+        }
+        return true;
+    }
+
+    /**
+     * Deserializes the buffered bytes and remembers in {@link #decodedLength} how many of them the object took.
+     * Does not retry while more bytes are available and the buffered bytes have not doubled since the last attempt
+     *
+     * @return the object, null if the bytes end before the object does
+     */
+    private Object deserialize() throws IOException {
+        int length = buffer.position();
+        if (length == incompleteLength || (moreAvailable && incompleteLength > 0 && length < 2 * incompleteLength))
+            return null;
+        ByteArrayInputStream bytes = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), length);
+        try (ObjectInputStream in = new ObjectInputStream(bytes)) {
+            Object message = in.readObject();
+            decodedLength = length - bytes.available();
+            return message;
+        } catch (EOFException e) {
+            incompleteLength = length;
+            return null;
+        } catch (StreamCorruptedException e) {
+            if (length < 4) {
+                incompleteLength = length;
+                return null;
+            }
+            throw e;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Not a message", e);
+        }
+    }
+
+    /**
+     * Makes room for the next read. Takes a buffer from the pool if there is none and grows the buffer if it is full
+     * or if it cannot hold the frame being read
+     */
+    private void ensureRoom() throws IOException {
+        int needed = BufferPool.MIN_CAPACITY;
+        if (buffer != null) {
+            needed = buffer.capacity();
+            if (!buffer.hasRemaining())
+                needed = 2 * buffer.capacity();
+            if (protocol == WireProtocol.BINARY) {
+                ByteBuffer frame = buffer.duplicate();
+                frame.flip();
+                try {
+                    needed = Math.max(needed, MessageCodec.getFrameLength(frame));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Not a message", e);
+                }
+            }
+            if (needed == buffer.capacity())
+                return;
+            int max = MessageCodec.HEADER_LENGTH + MAX_BUFFER_LENGTH;
+            if (buffer.capacity() >= max)
+                throw new IOException("Message exceeds " + MAX_BUFFER_LENGTH + " bytes");
+            needed = Math.min(needed, max);
+        }
+        ByteBuffer larger = pool.acquire(needed);
+        if (buffer != null) {
+            buffer.flip();
+            larger.put(buffer);
+            pool.release(buffer);
+        }
+        buffer = larger;
+    }
+
+    /**
+     * Drops the bytes of a decoded message and moves the following bytes to the front
+     */
+    private void consume(int length) {
+        buffer.flip();
+        buffer.position(length);
+        buffer.compact();
+        incompleteLength = -1;
+        releaseIfEmpty();
+    }
+
+    private void releaseIfEmpty() {
+        if (buffer != null && buffer.position() == 0)
+            release();
+    }
+
+    private EOFException endOfStream() {
+        return new EOFException(buffer == null
+                ? "Connection closed"
+                : "Connection closed in the middle of a message");
+    }
+}
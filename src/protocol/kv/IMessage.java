@@ -90,4 +90,19 @@ public interface IMessage extends Serializable {
     public void setInternal();
     boolean hasMRToken();
 
+    /**
+     * @return true if the server should serve the request without bringing the key into its cache,
+     * e.g. because the message is part of a bulk transfer that would evict the keys clients use
+     */
+    boolean isNoAdmit();
+
+    void setNoAdmit();
+
+    /**
+     * @return id of the request that the client chose to match the response to it, 0 if none was chosen
+     */
+    int getRequestId();
+
+    void setRequestId(int requestId);
+
 }
@@ -5,6 +5,8 @@ import mapreduce.client.MRKeyComparator;
 import util.StringUtils;
 
 public class Message implements IMessage {
+    private static final long serialVersionUID = -7750521755594359958L;
+
     private Status status;
     private K key;
     private V value;
@@ -16,6 +18,13 @@ public class Message implements IMessage {
      */
     boolean isInternal = false;
 
+    /**
+     * hint that the server should not bring the key of this message into its cache
+     */
+    boolean noAdmit = false;
+
+    private int requestId;
+
     public Message(Status status) {
         this.status = status;
     }
@@ -95,6 +104,26 @@ public class Message implements IMessage {
         this.isInternal = true;
     }
 
+    @Override
+    public boolean isNoAdmit() {
+        return noAdmit;
+    }
+
+    @Override
+    public void setNoAdmit() {
+        this.noAdmit = true;
+    }
+
+    @Override
+    public int getRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
     @Override
     public String toString() {
         String keyString = key == null ? "metadata" : key.get();
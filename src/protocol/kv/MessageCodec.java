@@ -0,0 +1,257 @@
+package protocol.kv;
+
+import ecs.KeyHashRange;
+import ecs.Metadata;
+import ecs.NodeInfo;
+import protocol.kv.IMessage.Status;
+import util.HashUtils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static protocol.Constants.MAX_BUFFER_LENGTH;
+
+/**
+ * Binary encoding of {@link IMessage}s, the {@link WireProtocol#BINARY} protocol.
+ * Every message is a frame of a fixed header and a body:
+ * <pre>
+ * header: magic (1 byte) | version (1) | length of the body (4)
+ * body:   opcode (1) | flags (1) | request id (4)
+ *         [key length (2) | key]  [value length (4) | value]  [MR token length (2) | MR token]
+ *         [node count (2) | nodes]
+ * node:   id length (2) | id | host length (2) | host | port (4) | start of range (16) | end of range (16)
+ * </pre>
+ * The opcode is the code of the {@link Status}, 0 if there is none. The flags mark the optional parts present in
+ * the body and whether the message is internal or must not be admitted to the cache. Strings are UTF-8 encoded, a
+ * string of length -1 is null. Hash ranges are sent as their 16 bytes instead of 32 hex characters.
+ * The magic byte differs from the first byte of Java serialization streams, so that a server can tell by the first
+ * byte of a connection which protocol the client speaks.
+ */
+public class MessageCodec {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte VERSION = 1;
+    public static final int HEADER_LENGTH = 1 + 1 + 4;
+
+    private static final int FLAG_INTERNAL = 0x01;
+    private static final int FLAG_NO_ADMIT = 0x02;
+    private static final int FLAG_KEY = 0x04;
+    private static final int FLAG_VALUE = 0x08;
+    private static final int FLAG_MR_TOKEN = 0x10;
+    private static final int FLAG_METADATA = 0x20;
+
+    private static final int HASH_LENGTH = 16;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * @param message the message
+     * @return a buffer holding the frame of the message, ready to be written
+     */
+    public static ByteBuffer encode(IMessage message) {
+        byte[] key = (message.getK() == null) ? null : utf8(message.getK().get());
+        byte[] value = (message.getV() == null) ? null : utf8(message.getV().get());
+        byte[] token = message.hasMRToken() ? utf8(message.getMRToken()) : null;
+        Metadata metadata = message.getMetadata();
+        if ((key != null && key.length > 0xFFFF) || (token != null && token.length > 0xFFFF))
+            throw new IllegalArgumentException("Key or MR token exceeds " + 0xFFFF + " bytes");
+
+        int bodyLength = 1 + 1 + 4;
+        if (key != null)
+            bodyLength += 2 + key.length;
+        if (value != null)
+            bodyLength += 4 + value.length;
+        if (token != null)
+            bodyLength += 2 + token.length;
+        byte[][] nodeStrings = null;
+        if (metadata != null) {
+            nodeStrings = new byte[2 * metadata.getLength()][];
+            bodyLength += 2;
+            for (int i = 0; i < metadata.getLength(); i++) {
+                NodeInfo node = metadata.get(i);
+                nodeStrings[2 * i] = (node.getId() == null) ? null : utf8(node.getId());
+                nodeStrings[2 * i + 1] = (node.getHost() == null) ? null : utf8(node.getHost());
+                bodyLength += stringLength(nodeStrings[2 * i]) + stringLength(nodeStrings[2 * i + 1]) + 4 + 2 * HASH_LENGTH;
+            }
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+        frame.put(MAGIC).put(VERSION).putInt(bodyLength);
+        frame.put((message.getStatus() == null) ? 0 : message.getStatus().getCode());
+        int flags = (message.isInternal() ? FLAG_INTERNAL : 0)
+                | (message.isNoAdmit() ? FLAG_NO_ADMIT : 0)
+                | (key != null ? FLAG_KEY : 0)
+                | (value != null ? FLAG_VALUE : 0)
+                | (token != null ? FLAG_MR_TOKEN : 0)
+                | (metadata != null ? FLAG_METADATA : 0);
+        frame.put((byte) flags);
+        frame.putInt(message.getRequestId());
+        if (key != null)
+            frame.putShort((short) key.length).put(key);
+        if (value != null)
+            frame.putInt(value.length).put(value);
+        if (token != null)
+            frame.putShort((short) token.length).put(token);
+        if (metadata != null) {
+            frame.putShort((short) metadata.getLength());
+            for (int i = 0; i < metadata.getLength(); i++) {
+                NodeInfo node = metadata.get(i);
+                putString(frame, nodeStrings[2 * i]);
+                putString(frame, nodeStrings[2 * i + 1]);
+                frame.putInt(node.getPort());
+                putHash(frame, node.getWriteRange().getStart());
+                putHash(frame, node.getWriteRange().getEnd());
+            }
+        }
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @param buffer buffer whose position is at the start of a frame
+     * @return length of the whole frame including the header, -1 if the header is not complete yet
+     * @throws IllegalArgumentException if the bytes are not the header of a frame of a supported version
+     */
+    public static int getFrameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_LENGTH)
+            return -1;
+        int start = buffer.position();
+        if (buffer.get(start) != MAGIC)
+            throw new IllegalArgumentException("Not a frame of the binary protocol");
+        if (buffer.get(start + 1) != VERSION)
+            throw new IllegalArgumentException("Unsupported protocol version " + buffer.get(start + 1));
+        int bodyLength = buffer.getInt(start + 2);
+        if (bodyLength < 6 || bodyLength > MAX_BUFFER_LENGTH)
+            throw new IllegalArgumentException("Invalid frame length " + bodyLength);
+        return HEADER_LENGTH + bodyLength;
+    }
+
+    /**
+     * Decodes the frame at the position of the buffer and moves the position behind it, if the frame is complete
+     *
+     * @param buffer buffer whose position is at the start of a frame
+     * @return the message, null if the buffer does not hold the whole frame yet
+     * @throws IllegalArgumentException if the bytes are not a valid frame
+     */
+    public static IMessage decode(ByteBuffer buffer) {
+        int frameLength = getFrameLength(buffer);
+        if (frameLength < 0 || buffer.remaining() < frameLength)
+            return null;
+
+        ByteBuffer body = buffer.duplicate();
+        body.position(buffer.position() + HEADER_LENGTH).limit(buffer.position() + frameLength);
+        try {
+            IMessage message = decodeBody(body);
+            if (body.hasRemaining())
+                throw new IllegalArgumentException("Frame holds " + body.remaining() + " bytes more than its message");
+            buffer.position(buffer.position() + frameLength);
+            return message;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Frame ends before its message does", e);
+        }
+    }
+
+    private static IMessage decodeBody(ByteBuffer body) {
+        byte opcode = body.get();
+        Status status = (opcode == 0) ? null : Status.getByCode(opcode);
+        if (opcode != 0 && status == null)
+            throw new IllegalArgumentException("Unknown opcode " + opcode);
+        int flags = body.get();
+        int requestId = body.getInt();
+
+        K key = ((flags & FLAG_KEY) != 0) ? new K(getString(body, body.getShort() & 0xFFFF)) : null;
+        V value = null;
+        if ((flags & FLAG_VALUE) != 0) {
+            int length = body.getInt();
+            if (length < 0)
+                throw new IllegalArgumentException("Invalid value length " + length);
+            value = new V(getString(body, length));
+        }
+        String token = ((flags & FLAG_MR_TOKEN) != 0) ? getString(body, body.getShort() & 0xFFFF) : null;
+
+        Message message;
+        if ((flags & FLAG_METADATA) != 0) {
+            message = new Message(status, decodeMetadata(body));
+        } else {
+            message = new Message(status, key, value);
+        }
+        if (token != null)
+            message.setMRToken(token);
+        if ((flags & FLAG_INTERNAL) != 0)
+            message.setInternal();
+        if ((flags & FLAG_NO_ADMIT) != 0)
+            message.setNoAdmit();
+        message.setRequestId(requestId);
+        return message;
+    }
+
+    private static Metadata decodeMetadata(ByteBuffer body) {
+        Metadata metadata = new Metadata();
+        int count = body.getShort();
+        for (int i = 0; i < count; i++) {
+            String id = getString(body, body.getShort());
+            String host = getString(body, body.getShort());
+            int port = body.getInt();
+            String start = getHash(body);
+            String end = getHash(body);
+            metadata.add(new NodeInfo(id, host, port, new KeyHashRange(start, end)));
+        }
+        return metadata;
+    }
+
+    /**
+     * Puts the 16 bytes of a hash given as 32 hex characters, as {@link HashUtils#getHashBytesOf(String)} does
+     * without splitting the string
+     */
+    private static void putHash(ByteBuffer buffer, String hash) {
+        if (hash.length() != 2 * HASH_LENGTH)
+            throw new IllegalArgumentException("Invalid hash " + hash);
+        for (int i = 0; i < HASH_LENGTH; i++)
+            buffer.put((byte) (Character.digit(hash.charAt(2 * i), 16) << 4 | Character.digit(hash.charAt(2 * i + 1), 16)));
+    }
+
+    /**
+     * @return the next 16 bytes as a hash of 32 lower case hex characters, as {@link HashUtils#getHashStringOf(byte[])}
+     */
+    private static String getHash(ByteBuffer buffer) {
+        char[] hex = new char[2 * HASH_LENGTH];
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            int b = buffer.get() & 0xFF;
+            hex[2 * i] = Character.forDigit(b >>> 4, 16);
+            hex[2 * i + 1] = Character.forDigit(b & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringLength(byte[] s) {
+        return 2 + ((s == null) ? 0 : s.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] s) {
+        if (s == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        buffer.putShort((short) s.length).put(s);
+    }
+
+    private static String getString(ByteBuffer buffer, int length) {
+        if (length < 0)
+            return null;
+        if (length > buffer.remaining())
+            throw new BufferUnderflowException();
+        if (!buffer.hasArray()) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+}
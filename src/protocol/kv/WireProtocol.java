@@ -0,0 +1,79 @@
+package protocol.kv;
+
+import management.MessageSerializer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.app.Server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoding of the {@link IMessage}s exchanged on the service port. The server serves every connection in the
+ * protocol of the first message it receives on it, so that clients of either protocol are served.
+ */
+public enum WireProtocol {
+    /**
+     * Java serialization via {@link MessageSerializer}, as spoken by older clients
+     */
+    SERIALIZED("SERIALIZED"),
+
+    /**
+     * length-prefixed binary frames, see {@link MessageCodec}
+     */
+    BINARY("BINARY");
+
+    private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
+
+    /**
+     * first byte of every Java serialization stream
+     */
+    private static final byte SERIALIZATION_MAGIC = (byte) 0xAC;
+
+    private String desc;
+
+    WireProtocol(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    /**
+     * @param firstByte first byte received on a connection
+     * @return the protocol the peer speaks or null if the byte starts a message in neither
+     */
+    public static WireProtocol detect(byte firstByte) {
+        if (firstByte == MessageCodec.MAGIC)
+            return BINARY;
+        if (firstByte == SERIALIZATION_MAGIC)
+            return SERIALIZED;
+        return null;
+    }
+
+    public byte[] encode(IMessage message) {
+        if (message == null)
+            return null;
+        if (this == SERIALIZED)
+            return MessageSerializer.serialize(message);
+        // the frame fills its whole array
+        return MessageCodec.encode(message).array();
+    }
+
+    /**
+     * @param bytes the bytes of one message
+     * @return the message or null if the bytes are not a message in this protocol
+     */
+    public IMessage decode(byte[] bytes) {
+        if (bytes == null)
+            return null;
+        if (this == SERIALIZED)
+            return MessageSerializer.deserialize(bytes);
+        try {
+            return MessageCodec.decode(ByteBuffer.wrap(bytes));
+        } catch (IllegalArgumentException e) {
+            LOG.error("Error when decoding message: " + e);
+            return null;
+        }
+    }
+}
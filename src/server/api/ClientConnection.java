@@ -1,26 +1,23 @@
 package server.api;
 
-import management.MessageSerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import protocol.FrameDecoder;
 import protocol.kv.*;
 import protocol.kv.IMessage.Status;
 import server.app.Server;
-import server.storage.PUTStatus;
 import server.storage.cache.CacheManager;
-import util.LogUtils;
-import util.StringUtils;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-
-import static protocol.Constants.MAX_BUFFER_LENGTH;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -29,20 +26,56 @@ import static protocol.Constants.MAX_BUFFER_LENGTH;
  * and sending.
  * The class also implements the echo functionality. Thus whenever a message
  * is received it is going to be echoed back to the client.
+ * Requests with a request id come from clients that pipeline, i.e. send further requests before the responses
+ * arrived. These requests are handled by workers shared by all connections, at most {@value #MAX_IN_FLIGHT} per
+ * connection, and each response carries the id of its request, as responses may be sent in a different order.
+ * GETs are handled concurrently; if all workers are busy, the connection handles the GET itself and stops reading
+ * meanwhile. PUTs and DELETEs are handled one after the other in the order they arrived, so that writes of the
+ * same key take effect in the order the client sent them. Requests without an id are handled one after the other,
+ * as before.
  */
 public class ClientConnection implements Runnable {
     private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
 
     private static final int MAX_ALLOWED_EOF = 3;
-    private static final Set<Status> SUCCESS_STATUS = new HashSet<>(Arrays.asList(new Status[]{Status.PUT_SUCCESS, Status.PUT_UPDATE, Status.DELETE_SUCCESS}));
-    private boolean isOpen;
+    private static final int MAX_IN_FLIGHT = 64;
+    private static final int WORKERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int WORKER_QUEUE_LENGTH = 1024;
+    private static final long WORKER_KEEP_ALIVE_S = 60;
+    private static final int FIRST_REQUEST_TIMEOUT_MS = 5000;
+
+    /**
+     * handle the requests of pipelining clients
+     */
+    private static final ThreadPoolExecutor PIPELINE_WORKERS = createWorkers();
+
+    private volatile boolean isOpen;
+
+    /**
+     * requests of this connection the workers are handling
+     */
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+    /**
+     * pipelined writes of this connection waiting for the one being handled. Guarded by itself
+     */
+    private final ArrayDeque<IMessage> pendingWrites = new ArrayDeque<>();
+
+    /**
+     * whether a worker is handling the {@link #pendingWrites}. Guarded by them
+     */
+    private boolean writing;
 
     private final Server server;
     private Socket clientSocket;
-    private BufferedInputStream bis;
     private BufferedOutputStream bos;
 
-    private CacheManager cm;
+    private final RequestHandler handler;
+
+    /**
+     * splits the received bytes into messages and detects the protocol of the client
+     */
+    private final FrameDecoder decoder = new FrameDecoder();
 
     /**
      * Constructs a new CientConnection object for a given TCP socket.
@@ -52,7 +85,7 @@ public class ClientConnection implements Runnable {
     public ClientConnection(Server server, Socket clientSocket, CacheManager cm) {
         this.server = server;
         this.clientSocket = clientSocket;
-        this.cm = cm;
+        this.handler = new RequestHandler(server, cm);
         this.isOpen = true;
     }
 
@@ -61,8 +94,7 @@ public class ClientConnection implements Runnable {
      * Loops until the connection is closed or aborted by the client.
      */
     public void run() {
-        IMessage request = null;
-        IMessage response;
+        IMessage request;
         int eofCounter = 0;
         try {
             while (isOpen && server.isRunning()) {
@@ -77,27 +109,13 @@ public class ClientConnection implements Runnable {
                         }
                         continue;
                     }
-                    response = handleRequest(request);
-                    send(response);
                     eofCounter = 0;
-
-                    LOG.debug("REQ is internal: " + request.isInternal());
-                    if (SUCCESS_STATUS.contains(response.getStatus()) && !request.isInternal())
-                        replicate(request);
+                    handle(request);
 
                 } catch (IOException ioe) {
                     LOG.error("Error! Connection lost!", ioe);
                     LOG.warn("Setting isOpen to false");
                     isOpen = false;
-                } catch (IllegalArgumentException iae) {
-                    LOG.error("IllegalArgumentException", iae);
-                    LOG.error(request.toString());
-                    try {
-                        send(new Message(Status.PUT_ERROR));
-                    } catch (IOException ioe) {
-                        LOG.error("Error! Connection lost!", ioe);
-                    }
-                    LOG.warn(iae);
                 } catch (Exception e) {
                     LOG.error("Exception", e);
                     e.printStackTrace();
@@ -105,6 +123,12 @@ public class ClientConnection implements Runnable {
                 }
             }
         } finally {
+            try {
+                if (!inFlight.tryAcquire(MAX_IN_FLIGHT, 5, TimeUnit.SECONDS))
+                    LOG.warn("Requests still in flight while closing the connection");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             try {
                 LOG.warn("CLOSING SOCKET...");
                 disconnect();
@@ -114,17 +138,51 @@ public class ClientConnection implements Runnable {
         }
     }
 
+    /**
+     * Handles a connection that was rejected as too many clients are connected, on the threads reserved for internal
+     * connections (see {@link util.ConnectionExecutor#executeReserved(Runnable)}). Waits at most
+     * {@value #FIRST_REQUEST_TIMEOUT_MS} ms for the first request and serves the connection like {@link #run()} only if
+     * that request is internal, i.e. a replication, data transfer or MapReduce PUT of another server. Closes it otherwise
+     */
+    public void runReserved() {
+        boolean served = false;
+        try {
+            clientSocket.setSoTimeout(FIRST_REQUEST_TIMEOUT_MS);
+            IMessage first = receive();
+            clientSocket.setSoTimeout(0);
+            if (first != null && first.isInternal()) {
+                handle(first);
+                served = true;
+                run();
+            } else {
+                LOG.warn("Too many client connections. Closing connection of " + clientSocket.getInetAddress().getHostName());
+            }
+        } catch (IOException ioe) {
+            LOG.error("Error! Connection lost!", ioe);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!served) {
+                try {
+                    disconnect();
+                } catch (IOException ioe) {
+                    LOG.error("Error! Unable to tear down connection!", ioe);
+                }
+            }
+        }
+    }
+
     public void disconnect() throws IOException {
         LOG.warn("Closing clientSocket=" + clientSocket);
         if (clientSocket != null) {
             clientSocket.shutdownInput();
             clientSocket.shutdownOutput();
 
-            bos.close();
-            bis.close();
+            if (bos != null)
+                bos.close();
             clientSocket.close();
+            decoder.release();
 
-            bis = null;
             bos = null;
             clientSocket = null;
         }
@@ -132,114 +190,120 @@ public class ClientConnection implements Runnable {
 
 
     /**
-     * Handle request sent from client
+     * Handles a request and sends the response, tagged with the id of the request
      *
-     * @param message the request message from the client
-     * @return a response message to the client
+     * @param request the request of the client
+     * @throws IOException if the response could not be sent
      */
-    private IMessage handleRequest(IMessage message) {
-        if (server.isStopped()) {
-            LOG.info("Server is in STOP STATE");
-            return new Message(Status.SERVER_STOPPED);
+    private void respond(IMessage request) throws IOException {
+        IMessage response;
+        try {
+            response = handler.handleRequest(request);
+        } catch (IllegalArgumentException iae) {
+            LOG.error("IllegalArgumentException", iae);
+            LOG.error(request.toString());
+            response = new Message(Status.PUT_ERROR);
         }
+        response.setRequestId(request.getRequestId());
+        send(response);
 
-        K key = message.getK();
-        String keyHashed = key == null ? StringUtils.EMPTY_STRING : key.getHashed();
-
-        switch (message.getStatus()) {
-            case GET:
-                if (!server.getReadRange().contains(keyHashed)) {
-                    LOG.info("Server not responsible! Server hash range is " + server.getWriteRange() + ", key is " + keyHashed);
-                    return new Message(Status.SERVER_NOT_RESPONSIBLE, server.getMetadata());
-                }
-                return handleGET(message);
-
-            case PUT:
-                if (server.isWriteLocked() && !message.isInternal()) {
-                    LOG.info("Server is write-locked");
-                    return new Message(Status.SERVER_WRITE_LOCK);
-                }
-                if (server.getReadRange().contains(keyHashed) && message.isInternal() && StringUtils.isEmpty(message.getMRToken())) {
-                    LOG.info("Message is replicated on the server");
-                    return handlePUT(message);
-                }
-                if (!server.getWriteRange().contains(keyHashed)) {
-                    LOG.info("Server not responsible! Server hash range is " + server.getWriteRange() + ", key is " + keyHashed);
-                    LOG.info("Sending following metadata to client: " + server.getMetadata());
-                    return new Message(Status.SERVER_NOT_RESPONSIBLE, server.getMetadata());
-                }
-                if (message.getMRToken() != null) {
-                    LOG.info("Server got a MapReduce message");
-                }
-                return handlePUT(message);
-
-            case GET_METADATA:
-                LOG.info("Sending following metadata to client: " + server.getMetadata());
-                return new Message(Status.METADATA, server.getMetadata());
-
-            default:
-                throw LogUtils.printLogError(LOG, new IllegalArgumentException("Unknown Request Type " + message.getStatus()));
-        }
+        handler.replicateIfNeeded(request, response);
     }
 
-    private void replicate(IMessage message) {
-        message.setInternal();
-        server.getReplicator1().setMessage(message);
-        new Thread(server.getReplicator1()).start();
-
-        server.getReplicator2().setMessage(message);
-        new Thread(server.getReplicator2()).start();
+    /**
+     * Hands a request of a pipelining client to the workers, any other request is handled right away
+     */
+    private void handle(IMessage request) throws IOException, InterruptedException {
+        if (request.getRequestId() == 0)
+            respond(request);
+        else if (request.getStatus() == Status.PUT)
+            respondInOrder(request);
+        else
+            respondConcurrently(request);
     }
 
+    /**
+     * Hands a request to the workers. Blocks while {@value #MAX_IN_FLIGHT} requests of the connection are in flight
+     *
+     * @param request the request of the client
+     */
+    private void respondConcurrently(IMessage request) throws InterruptedException {
+        inFlight.acquire();
+        PIPELINE_WORKERS.execute(() -> respondInFlight(request));
+    }
 
     /**
-     * Handles and creates a suitable response for a put request
+     * Queues a write for the workers behind the earlier writes of the connection and starts a worker on the queue
+     * unless one is on it already. Blocks while {@value #MAX_IN_FLIGHT} requests of the connection are in flight
      *
-     * @return server response
+     * @param request the PUT or DELETE of the client
      */
-    private IMessage handlePUT(IMessage message) {
-        K key = message.getK();
-        V val = message.getV();
-
-        PUTStatus status = cm.put(key, val, message.getMRToken());
-        switch (status) {
-            case CREATE_SUCCESS:
-                return new Message(Status.PUT_SUCCESS, key, val);
-            case CREATE_ERROR:
-            case UPDATE_ERROR:
-                return new Message(Status.PUT_ERROR, key, val);
-            case UPDATE_SUCCESS:
-                return new Message(Status.PUT_UPDATE, key, val);
-            case DELETE_SUCCESS:
-                return new Message(Status.DELETE_SUCCESS, key);
-            case DELETE_ERROR:
-                return new Message(Status.DELETE_ERROR, key);
-            default:
-                LOG.error(new IllegalStateException("Unknown PUTStatus " + status));
-                throw new IllegalStateException("Unknown PUTStatus " + status);
+    private void respondInOrder(IMessage request) throws InterruptedException {
+        inFlight.acquire();
+        synchronized (pendingWrites) {
+            pendingWrites.add(request);
+            if (writing)
+                return;
+            writing = true;
         }
+        PIPELINE_WORKERS.execute(this::drainPendingWrites);
     }
 
     /**
-     * Handles and creates response for a get request
-     *
-     * @param message the get-request message sent by a client
-     * @return server response to client request
+     * Handles the {@link #pendingWrites} one after the other until none is left
+     */
+    private void drainPendingWrites() {
+        while (true) {
+            IMessage request;
+            synchronized (pendingWrites) {
+                request = pendingWrites.poll();
+                if (request == null) {
+                    writing = false;
+                    return;
+                }
+            }
+            respondInFlight(request);
+        }
+    }
+
+    /**
+     * Handles a request the workers got and releases its place among the requests in flight
      */
-    private IMessage handleGET(IMessage message) {
-        V val = cm.get(message.getK(), message.getMRToken());
-        return (val == null) ? new Message(Status.GET_ERROR, message.getK())
-                : new Message(Status.GET_SUCCESS, message.getK(), val);
+    private void respondInFlight(IMessage request) {
+        try {
+            respond(request);
+        } catch (IOException ioe) {
+            LOG.error("Error! Connection lost!", ioe);
+            isOpen = false;
+        } catch (Exception e) {
+            LOG.error("Exception", e);
+            isOpen = false;
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private static ThreadPoolExecutor createWorkers() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(WORKERS, WORKERS, WORKER_KEEP_ALIVE_S, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_LENGTH), task -> {
+            Thread thread = new Thread(task, "pipeline-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        workers.allowCoreThreadTimeOut(true);
+        return workers;
     }
 
     /**
-     * Sends out a message
+     * Sends out a message. Responses of concurrently handled requests are sent one after the other
      *
      * @param message Message that is sent
      * @throws IOException
      */
-    public void send(IMessage message) throws IOException {
-        byte[] toSend = MessageSerializer.serialize(message);
+    public synchronized void send(IMessage message) throws IOException {
+        WireProtocol protocol = decoder.getProtocol();
+        byte[] toSend = ((protocol == null) ? WireProtocol.SERIALIZED : protocol).encode(message);
         bos = new BufferedOutputStream(clientSocket.getOutputStream());
         bos.write(toSend);
         bos.flush();
@@ -251,36 +315,22 @@ public class ClientConnection implements Runnable {
 
 
     /**
-     * Receives a message sent by a client
+     * Receives a message sent by a client. Blocks until the message has arrived completely
      *
-     * @return the received message
-     * @throws IOException
+     * @return the received message, null if the client closed the connection
+     * @throws IOException if the connection is broken or the client sent something that is not a message
      */
-    private IMessage receive() {
-        byte[] messageBuffer = new byte[MAX_BUFFER_LENGTH];
-        int justRead = 0;
-        byte[] res = null;
+    private IMessage receive() throws IOException {
+        IMessage message;
         try {
-            bis = new BufferedInputStream(clientSocket.getInputStream());
-            justRead = bis.read(messageBuffer);
-
-            if (justRead < 0)
-                return null;
-
-            res = Arrays.copyOfRange(messageBuffer, 0, justRead);
-
-            LOG.info("RECEIVE \t<"
-                    + clientSocket.getInetAddress().getHostAddress() + ":"
-                    + clientSocket.getPort() + ">: '"
-                    + res.length + " bytes'");
+            message = decoder.read(clientSocket.getInputStream());
         } catch (EOFException e) {
-            LOG.error("CATCH EOFException", e);
-        } catch (IOException e) {
-            LOG.error(e);
+            LOG.info(e.getMessage() + " <"
+                    + clientSocket.getInetAddress().getHostAddress() + ":"
+                    + clientSocket.getPort() + ">");
+            return null;
         }
 
-        IMessage message = MessageSerializer.deserialize(res);
-
         LOG.info("RECEIVE \t<"
                 + clientSocket.getInetAddress().getHostAddress() + ":"
                 + clientSocket.getPort() + "> ===>'"
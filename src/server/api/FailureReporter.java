@@ -5,26 +5,23 @@ import management.MessageSerializer;
 import management.ReportStatus;
 
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
-import java.util.Arrays;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import ecs.NodeInfo;
 import protocol.Constants;
+import protocol.FrameDecoder;
+import protocol.kv.WireProtocol;
 import server.app.Server;
 import util.LogUtils;
 
-import static protocol.Constants.MAX_KV_MESSAGE_LENGTH;
-
 /**
  * Establishes a connection with the ECS and then sends a failure report to it
  */
@@ -35,7 +32,11 @@ public class FailureReporter {
 
     private Socket socket;
     private BufferedOutputStream bos;
-    private BufferedInputStream bis;
+
+    /**
+     * splits the received bytes into messages
+     */
+    private final FrameDecoder decoder = new FrameDecoder(WireProtocol.SERIALIZED);
 
 
     public FailureReporter() throws IOException {
@@ -101,22 +102,13 @@ public class FailureReporter {
     }
 
     private FailureReportMessage receive() throws IOException {
-        byte[] messageBuffer = new byte[MAX_KV_MESSAGE_LENGTH];
-        while (true) {
-            try {
-                bis = new BufferedInputStream(socket.getInputStream());
-                int justRead = bis.read(messageBuffer);
-                FailureReportMessage message = MessageSerializer.deserialize(Arrays.copyOfRange(messageBuffer, 0, justRead));
-
-                LOG.info("RECEIVE \t<"
-                        + socket.getInetAddress().getHostAddress() + ":"
-                        + socket.getPort() + ">: '"
-                        + message.toString().trim() + "'");
-                return message;
-            } catch (EOFException e) {
-                LOG.error("CATCH EOFException", e);
-            }
-        }
+        FailureReportMessage message = decoder.read(socket.getInputStream());
+
+        LOG.info("RECEIVE \t<"
+                + socket.getInetAddress().getHostAddress() + ":"
+                + socket.getPort() + ">: '"
+                + message.toString().trim() + "'");
+        return message;
     }
 
 }
@@ -0,0 +1,38 @@
+package server.api;
+
+/**
+ * How the server accepts and serves the connections on its service port
+ */
+public enum FrontEnd {
+    /**
+     * one thread per connection blocking in {@link ClientConnection}
+     */
+    BLOCKING("BLOCKING"),
+
+    /**
+     * a selector thread multiplexing all connections and a bounded pool of workers, see {@link NioConnectionManager}
+     */
+    NIO("NIO");
+
+    private String desc;
+
+    FrontEnd(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    /**
+     * @param name name of the front end, case insensitive
+     * @return the front end or null if there is none with that name
+     */
+    public static FrontEnd getByName(String name) {
+        for (FrontEnd frontEnd : values()) {
+            if (frontEnd.desc.equalsIgnoreCase(name))
+                return frontEnd;
+        }
+        return null;
+    }
+}
@@ -5,14 +5,14 @@ import management.MessageSerializer;
 import management.ConfigStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import protocol.FrameDecoder;
+import protocol.kv.WireProtocol;
 import server.app.Server;
 
 import java.io.*;
 import java.net.Socket;
-import java.util.Arrays;
 
 import static protocol.Constants.MAX_ALLOWED_EOF;
-import static protocol.Constants.MAX_KV_MESSAGE_LENGTH;
 
 
 /**
@@ -27,9 +27,13 @@ public class InternalConnection implements Runnable {
     private Socket peer;
 
     private Server server;
-    private BufferedInputStream bis;
     private BufferedOutputStream bos;
 
+    /**
+     * splits the received bytes into messages
+     */
+    private final FrameDecoder decoder = new FrameDecoder(WireProtocol.SERIALIZED);
+
     ConfigMessage configMessage;
 
     public InternalConnection(InternalConnectionManager manager, Socket peer, Server server) {
@@ -62,7 +66,10 @@ public class InternalConnection implements Runnable {
 
                 boolean success = handleRequest(configMessage);
 
-                ConfigMessage ack = new ConfigMessage(getAckStatus(configMessage.getStatus(), success));
+                ConfigStatus ackStatus = getAckStatus(configMessage.getStatus(), success);
+                ConfigMessage ack = ackStatus.equals(ConfigStatus.STATS_SUCCESS)
+                        ? new ConfigMessage(ackStatus, server.getStats())
+                        : new ConfigMessage(ackStatus);
                 LOG.info("sending ACK " + ack.getStatus());
                 send(ack);
                 eofCounter = 0;
@@ -89,10 +96,9 @@ public class InternalConnection implements Runnable {
             success = manager.getConnectionTable().remove(this);
         LOG.info("removed from internalConnectionTable?" + success + ". Is Manager destructed? " + (manager == null) + ".\nClosing socket now.");
         if (peer != null) {
-            bis.close();
             bos.close();
+            decoder.release();
             peer.close();
-            bis = null;
             bos = null;
             peer = null;
         }
@@ -125,6 +131,8 @@ public class InternalConnection implements Runnable {
                 return ConfigStatus.STOP_SUCCESS;
             case SHUTDOWN:
                 return ConfigStatus.SHUTDOWN_SUCCESS;
+            case STATS:
+                return ConfigStatus.STATS_SUCCESS;
             default:
                 throw new IllegalStateException("Unknown status of request!");
         }
@@ -140,7 +148,7 @@ public class InternalConnection implements Runnable {
         LOG.info("handle request from ECS with status " + configMessage.getStatus());
         switch (configMessage.getStatus()) {
             case INIT:
-                return server.initKVServer(configMessage.getMetadata(), configMessage.getCacheSize(), configMessage.getStrategy());
+                return server.initKVServer(configMessage.getMetadata(), configMessage.getCacheSize(), configMessage.getStrategy(), configMessage.getStorageConfig());
             case STOP:
                 return server.stopService();
             case START:
@@ -155,6 +163,8 @@ public class InternalConnection implements Runnable {
                 return server.moveData(configMessage.getTargetServer().getWriteRange(), configMessage.getTargetServer());
             case SHUTDOWN:
                 return server.shutdown();
+            case STATS:
+                return server.getCacheManager() != null;
             default:
                 throw new IllegalStateException("Unknown admin request!");
         }
@@ -186,25 +196,19 @@ public class InternalConnection implements Runnable {
      * @throws IOException
      */
     private ConfigMessage poll() throws IOException {
-        byte[] messageBuffer = new byte[MAX_KV_MESSAGE_LENGTH];
-        while (true) {
-            try {
-                bis = new BufferedInputStream(peer.getInputStream());
-                int justRead = bis.read(messageBuffer);
-                if (justRead < 0)
-                    return null;
-
-                ConfigMessage message = MessageSerializer.deserialize(Arrays.copyOfRange(messageBuffer, 0, justRead));
-
-                LOG.info("RECEIVE \t<"
-                        + peer.getInetAddress().getHostAddress() + ":"
-                        + peer.getPort() + ">: '"
-                        + message.toString().trim() + "'");
-                return message;
-            } catch (EOFException e) {
-                LOG.error("CATCH EOFException", e);
-            }
+        ConfigMessage message;
+        try {
+            message = decoder.read(peer.getInputStream());
+        } catch (EOFException e) {
+            LOG.info(e.getMessage());
+            return null;
         }
+
+        LOG.info("RECEIVE \t<"
+                + peer.getInetAddress().getHostAddress() + ":"
+                + peer.getPort() + ">: '"
+                + message.toString().trim() + "'");
+        return message;
     }
 
     public void setOpen(boolean open) {
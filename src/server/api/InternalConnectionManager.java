@@ -3,6 +3,7 @@ package server.api;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import server.app.Server;
+import util.ConnectionExecutor;
 
 import java.io.*;
 import java.net.BindException;
@@ -57,7 +58,7 @@ public class InternalConnectionManager implements Runnable {
                 Socket peer = adminSocket.accept();
                 InternalConnection internalConnection = new InternalConnection(this, peer, server);
                 connectionTable.add(internalConnection);
-                new Thread(internalConnection).start();
+                ConnectionExecutor.executeInternal(internalConnection);
             }
         } catch (IOException ioe) {
             LOG.error("Error! Connection could not be established!", ioe);
@@ -0,0 +1,117 @@
+package server.api;
+
+import protocol.FrameDecoder;
+import protocol.kv.IMessage;
+import protocol.kv.WireProtocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * State of a client connection served by the {@link NioConnectionManager}.
+ * A connection is either reading a request, waiting for a worker to handle it or writing the response, so that at
+ * most one request per connection is in progress. Unlike {@link ClientConnection}, it handles the requests of
+ * pipelining clients one after the other in the order they were sent.
+ * The requests are split from the bytes read by a {@link FrameDecoder}, which also detects the protocol of the
+ * connection from its first byte. Requests a client sends before it got the response to the previous one stay
+ * buffered until that response has been written.
+ */
+class NioConnection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final RequestHandler handler;
+
+    private final FrameDecoder decoder = new FrameDecoder();
+
+    /**
+     * response being written, null while reading or handling a request. Set by a worker, read by the selector thread
+     */
+    private volatile ByteBuffer output;
+
+    NioConnection(SocketChannel channel, SelectionKey key, RequestHandler handler) {
+        this.channel = channel;
+        this.key = key;
+        this.handler = handler;
+    }
+
+    /**
+     * Reads the bytes available on the channel
+     *
+     * @return the next request once it is complete, null if more bytes are needed
+     * @throws IOException if the client closed the connection or sent something that is not a message
+     */
+    IMessage read() throws IOException {
+        if (decoder.readFrom(channel) < 0)
+            throw new EOFException("Connection closed by the client");
+        return decoder.next();
+    }
+
+    /**
+     * Takes the next request from the bytes read so far, as a client may send several requests in a row
+     *
+     * @return the request, null if it has not arrived completely yet
+     * @throws IOException if the client sent something that is not a message
+     */
+    IMessage next() throws IOException {
+        return decoder.next();
+    }
+
+    /**
+     * Writes as much of the response as the channel accepts
+     *
+     * @return true if the response has been written completely
+     * @throws IOException if the connection is broken
+     */
+    boolean write() throws IOException {
+        channel.write(output);
+        if (output.hasRemaining())
+            return false;
+        output = null;
+        return true;
+    }
+
+    void setResponse(byte[] response) {
+        this.output = ByteBuffer.wrap(response);
+    }
+
+    boolean hasResponse() {
+        return output != null;
+    }
+
+    /**
+     * @return protocol of the client, {@link WireProtocol#SERIALIZED} if it has not sent anything yet
+     */
+    WireProtocol getProtocol() {
+        WireProtocol protocol = decoder.getProtocol();
+        return (protocol == null) ? WireProtocol.SERIALIZED : protocol;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    RequestHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Closes the connection. Called by the selector thread or by the worker handling a request of the connection,
+     * while the selector thread does not read from it
+     */
+    synchronized void close() {
+        key.cancel();
+        decoder.release();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the connection is given up anyway
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package server.api;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import protocol.kv.IMessage;
+import protocol.kv.IMessage.Status;
+import protocol.kv.Message;
+import server.app.Server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves all connections on the service port with a single selector thread instead of a thread per connection.
+ * The selector thread accepts connections and reads and writes non-blocking, while the requests themselves are
+ * handled by a bounded pool of workers, as they may block on the storage. A connection does not handle the next
+ * request before the response to the current one has been written, so that responses are sent in the order of the
+ * requests, even to clients that pipeline.
+ * If all workers are busy and their queue is full, complete requests wait in the selector thread until there is
+ * room again, which stops reading from their connections and thus pushes back on the clients.
+ */
+public class NioConnectionManager implements Runnable {
+    private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
+
+    private static final int WORKERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int WORKER_QUEUE_LENGTH = 1024;
+    private static final long SELECT_TIMEOUT_MS = 100;
+    private static final long RETRY_TIMEOUT_MS = 1;
+
+    private final Server server;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ThreadPoolExecutor workers;
+    private volatile boolean closed;
+
+    /**
+     * connections whose response is ready to be written. Filled by the workers, drained by the selector thread
+     */
+    private final Queue<NioConnection> responded = new ConcurrentLinkedQueue<>();
+
+    /**
+     * requests the workers did not accept yet. Only accessed by the selector thread
+     */
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+
+    public NioConnectionManager(Server server) {
+        this.server = server;
+    }
+
+    /**
+     * Binds the service port
+     *
+     * @return boolean value indicating if the port was successfully bound
+     */
+    public boolean open() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(server.getServicePort()));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(WORKER_QUEUE_LENGTH));
+            workers.prestartAllCoreThreads();
+            LOG.info("Server listening non-blocking on servicePort: " + server.getServicePort() + " with " + WORKERS + " workers");
+            return true;
+        } catch (IOException e) {
+            LOG.error("Error! Cannot open server socket channel:");
+            if (e instanceof BindException) {
+                LOG.error("Port " + server.getServicePort() + " is already bound!", e);
+            }
+            release();
+            return false;
+        }
+    }
+
+    /**
+     * Loops until the server stops running or the manager is closed
+     */
+    @Override
+    public void run() {
+        try {
+            while (server.isRunning() && !closed) {
+                selector.select(pending.isEmpty() ? SELECT_TIMEOUT_MS : RETRY_TIMEOUT_MS);
+                submitPending();
+                registerResponses();
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else if (key.isReadable())
+                        read((NioConnection) key.attachment());
+                    else if (key.isWritable())
+                        write((NioConnection) key.attachment());
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed)
+                LOG.error("Error! Selector failed", e);
+        } finally {
+            release();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new NioConnection(channel, key, new RequestHandler(server, server.getCacheManager())));
+        LOG.info("Connected to " + channel.getRemoteAddress() + " on servicePort " + server.getServicePort());
+    }
+
+    private void read(NioConnection connection) {
+        IMessage request;
+        try {
+            request = connection.read();
+        } catch (EOFException e) {
+            LOG.info("Connection closed by the client " + connection.getChannel());
+            connection.close();
+            return;
+        } catch (IOException e) {
+            LOG.warn("Closing connection " + connection.getChannel(), e);
+            connection.close();
+            return;
+        }
+        if (request != null)
+            dispatch(connection, request);
+    }
+
+    /**
+     * Stops reading from the connection and hands its request to a worker
+     */
+    private void dispatch(NioConnection connection, IMessage request) {
+        LOG.info("RECEIVE \t<" + connection.getChannel() + "> ===>'" + request + "'");
+        connection.getKey().interestOps(0);
+        Runnable task = () -> handle(connection, request);
+        if (!pending.isEmpty() || !submit(task))
+            pending.add(task);
+    }
+
+    /**
+     * Writes the response and then handles the next request if the client already sent it, otherwise reads again
+     */
+    private void write(NioConnection connection) {
+        try {
+            if (!connection.write())
+                return;
+            IMessage next = connection.next();
+            if (next != null)
+                dispatch(connection, next);
+            else
+                connection.getKey().interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            LOG.error("Error! Connection lost!", e);
+            connection.close();
+        }
+    }
+
+    /**
+     * Handles a request in a worker and hands the response back to the selector thread
+     */
+    private void handle(NioConnection connection, IMessage request) {
+        IMessage response;
+        try {
+            response = connection.getHandler().handleRequest(request);
+        } catch (IllegalArgumentException iae) {
+            LOG.error("IllegalArgumentException", iae);
+            LOG.error(request.toString());
+            response = new Message(Status.PUT_ERROR);
+        } catch (Exception e) {
+            LOG.error("Exception", e);
+            connection.close();
+            return;
+        }
+        response.setRequestId(request.getRequestId());
+        connection.setResponse(connection.getProtocol().encode(response));
+        responded.add(connection);
+        selector.wakeup();
+        LOG.info("SEND \t<" + connection.getChannel() + "> ===> '" + response + "'");
+
+        connection.getHandler().replicateIfNeeded(request, response);
+    }
+
+    private boolean submit(Runnable task) {
+        try {
+            workers.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void submitPending() {
+        while (!pending.isEmpty() && submit(pending.peek()))
+            pending.poll();
+    }
+
+    private void registerResponses() {
+        NioConnection connection;
+        while ((connection = responded.poll()) != null) {
+            if (connection.getKey().isValid() && connection.hasResponse())
+                connection.getKey().interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Stops accepting connections. The selector thread then closes all connections and stops the workers
+     */
+    public void close() {
+        closed = true;
+        try {
+            if (serverChannel != null)
+                serverChannel.close();
+        } catch (IOException e) {
+            LOG.error("Error! Unable to close server socket channel!", e);
+        }
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    private void release() {
+        try {
+            if (selector != null && selector.isOpen()) {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioConnection)
+                        ((NioConnection) key.attachment()).close();
+                }
+                selector.close();
+            }
+            if (serverChannel != null)
+                serverChannel.close();
+        } catch (IOException e) {
+            LOG.error("Error! Unable to close server socket channel!", e);
+        }
+        if (workers != null)
+            workers.shutdown();
+    }
+}
@@ -6,8 +6,10 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import protocol.kv.IMessage;
 import server.app.Server;
+import util.ConnectionExecutor;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 
 /**
  * This class is responsible for replicating the PUT-messages to a replica
@@ -29,6 +31,16 @@ public class Replicator implements Runnable {
      */
     private NodeInfo replica;
 
+    /**
+     * PUT-messages waiting for the one being replicated. Guarded by itself
+     */
+    private final ArrayDeque<IMessage> pending = new ArrayDeque<>();
+
+    /**
+     * whether a thread is replicating the {@link #pending} messages. Guarded by them
+     */
+    private boolean replicating;
+
     public Replicator(NodeInfo replica) {
         this.replica = replica;
         resetClient();
@@ -54,6 +66,15 @@ public class Replicator implements Runnable {
 
     @Override
     public void run() {
+        replicate(message);
+    }
+
+    /**
+     * Sends a PUT-message to the replica. Concurrent calls replicate one after the other, as they share the client
+     *
+     * @param message the PUT-message to be replicated
+     */
+    public synchronized void replicate(IMessage message) {
         try {
             if (client == null)
                 createClient();
@@ -70,6 +91,39 @@ public class Replicator implements Runnable {
         }
     }
 
+    /**
+     * Replicates a PUT-message in the background, after the messages handed over before it, so that the replica
+     * applies the writes of a key in the order the server applied them
+     *
+     * @param message the PUT-message to be replicated
+     */
+    public void replicateInOrder(IMessage message) {
+        synchronized (pending) {
+            pending.add(message);
+            if (replicating)
+                return;
+            replicating = true;
+        }
+        ConnectionExecutor.executeInternal(this::replicatePending);
+    }
+
+    /**
+     * Replicates the {@link #pending} messages one after the other until none is left
+     */
+    private void replicatePending() {
+        while (true) {
+            IMessage message;
+            synchronized (pending) {
+                message = pending.poll();
+                if (message == null) {
+                    replicating = false;
+                    return;
+                }
+            }
+            replicate(message);
+        }
+    }
+
     public void setMessage(IMessage message) {
         this.message = message;
     }
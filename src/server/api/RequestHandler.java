@@ -0,0 +1,162 @@
+package server.api;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import protocol.kv.IMessage;
+import protocol.kv.IMessage.Status;
+import protocol.kv.K;
+import protocol.kv.Message;
+import protocol.kv.V;
+import server.app.Server;
+import server.storage.PUTStatus;
+import server.storage.cache.CacheManager;
+import util.LogUtils;
+import util.StringUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Serves the requests of clients and other servers on the service port, whichever front end received them.
+ * Checks whether the server is responsible for the key, forwards reads and writes to the {@link CacheManager}
+ * and replicates successful writes of clients.
+ */
+public class RequestHandler {
+    private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
+
+    private static final Set<Status> SUCCESS_STATUS = new HashSet<>(Arrays.asList(new Status[]{Status.PUT_SUCCESS, Status.PUT_UPDATE, Status.DELETE_SUCCESS}));
+
+    private final Server server;
+    private final CacheManager cm;
+
+    public RequestHandler(Server server, CacheManager cm) {
+        this.server = server;
+        this.cm = cm;
+    }
+
+    /**
+     * Handle request sent from client
+     *
+     * @param message the request message from the client
+     * @return a response message to the client
+     */
+    public IMessage handleRequest(IMessage message) {
+        if (server.isStopped()) {
+            LOG.info("Server is in STOP STATE");
+            return new Message(Status.SERVER_STOPPED);
+        }
+
+        K key = message.getK();
+        String keyHashed = key == null ? StringUtils.EMPTY_STRING : key.getHashed();
+
+        switch (message.getStatus()) {
+            case GET:
+                if (!server.getReadRange().contains(keyHashed)) {
+                    LOG.info("Server not responsible! Server hash range is " + server.getWriteRange() + ", key is " + keyHashed);
+                    return new Message(Status.SERVER_NOT_RESPONSIBLE, server.getMetadata());
+                }
+                return handleGET(message);
+
+            case PUT:
+                if (server.isWriteLocked() && !message.isInternal()) {
+                    LOG.info("Server is write-locked");
+                    return new Message(Status.SERVER_WRITE_LOCK);
+                }
+                if (server.getReadRange().contains(keyHashed) && message.isInternal() && StringUtils.isEmpty(message.getMRToken())) {
+                    LOG.info("Message is replicated on the server");
+                    return handlePUT(message);
+                }
+                if (!server.getWriteRange().contains(keyHashed)) {
+                    LOG.info("Server not responsible! Server hash range is " + server.getWriteRange() + ", key is " + keyHashed);
+                    LOG.info("Sending following metadata to client: " + server.getMetadata());
+                    return new Message(Status.SERVER_NOT_RESPONSIBLE, server.getMetadata());
+                }
+                if (message.getMRToken() != null) {
+                    LOG.info("Server got a MapReduce message");
+                }
+                return handlePUT(message);
+
+            case GET_METADATA:
+                LOG.info("Sending following metadata to client: " + server.getMetadata());
+                return new Message(Status.METADATA, server.getMetadata());
+
+            default:
+                throw LogUtils.printLogError(LOG, new IllegalArgumentException("Unknown Request Type " + message.getStatus()));
+        }
+    }
+
+    /**
+     * Replicates a request to the two successors of the server if it changed data on behalf of a client.
+     * To be called after the response has been sent, so that the client does not wait for the replication
+     *
+     * @param request  the request from the client
+     * @param response the response sent to the client
+     */
+    public void replicateIfNeeded(IMessage request, IMessage response) {
+        LOG.debug("REQ is internal: " + request.isInternal());
+        if (SUCCESS_STATUS.contains(response.getStatus()) && !request.isInternal())
+            replicate(request);
+    }
+
+    /**
+     * Hands a request to both replicas, which replicate it after the requests handed to them before. A replica that
+     * is the server itself, as in rings of one or two servers, is skipped, as replaying the request later could
+     * overwrite a newer value
+     */
+    private void replicate(IMessage message) {
+        message.setInternal();
+        Replicator replicator1 = server.getReplicator1();
+        if (!isServerItself(replicator1))
+            replicator1.replicateInOrder(message);
+
+        Replicator replicator2 = server.getReplicator2();
+        if (!isServerItself(replicator2))
+            replicator2.replicateInOrder(message);
+    }
+
+    private boolean isServerItself(Replicator replicator) {
+        return server.getServerId().equals(replicator.getReplica().getId());
+    }
+
+
+    /**
+     * Handles and creates a suitable response for a put request
+     *
+     * @return server response
+     */
+    private IMessage handlePUT(IMessage message) {
+        K key = message.getK();
+        V val = message.getV();
+
+        PUTStatus status = cm.put(key, val, message.getMRToken(), !message.isNoAdmit());
+        switch (status) {
+            case CREATE_SUCCESS:
+                return new Message(Status.PUT_SUCCESS, key, val);
+            case CREATE_ERROR:
+            case UPDATE_ERROR:
+                return new Message(Status.PUT_ERROR, key, val);
+            case UPDATE_SUCCESS:
+                return new Message(Status.PUT_UPDATE, key, val);
+            case DELETE_SUCCESS:
+                return new Message(Status.DELETE_SUCCESS, key);
+            case DELETE_ERROR:
+                return new Message(Status.DELETE_ERROR, key);
+            default:
+                LOG.error(new IllegalStateException("Unknown PUTStatus " + status));
+                throw new IllegalStateException("Unknown PUTStatus " + status);
+        }
+    }
+
+    /**
+     * Handles and creates response for a get request
+     *
+     * @param message the get-request message sent by a client
+     * @return server response to client request
+     */
+    private IMessage handleGET(IMessage message) {
+        V val = cm.get(message.getK(), message.getMRToken(), !message.isNoAdmit());
+        return (val == null) ? new Message(Status.GET_ERROR, message.getK())
+                : new Message(Status.GET_SUCCESS, message.getK(), val);
+    }
+}
@@ -10,8 +10,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 import server.api.*;
+import server.storage.StorageConfig;
 import server.storage.cache.CacheDisplacementStrategy;
 import server.storage.cache.CacheManager;
+import server.storage.stats.StorageStats;
+import util.ConnectionExecutor;
+import util.ExecutionMode;
 import util.FileUtils;
 import util.Validate;
 
@@ -25,6 +29,7 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import static server.Constants.HEARTBEAT_RECEIVE_PORT_DISTANCE;
 import static util.FileUtils.WORKING_DIR;
@@ -55,6 +60,8 @@ public class Server extends Thread implements IExternalConfigurationService {
     private boolean running;
 
     private ServerSocket kvSocket;
+    private final FrontEnd frontEnd;
+    private NioConnectionManager nioConnectionManager;
     /* keeps the range of values that this and other servers are responsible for */
     private Metadata metadata;
     private KeyHashRange writeRange;
@@ -77,7 +84,19 @@ public class Server extends Thread implements IExternalConfigurationService {
      * @param logLevel    specifies the logging Level on the server
      */
     public Server(String serverId, int servicePort, int adminPort, String logLevel) {
+        this(serverId, servicePort, adminPort, logLevel, FrontEnd.BLOCKING);
+    }
+
+    /**
+     * Start KV Server at given servicePort
+     *
+     * @param servicePort given servicePort for disk server to operate
+     * @param logLevel    specifies the logging Level on the server
+     * @param frontEnd    specifies how the server serves the connections on the servicePort
+     */
+    public Server(String serverId, int servicePort, int adminPort, String logLevel, FrontEnd frontEnd) {
         this.serverId = serverId;
+        this.frontEnd = frontEnd;
         this.servicePort = servicePort;
         this.adminPort = adminPort;
         Configurator.setRootLevel(Level.getLevel(logLevel));
@@ -85,7 +104,7 @@ public class Server extends Thread implements IExternalConfigurationService {
 
         internalConnectionManager = new InternalConnectionManager(this);
         taskReceiver = new TaskReceiver(this);
-        LOG.info("Server constructed with servicePort " + this.servicePort + " and  with logging Level " + logLevel);
+        LOG.info("Server constructed with servicePort " + this.servicePort + ", " + frontEnd.getDesc() + " front end and  with logging Level " + logLevel);
 
     }
 
@@ -96,11 +115,24 @@ public class Server extends Thread implements IExternalConfigurationService {
      * @param strategy  specifies the storage replacement strategy in case the
      *                  storage is full and there is a GET- or PUT-request on a key
      *                  that is currently not contained in the storage. Options are
-     *                  "FIFO", "LRU", and "LFU".
+     *                  "FIFO", "LRU", "LFU", "WTINYLFU", "ARC" and "CLOCK".
      * @return
      */
     @Override
     public boolean initKVServer(Metadata metadata, int cacheSize, String strategy) {
+        return initKVServer(metadata, cacheSize, strategy, new StorageConfig());
+    }
+
+    /**
+     * @param metadata      info about assignment of key ranges on servers in the ring
+     * @param cacheSize     specifies how many key-value pairs the server is allowed to
+     *                      keep in-memory
+     * @param strategy      specifies the storage replacement strategy, see {@link #initKVServer(Metadata, int, String)}
+     * @param storageConfig specifies how the server keeps its data on disk e.g. the storage engine
+     * @return
+     */
+    @Override
+    public boolean initKVServer(Metadata metadata, int cacheSize, String strategy, StorageConfig storageConfig) {
         if (!isValidCacheSize(cacheSize)) {
             LOG.error("Invalid cache size");
             return false;
@@ -111,11 +143,11 @@ public class Server extends Thread implements IExternalConfigurationService {
             return false;
         }
 
-        this.cm = new CacheManager(serverId, cacheSize, getDisplacementStrategyByName(strategy));
+        this.cm = new CacheManager(serverId, cacheSize, getDisplacementStrategyByName(strategy), storageConfig);
         boolean success = update(metadata);
         if (success)
             LOG.info("Server initialized with cache size " + cacheSize
-                    + " and displacement strategy " + strategy);
+                    + ", displacement strategy " + strategy + " and " + storageConfig);
         return success;
     }
 
@@ -162,14 +194,23 @@ public class Server extends Thread implements IExternalConfigurationService {
         if (state.equals(NodeState.STOPPED) || stopService()) {
             try {
                 internalConnectionManager.getAdminSocket().close();
-                kvSocket.close();
-                heartbeatReceiver.close();
-                heartbeatSender.close();
+                if (nioConnectionManager != null)
+                    nioConnectionManager.close();
+                else
+                    kvSocket.close();
+                if (heartbeatReceiver != null)
+                    heartbeatReceiver.close();
+                if (heartbeatSender != null)
+                    heartbeatSender.close();
                 taskReceiver.close();
                 running = false;
             } catch (IOException e) {
                 LOG.error("Unable to close internal management socket or KV-socket! \n" + e);
             }
+            if (cm != null) {
+                cm.saveWarmUpSnapshot();
+                cm.getPersistenceManager().close();
+            }
         }
         return !running;
     }
@@ -208,6 +249,8 @@ public class Server extends Thread implements IExternalConfigurationService {
             return false;
         }
         setReplicas();
+        if (cm != null)
+            cm.clearNegativeCache();
 
         LOG.info("Current Metadata = " + this.metadata);
 
@@ -249,7 +292,7 @@ public class Server extends Thread implements IExternalConfigurationService {
             return false;
         }
         LOG.info("Moving data to " + target.getId());
-        return new BatchDataTransferProcessor(target, cm.getPersistenceManager().getDbPath()).handleTransferData(range);
+        return new BatchDataTransferProcessor(target, cm.getPersistenceManager()).handleTransferData(range);
 
     }
 
@@ -263,7 +306,12 @@ public class Server extends Thread implements IExternalConfigurationService {
      */
     @Override
     public void run() {
-        running = openServiceSocket();
+        if (frontEnd == FrontEnd.NIO) {
+            nioConnectionManager = new NioConnectionManager(this);
+            running = nioConnectionManager.open();
+        } else {
+            running = openServiceSocket();
+        }
         LOG.info("Server's running = " + running);
 
         Validate.notNull(internalConnectionManager, "internalConnectionManager is null");
@@ -272,12 +320,25 @@ public class Server extends Thread implements IExternalConfigurationService {
         new Thread(internalConnectionManager).start();
         new Thread(taskReceiver).start();
 
-        if (kvSocket != null) {
+        if (nioConnectionManager != null) {
+            if (running)
+                nioConnectionManager.run();
+        } else if (kvSocket != null) {
             while (isRunning()) {
                 try {
                     Socket client = kvSocket.accept();
                     ClientConnection connection = new ClientConnection(this, client, cm);
-                    new Thread(connection).start();
+                    try {
+                        ConnectionExecutor.execute(connection);
+                    } catch (RejectedExecutionException e) {
+                        try {
+                            ConnectionExecutor.executeReserved(connection::runReserved);
+                        } catch (RejectedExecutionException re) {
+                            LOG.warn("Too many client connections. Closing connection of " + client.getInetAddress().getHostName());
+                            client.close();
+                        }
+                        continue;
+                    }
                     LOG.info("Client connection initialized");
 
                     LOG.info(
@@ -336,7 +397,7 @@ public class Server extends Thread implements IExternalConfigurationService {
 
     private void updateWriteRange() throws NoSuchElementException {
         LOG.info(metadata);
-        LOG.info("kvSocket.getLocalPort() = " + kvSocket.getLocalPort());
+        LOG.info("servicePort = " + servicePort);
         LOG.info("serverId = " + serverId);
 
         int i = metadata.getIndexById(serverId);
@@ -351,6 +412,13 @@ public class Server extends Thread implements IExternalConfigurationService {
         readRange = new KeyHashRange(secondPredecessorRange.getStart(), writeRange.getEnd());
     }
 
+    @Override
+    public StorageStats getStats() {
+        if (cm == null)
+            return null;
+        return cm.getStats().with("server.state", state);
+    }
+
     /**
      * Gets cache manager
      *
@@ -370,6 +438,10 @@ public class Server extends Thread implements IExternalConfigurationService {
         return state;
     }
 
+    public FrontEnd getFrontEnd() {
+        return frontEnd;
+    }
+
     public int getServicePort() {
         return servicePort;
     }
@@ -438,7 +510,7 @@ public class Server extends Thread implements IExternalConfigurationService {
     }
 
     private boolean isValidDisplacementStrategy(String strategy) {
-        String[] validStrategies = {"FIFO", "LRU", "LFU"};
+        String[] validStrategies = {"FIFO", "LRU", "LFU", "WTINYLFU", "ARC", "CLOCK"};
         return Arrays.stream(validStrategies).anyMatch(strategy::equals);
     }
 
@@ -460,6 +532,12 @@ public class Server extends Thread implements IExternalConfigurationService {
                 return CacheDisplacementStrategy.LRU;
             case "LFU":
                 return CacheDisplacementStrategy.LFU;
+            case "WTINYLFU":
+                return CacheDisplacementStrategy.WTINYLFU;
+            case "ARC":
+                return CacheDisplacementStrategy.ARC;
+            case "CLOCK":
+                return CacheDisplacementStrategy.CLOCK;
             default:
                 throw new IllegalArgumentException("Invalid displacement strategy.");
         }
@@ -488,7 +566,9 @@ public class Server extends Thread implements IExternalConfigurationService {
     /**
      * Main entry point for the echo server application.
      *
-     * @param args contains the servicePort number at args[0], the cache loadedDataSize at args[1], the cache displacement strategy at args[2] and the logging Level at args[3].
+     * @param args contains the server name at args[0], the servicePort number at args[1], the administration port at args[2]
+     *             and optionally the logging Level, the front end (BLOCKING or NIO) and the execution mode of the
+     *             connection handlers (THREAD or VIRTUAL, see {@link ConnectionExecutor}) after that in any order.
      */
     public static void main(String[] args) throws IOException {
         Path logDir = Paths.get(WORKING_DIR + "/logs");
@@ -503,15 +583,22 @@ public class Server extends Thread implements IExternalConfigurationService {
 
 
     private static Server createServer(String[] args) {
-        if (args.length < 3 || args.length > 4)
+        if (args.length < 3 || args.length > 6)
             throw new IllegalArgumentException("Server name and servicePort must be provided to start the server");
 
         String serverName = args[0];
         String portString = args[1];
         String adminPortString = args[2];
         String logLevel = DEFAULT_LOG_LEVEL;
-        if (args.length == 4 && isValidLogLevel(args[3]))
-            logLevel = args[3];
+        FrontEnd frontEnd = FrontEnd.BLOCKING;
+        for (int i = 3; i < args.length; i++) {
+            if (FrontEnd.getByName(args[i]) != null)
+                frontEnd = FrontEnd.getByName(args[i]);
+            else if (ExecutionMode.getByName(args[i]) != null)
+                ConnectionExecutor.setMode(ExecutionMode.getByName(args[i]));
+            else if (isValidLogLevel(args[i]))
+                logLevel = args[i];
+        }
 
         int port = isValidPortNumber(portString) ? Integer.parseInt(portString) : -1;
         int adminPort = isValidPortNumber(adminPortString) ? Integer.parseInt(adminPortString) : -1;
@@ -522,7 +609,7 @@ public class Server extends Thread implements IExternalConfigurationService {
             throw e;
         }
 
-        return new Server(serverName, port, adminPort, logLevel);
+        return new Server(serverName, port, adminPort, logLevel, frontEnd);
     }
 
     public int getAdminPort() {
@@ -0,0 +1,441 @@
+package server.storage;
+
+import server.storage.disk.Codec;
+import server.storage.disk.Durability;
+import server.storage.disk.ReadMode;
+import server.storage.disk.StorageEngine;
+
+import java.io.Serializable;
+
+/**
+ * Storage settings of a single server. The settings are handed to the server together with the INIT command
+ * and can be given as optional <code>name=value</code> pairs after the mandatory arguments of the
+ * ECS commands "init" and "add", e.g. <code>init 3 100 LRU engine=LOG</code>.
+ * Every setting that is not given keeps its default value.
+ */
+public class StorageConfig implements Serializable {
+    private static final long serialVersionUID = -3758435575978589122L;
+
+    public static final String STORAGE_ENGINE = "engine";
+    public static final String SEGMENT_SIZE = "segment.size";
+    public static final String COMPACTION_RATIO = "compaction.ratio";
+    public static final String COMPACTION_RATE = "compaction.rate";
+    public static final String DURABILITY = "durability";
+    public static final String DURABILITY_INTERVAL = "durability.interval";
+    public static final String READ_MODE = "read.mode";
+    public static final String COMPRESSION = "compression";
+    public static final String COMPRESSION_THRESHOLD = "compression.threshold";
+    public static final String CACHE_BYTES = "cache.bytes";
+    public static final String LFU_AGING = "cache.lfu.aging";
+    public static final String CACHE_OFF_HEAP = "cache.offheap";
+    public static final String NEGATIVE_CACHE_SIZE = "cache.negative.size";
+    public static final String NEGATIVE_CACHE_TTL = "cache.negative.ttl";
+    public static final String CACHE_WARM_UP = "cache.warmup";
+
+    private static final String OPTION_SEP = "=";
+    private static final String[] SIZE_UNITS = {"KB", "MB", "GB"};
+
+    /**
+     * layout in which the server keeps its data on disk
+     */
+    private StorageEngine storageEngine = StorageEngine.FILE;
+
+    /**
+     * size in bytes from which on the active segment of the LOG engine is sealed and a new one is started
+     */
+    private long segmentSize = 64L * 1024 * 1024;
+
+    /**
+     * share of dead bytes in the sealed segments of the LOG engine from which on they are compacted
+     */
+    private double compactionRatio = 0.5;
+
+    /**
+     * maximum number of bytes per second the compaction of the LOG engine reads. 0 means unlimited
+     */
+    private long compactionRate = 16L * 1024 * 1024;
+
+    /**
+     * point in time at which writes are forced onto the storage device
+     */
+    private Durability durability = Durability.OS;
+
+    /**
+     * milliseconds between two forces of written data if the durability is {@link Durability#INTERVAL}
+     */
+    private long durabilityInterval = 100;
+
+    /**
+     * way in which the LOG engine reads values from its segments
+     */
+    private ReadMode readMode = ReadMode.CHANNEL;
+
+    /**
+     * codec the LOG engine compresses values with
+     */
+    private Codec codec = Codec.NONE;
+
+    /**
+     * size in bytes from which on values are compressed. Smaller values rarely shrink enough to pay off
+     */
+    private long compressionThreshold = 1024;
+
+    /**
+     * maximum total size in bytes of the keys and values in the cache. 0 means the cache is bounded by its number
+     * of entries instead
+     */
+    private long cacheBytes = 0;
+
+    /**
+     * number of cache accesses after which the LFU strategy halves all access counts. 0 disables aging
+     */
+    private long lfuAgingPeriod = 0;
+
+    /**
+     * whether the cache keeps its values outside of the Java heap, in an arena of {@link #cacheBytes} bytes
+     */
+    private boolean cacheOffHeap = false;
+
+    /**
+     * maximum number of missing keys the cache remembers. 0 disables caching misses
+     */
+    private long negativeCacheSize = 1024;
+
+    /**
+     * milliseconds for which the cache remembers a missing key
+     */
+    private long negativeCacheTtl = 1000;
+
+    /**
+     * number of the hottest cached keys saved on shutdown and prefetched on start. 0 disables the warm-up
+     */
+    private long warmUpKeys = 0;
+
+    /**
+     * Parses the optional storage settings of an ECS command
+     *
+     * @param options settings in format <code>name=value</code>
+     * @return a config holding the given settings and the default value for every other setting
+     * @throws IllegalArgumentException if an option is malformed, unknown or has an invalid value
+     */
+    public static StorageConfig parse(String... options) throws IllegalArgumentException {
+        StorageConfig config = new StorageConfig();
+        for (String option : options) {
+            String[] nameValue = option.split(OPTION_SEP, 2);
+            if (nameValue.length != 2)
+                throw new IllegalArgumentException("Invalid storage option '" + option + "'. Expected format is <name>" + OPTION_SEP + "<value>");
+            config.set(nameValue[0].trim(), nameValue[1].trim());
+        }
+        if (config.cacheOffHeap && config.cacheBytes == 0)
+            throw new IllegalArgumentException(CACHE_OFF_HEAP + " requires " + CACHE_BYTES + " to size the off-heap arena");
+        return config;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case STORAGE_ENGINE:
+                withStorageEngine(getStorageEngineByName(value));
+                break;
+            case SEGMENT_SIZE:
+                withSegmentSize(parseBytes(name, value));
+                break;
+            case COMPACTION_RATIO:
+                withCompactionRatio(parseDouble(name, value));
+                break;
+            case COMPACTION_RATE:
+                withCompactionRate(parseBytes(name, value));
+                break;
+            case DURABILITY:
+                withDurability(getDurabilityByName(value));
+                break;
+            case DURABILITY_INTERVAL:
+                withDurabilityInterval(parseLong(name, value));
+                break;
+            case READ_MODE:
+                withReadMode(getReadModeByName(value));
+                break;
+            case COMPRESSION:
+                withCodec(getCodecByName(value));
+                break;
+            case COMPRESSION_THRESHOLD:
+                withCompressionThreshold(parseBytes(name, value));
+                break;
+            case CACHE_BYTES:
+                withCacheBytes(parseBytes(name, value));
+                break;
+            case LFU_AGING:
+                withLfuAgingPeriod(parseLong(name, value));
+                break;
+            case CACHE_OFF_HEAP:
+                withCacheOffHeap(parseBoolean(name, value));
+                break;
+            case NEGATIVE_CACHE_SIZE:
+                withNegativeCacheSize(parseLong(name, value));
+                break;
+            case NEGATIVE_CACHE_TTL:
+                withNegativeCacheTtl(parseLong(name, value));
+                break;
+            case CACHE_WARM_UP:
+                withWarmUpKeys(parseLong(name, value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown storage option '" + name + "'");
+        }
+    }
+
+    private static StorageEngine getStorageEngineByName(String engine) {
+        for (StorageEngine e : StorageEngine.values()) {
+            if (e.getDesc().equals(engine.toUpperCase()))
+                return e;
+        }
+        throw new IllegalArgumentException("Invalid storage engine '" + engine + "'. Please choose either 'FILE' or 'LOG'.");
+    }
+
+    private static Durability getDurabilityByName(String durability) {
+        for (Durability d : Durability.values()) {
+            if (d.getDesc().equals(durability.toUpperCase()))
+                return d;
+        }
+        throw new IllegalArgumentException("Invalid durability '" + durability + "'. Please choose either 'ALWAYS', 'INTERVAL' or 'OS'.");
+    }
+
+    private static ReadMode getReadModeByName(String readMode) {
+        for (ReadMode m : ReadMode.values()) {
+            if (m.getDesc().equals(readMode.toUpperCase()))
+                return m;
+        }
+        throw new IllegalArgumentException("Invalid read mode '" + readMode + "'. Please choose either 'CHANNEL' or 'MMAP'.");
+    }
+
+    private static Codec getCodecByName(String codec) {
+        for (Codec c : Codec.values()) {
+            if (c.getDesc().equals(codec.toUpperCase()))
+                return c;
+        }
+        throw new IllegalArgumentException("Invalid compression '" + codec + "'. Please choose either 'NONE' or 'DEFLATE'.");
+    }
+
+    /**
+     * Parses a number of bytes, optionally followed by one of the units KB, MB or GB, e.g. <code>64MB</code>
+     *
+     * @param name  name of the option
+     * @param value value of the option
+     * @return the number of bytes
+     */
+    static long parseBytes(String name, String value) {
+        String number = value.toUpperCase();
+        long factor = 1;
+        for (int i = 0; i < SIZE_UNITS.length; i++) {
+            if (number.endsWith(SIZE_UNITS[i])) {
+                number = number.substring(0, number.length() - SIZE_UNITS[i].length()).trim();
+                factor = 1L << (10 * (i + 1));
+                break;
+            }
+        }
+        if (number.endsWith("B"))
+            number = number.substring(0, number.length() - 1).trim();
+        try {
+            return Long.parseLong(number) * factor;
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid size '" + value + "' for storage option '" + name + "'");
+        }
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid number '" + value + "' for storage option '" + name + "'");
+        }
+    }
+
+    private static boolean parseBoolean(String name, String value) {
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+            throw new IllegalArgumentException("Invalid boolean '" + value + "' for storage option '" + name + "'");
+        return Boolean.parseBoolean(value);
+    }
+
+    private static double parseDouble(String name, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid number '" + value + "' for storage option '" + name + "'");
+        }
+    }
+
+    public StorageConfig withStorageEngine(StorageEngine storageEngine) {
+        this.storageEngine = storageEngine;
+        return this;
+    }
+
+    public StorageConfig withSegmentSize(long segmentSize) {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(SEGMENT_SIZE + " must be positive and below 2GB");
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    public StorageConfig withCompactionRatio(double compactionRatio) {
+        if (compactionRatio <= 0 || compactionRatio > 1)
+            throw new IllegalArgumentException(COMPACTION_RATIO + " must be in (0, 1]");
+        this.compactionRatio = compactionRatio;
+        return this;
+    }
+
+    public StorageConfig withCompactionRate(long compactionRate) {
+        if (compactionRate < 0)
+            throw new IllegalArgumentException(COMPACTION_RATE + " must not be negative");
+        this.compactionRate = compactionRate;
+        return this;
+    }
+
+    public StorageConfig withDurability(Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+
+    public StorageConfig withDurabilityInterval(long durabilityInterval) {
+        if (durabilityInterval <= 0)
+            throw new IllegalArgumentException(DURABILITY_INTERVAL + " must be positive");
+        this.durabilityInterval = durabilityInterval;
+        return this;
+    }
+
+    public StorageConfig withReadMode(ReadMode readMode) {
+        this.readMode = readMode;
+        return this;
+    }
+
+    public StorageConfig withCodec(Codec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    public StorageConfig withCompressionThreshold(long compressionThreshold) {
+        if (compressionThreshold < 0 || compressionThreshold > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(COMPRESSION_THRESHOLD + " must not be negative and below 2GB");
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    public StorageConfig withCacheBytes(long cacheBytes) {
+        if (cacheBytes < 0)
+            throw new IllegalArgumentException(CACHE_BYTES + " must not be negative");
+        this.cacheBytes = cacheBytes;
+        return this;
+    }
+
+    public StorageConfig withLfuAgingPeriod(long lfuAgingPeriod) {
+        if (lfuAgingPeriod < 0)
+            throw new IllegalArgumentException(LFU_AGING + " must not be negative");
+        this.lfuAgingPeriod = lfuAgingPeriod;
+        return this;
+    }
+
+    public StorageConfig withCacheOffHeap(boolean cacheOffHeap) {
+        this.cacheOffHeap = cacheOffHeap;
+        return this;
+    }
+
+    public StorageConfig withNegativeCacheSize(long negativeCacheSize) {
+        if (negativeCacheSize < 0 || negativeCacheSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(NEGATIVE_CACHE_SIZE + " must not be negative and below 2^31");
+        this.negativeCacheSize = negativeCacheSize;
+        return this;
+    }
+
+    public StorageConfig withNegativeCacheTtl(long negativeCacheTtl) {
+        if (negativeCacheTtl <= 0)
+            throw new IllegalArgumentException(NEGATIVE_CACHE_TTL + " must be positive");
+        this.negativeCacheTtl = negativeCacheTtl;
+        return this;
+    }
+
+    public StorageConfig withWarmUpKeys(long warmUpKeys) {
+        if (warmUpKeys < 0 || warmUpKeys > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(CACHE_WARM_UP + " must not be negative and below 2^31");
+        this.warmUpKeys = warmUpKeys;
+        return this;
+    }
+
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public double getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    public long getCompactionRate() {
+        return compactionRate;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public long getDurabilityInterval() {
+        return durabilityInterval;
+    }
+
+    public ReadMode getReadMode() {
+        return readMode;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getCompressionThreshold() {
+        return (int) compressionThreshold;
+    }
+
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    public long getLfuAgingPeriod() {
+        return lfuAgingPeriod;
+    }
+
+    public boolean isCacheOffHeap() {
+        return cacheOffHeap;
+    }
+
+    public int getNegativeCacheSize() {
+        return (int) negativeCacheSize;
+    }
+
+    public long getNegativeCacheTtl() {
+        return negativeCacheTtl;
+    }
+
+    public int getWarmUpKeys() {
+        return (int) warmUpKeys;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageConfig{" +
+                STORAGE_ENGINE + "=" + storageEngine.getDesc() +
+                ", " + SEGMENT_SIZE + "=" + segmentSize +
+                ", " + COMPACTION_RATIO + "=" + compactionRatio +
+                ", " + COMPACTION_RATE + "=" + compactionRate +
+                ", " + DURABILITY + "=" + durability.getDesc() +
+                ", " + DURABILITY_INTERVAL + "=" + durabilityInterval +
+                ", " + READ_MODE + "=" + readMode.getDesc() +
+                ", " + COMPRESSION + "=" + codec.getDesc() +
+                ", " + COMPRESSION_THRESHOLD + "=" + compressionThreshold +
+                ", " + CACHE_BYTES + "=" + cacheBytes +
+                ", " + LFU_AGING + "=" + lfuAgingPeriod +
+                ", " + CACHE_OFF_HEAP + "=" + cacheOffHeap +
+                ", " + NEGATIVE_CACHE_SIZE + "=" + negativeCacheSize +
+                ", " + NEGATIVE_CACHE_TTL + "=" + negativeCacheTtl +
+                ", " + CACHE_WARM_UP + "=" + warmUpKeys +
+                '}';
+    }
+}
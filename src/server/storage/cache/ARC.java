@@ -0,0 +1,132 @@
+package server.storage.cache;
+
+import protocol.kv.K;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Adaptive Replacement Cache strategy.
+ * Keys accessed once since they entered the cache are kept in the recency list T1, keys accessed again move to the
+ * frequency list T2, both in LRU order. Evicted keys are remembered in the ghost lists B1 and B2 respectively.
+ * A target size for T1 adapts to the workload: an access to a key of B1 shows that T1 was too small and increases
+ * the target, an access to a key of B2 decreases it. {@link ICacheDisplacementTracker#evict()} takes the oldest key
+ * of T1 if it exceeds the target and the oldest key of T2 otherwise. Thus the strategy leans towards LRU for
+ * recency-heavy client traffic and towards LFU for the repeated reads of MapReduce jobs.
+ * The ghost lists hold the evicted keys themselves, which are at most 20 characters long, so that a lookup in them
+ * costs no more than one in T1 or T2.
+ * Access - put ot get operations.
+ */
+public class ARC implements ICacheDisplacementTracker {
+    private final LinkedHashSet<K> t1 = new LinkedHashSet<>();
+    private final LinkedHashSet<K> t2 = new LinkedHashSet<>();
+    private final LinkedHashSet<K> b1 = new LinkedHashSet<>();
+    private final LinkedHashSet<K> b2 = new LinkedHashSet<>();
+
+    private final int capacity;
+
+    /**
+     * target size of T1
+     */
+    private int target;
+
+    public ARC(int trackerCapacity) {
+        this.capacity = Math.max(1, trackerCapacity);
+    }
+
+    @Override
+    public synchronized K evict() {
+        K k;
+        if (!t1.isEmpty() && (t1.size() > target || t2.isEmpty())) {
+            k = removeFirst(t1);
+            b1.add(k);
+        } else if (!t2.isEmpty()) {
+            k = removeFirst(t2);
+            b2.add(k);
+        } else {
+            return null;
+        }
+        trimGhosts();
+        return k;
+    }
+
+    @Override
+    public synchronized K register(K k) {
+        if (t1.remove(k) || t2.remove(k)) {
+            t2.add(k);
+            return k;
+        }
+        if (b1.remove(k)) {
+            target = Math.min(capacity, target + Math.max(b2.size() / Math.max(1, b1.size()), 1));
+            t2.add(k);
+        } else if (b2.remove(k)) {
+            target = Math.max(0, target - Math.max(b1.size() / Math.max(1, b2.size()), 1));
+            t2.add(k);
+        } else {
+            t1.add(k);
+        }
+        trimGhosts();
+        return k;
+    }
+
+    @Override
+    public synchronized void unregister(K k) {
+        if (!t1.remove(k))
+            t2.remove(k);
+    }
+
+    @Override
+    public synchronized boolean containsKey(K key) {
+        return t1.contains(key) || t2.contains(key);
+    }
+
+    /**
+     * Gets the keys of T2 first, then those of T1, each from the most recently accessed key on. This only
+     * approximates the eviction order, which depends on the target size at the time of the eviction
+     */
+    @Override
+    public synchronized List<K> getHottest(int count) {
+        List<K> hottest = new ArrayList<>();
+        for (LinkedHashSet<K> list : Arrays.asList(t2, t1)) {
+            List<K> keys = new ArrayList<>(list);
+            Collections.reverse(keys);
+            hottest.addAll(keys.subList(0, Math.min(count - hottest.size(), keys.size())));
+        }
+        return hottest;
+    }
+
+    /**
+     * @return target size of T1, between 0 and the capacity
+     */
+    public synchronized int getTarget() {
+        return target;
+    }
+
+    /**
+     * Forgets the oldest ghosts, so that T1 and B1 together do not exceed the capacity and all four lists together
+     * do not exceed twice the capacity
+     */
+    private void trimGhosts() {
+        while (!b1.isEmpty() && t1.size() + b1.size() > capacity)
+            removeFirst(b1);
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity) {
+            if (!b2.isEmpty())
+                removeFirst(b2);
+            else if (!b1.isEmpty())
+                removeFirst(b1);
+            else
+                break;
+        }
+    }
+
+    private static <E> E removeFirst(LinkedHashSet<E> list) {
+        Iterator<E> oldest = list.iterator();
+        E e = oldest.next();
+        oldest.remove();
+        return e;
+    }
+}
@@ -0,0 +1,165 @@
+package server.storage.cache;
+
+import protocol.kv.K;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * CLOCK (second chance) strategy.
+ * Keys sit in the slots of a circular array, each with a reference bit. Registering a key that is already tracked
+ * only sets its bit, without a lock and without reordering anything, so the cache records hits here directly
+ * ({@link #recordHit(K)}) instead of buffering them for its eviction lock. To evict ({@link ICacheDisplacementTracker#evict()}),
+ * a hand sweeps the array and clears the bits it passes until it finds a key whose bit is not set, i.e. a key that
+ * was not accessed since the hand passed it last. This approximates LRU at a much lower cost per access.
+ * Access - put ot get operations.
+ */
+public class CLOCK implements ICacheDisplacementTracker {
+    /**
+     * slot of every tracked key
+     */
+    private final ConcurrentHashMap<K, Integer> slots;
+
+    /**
+     * keys by slot, null for free slots. Guarded by the instance
+     */
+    private K[] keys;
+
+    /**
+     * reference bits by slot. Set without a lock, so a bit set concurrently to an eviction may get lost or land on
+     * the next key of the slot, and a bit set while the array grows may get lost. Both only cost accuracy
+     */
+    private volatile AtomicIntegerArray referenced;
+
+    /**
+     * stack of free slots. Guarded by the instance
+     */
+    private int[] freeSlots;
+    private int freeCount;
+
+    /**
+     * next slot to inspect for eviction. Guarded by the instance
+     */
+    private int hand;
+
+    public CLOCK(int trackerCapacity) {
+        int capacity = Math.max(1, trackerCapacity);
+        this.slots = new ConcurrentHashMap<>(capacity + 1, 1);
+        this.keys = new K[capacity];
+        this.referenced = new AtomicIntegerArray(capacity);
+        this.freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++)
+            freeSlots[freeCount++] = capacity - 1 - i;
+    }
+
+    @Override
+    public synchronized K evict() {
+        if (slots.isEmpty())
+            return null;
+        AtomicIntegerArray bits = referenced;
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) % keys.length;
+            if (keys[slot] == null)
+                continue;
+            if (bits.get(slot) != 0) {
+                bits.set(slot, 0);
+                continue;
+            }
+            K k = keys[slot];
+            release(k, slot);
+            return k;
+        }
+    }
+
+    @Override
+    public K register(K k) {
+        Integer slot = slots.get(k);
+        if (slot != null) {
+            referenced.set(slot, 1);
+            return k;
+        }
+        insert(k);
+        return k;
+    }
+
+    /**
+     * Sets the reference bit of a tracked key, without a lock
+     */
+    @Override
+    public boolean recordHit(K k) {
+        Integer slot = slots.get(k);
+        if (slot != null)
+            referenced.set(slot, 1);
+        return true;
+    }
+
+    @Override
+    public synchronized void unregister(K k) {
+        Integer slot = slots.get(k);
+        if (slot != null)
+            release(k, slot);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return slots.containsKey(key);
+    }
+
+    /**
+     * Gets the keys whose reference bit is set first, then the others, each in the reverse order in which the hand
+     * will reach them
+     */
+    @Override
+    public synchronized List<K> getHottest(int count) {
+        List<K> hottest = new ArrayList<>();
+        AtomicIntegerArray bits = referenced;
+        for (int bit = 1; bit >= 0; bit--) {
+            for (int i = 1; i <= keys.length && hottest.size() < count; i++) {
+                int slot = (hand - i + keys.length) % keys.length;
+                if (keys[slot] != null && (bits.get(slot) != 0) == (bit == 1))
+                    hottest.add(keys[slot]);
+            }
+        }
+        return hottest;
+    }
+
+    /**
+     * Puts a new key into a free slot, with its reference bit cleared. The array grows if all slots are taken,
+     * which only happens if the cache is bounded by bytes and holds more keys than the capacity
+     *
+     * @param k the key
+     */
+    private synchronized void insert(K k) {
+        if (slots.containsKey(k))
+            return;
+        if (freeCount == 0)
+            grow();
+        int slot = freeSlots[--freeCount];
+        keys[slot] = k;
+        referenced.set(slot, 0);
+        slots.put(k, slot);
+    }
+
+    private void release(K k, int slot) {
+        slots.remove(k);
+        keys[slot] = null;
+        referenced.set(slot, 0);
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow() {
+        int length = keys.length;
+        keys = Arrays.copyOf(keys, length * 2);
+        AtomicIntegerArray bits = new AtomicIntegerArray(length * 2);
+        for (int i = 0; i < length; i++)
+            bits.set(i, referenced.get(i));
+        referenced = bits;
+        freeSlots = Arrays.copyOf(freeSlots, length * 2);
+        for (int i = length * 2 - 1; i >= length; i--)
+            freeSlots[freeCount++] = i;
+    }
+}
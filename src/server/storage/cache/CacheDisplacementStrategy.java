@@ -3,7 +3,10 @@ package server.storage.cache;
 public enum CacheDisplacementStrategy {
     FIFO("FIFO"),
     LRU("LRU"),
-    LFU("LFU");
+    LFU("LFU"),
+    WTINYLFU("WTINYLFU"),
+    ARC("ARC"),
+    CLOCK("CLOCK");
 
     private String desc;
     CacheDisplacementStrategy(String desc) {
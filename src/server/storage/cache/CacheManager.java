@@ -7,13 +7,25 @@ import protocol.kv.V;
 import server.app.Server;
 import server.storage.IStorageCRUD;
 import server.storage.PUTStatus;
+import server.storage.StorageConfig;
+import server.storage.disk.IPersistenceManager;
+import server.storage.disk.InstrumentedPersistenceManager;
+import server.storage.disk.LogStructuredPersistenceManager;
 import server.storage.disk.PersistenceManager;
+import server.storage.stats.StorageStats;
 import util.FileUtils;
 import util.StringUtils;
 import util.Validate;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static protocol.mapreduce.Utils.NODEID_KEYBYTES_SEP;
 
@@ -30,6 +42,7 @@ public class CacheManager implements IStorageCRUD {
     private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
 
     public static final String ERROR = "ERROR";
+    private static final int WRITE_STRIPES = 64;
 
     /**
      * Keeps track of the order in which the elements in {@link this.cache} should be replaced
@@ -47,15 +60,126 @@ public class CacheManager implements IStorageCRUD {
     private int cacheCapacity;
 
     /**
-     * Interface to persistence layer
+     * Maximum total size in bytes of the keys and values in the {@link this.cache}. If positive, it replaces
+     * {@link this.cacheCapacity} as the bound of the cache
      */
-    private PersistenceManager pm;
+    private long maxBytes;
+
+    /**
+     * Total size in bytes of the keys and values in the {@link this.cache}. Changed only holding
+     * {@link #evictionLock}, volatile as the statistics and the budget checks read it without the lock
+     */
+    private volatile long usedBytes;
+
+    /**
+     * Memory outside of the Java heap holding the cached values, null if the values are kept on the heap.
+     * If present, the values in {@link this.cache} are {@link OffHeapValue}s
+     */
+    private final OffHeapArena offHeapArena;
+
+    /**
+     * Guards {@link this.cacheTracker} and the changes of {@link this.cache}, so that both stay in sync
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Cache hits not yet replayed to {@link this.cacheTracker}. Hits are recorded here instead of taking
+     * {@link #evictionLock}, so that reads of cached keys do not serialize
+     */
+    private final ReadBuffer<K> readBuffer = new ReadBuffer<>();
+
+    /**
+     * Files recently not found in the persistence layer, null if misses are not cached
+     */
+    private final NegativeCache negativeCache;
+
+    /**
+     * File the hottest keys are saved to on shutdown, null if the cache is not warmed up on start
+     */
+    private Path warmUpSnapshot;
+
+    /**
+     * Maximum number of keys in the {@link #warmUpSnapshot}
+     */
+    private final int warmUpKeys;
+
+    /**
+     * Prefetches the keys of the {@link #warmUpSnapshot} after a restart, null if there was no snapshot
+     */
+    private CacheWarmUp warmUp;
+
+    /**
+     * number of PUTs per stripe of keys, so that {@link #warmUp(K)} can tell whether a PUT of its key intervened
+     * while it read the storage
+     */
+    private final AtomicLongArray writes = new AtomicLongArray(WRITE_STRIPES);
+
+    /**
+     * Interface to persistence layer, counting the disk operations
+     */
+    private InstrumentedPersistenceManager pm;
+
+    /**
+     * Counters of the cache for {@link #getStats()}
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
     public CacheManager(String serverName, int cacheCapacity, CacheDisplacementStrategy strategy) {
+        this(serverName, cacheCapacity, strategy, new StorageConfig());
+    }
+
+    public CacheManager(String serverName, int cacheCapacity, CacheDisplacementStrategy strategy, StorageConfig storageConfig) {
         this.cacheCapacity = cacheCapacity;
+        this.maxBytes = storageConfig.getCacheBytes();
+        if (storageConfig.isCacheOffHeap() && maxBytes <= 0)
+            throw new IllegalArgumentException("An off-heap cache needs a size in bytes");
+        this.offHeapArena = storageConfig.isCacheOffHeap() ? new OffHeapArena(maxBytes) : null;
+        this.negativeCache = (storageConfig.getNegativeCacheSize() > 0)
+                ? new NegativeCache(storageConfig.getNegativeCacheSize(), storageConfig.getNegativeCacheTtl())
+                : null;
         this.cache = new ConcurrentHashMap<K, V>(cacheCapacity + 1, 1);
-        pm = new PersistenceManager(serverName);
-        cacheTracker = initTracker(cacheCapacity, strategy);
+        pm = new InstrumentedPersistenceManager(initPersistenceManager(serverName, storageConfig));
+        cacheTracker = initTracker(cacheCapacity, strategy, storageConfig);
+        warmUpKeys = storageConfig.getWarmUpKeys();
+        if (warmUpKeys > 0)
+            startWarmUp(serverName);
+    }
+
+    /**
+     * Starts prefetching the keys saved by {@link #saveWarmUpSnapshot()} before the last shutdown, if any
+     *
+     * @param serverName name of the server whose data is managed
+     */
+    private void startWarmUp(String serverName) {
+        warmUpSnapshot = Paths.get(pm.getDbPath()).resolveSibling(serverName + ".warmup");
+        if (!Files.exists(warmUpSnapshot))
+            return;
+        LOG.info("Warming up cache from " + warmUpSnapshot);
+        warmUp = new CacheWarmUp(this, warmUpSnapshot);
+        Thread warmUpThread = new Thread(warmUp, "warmup-" + serverName);
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
+    /**
+     * Initializes the {@link IPersistenceManager} implementing the storage engine chosen in the {@link StorageConfig}
+     *
+     * @param serverName    name of the server whose data is managed
+     * @param storageConfig storage settings of the server
+     * @return
+     */
+    private IPersistenceManager initPersistenceManager(String serverName, StorageConfig storageConfig) {
+        switch (storageConfig.getStorageEngine()) {
+            case FILE:
+                return new PersistenceManager(serverName, storageConfig);
+            case LOG:
+                return new LogStructuredPersistenceManager(serverName, storageConfig);
+            default:
+                throw new IllegalArgumentException("Storage engine not found!");
+        }
     }
 
     /**
@@ -64,16 +188,23 @@ public class CacheManager implements IStorageCRUD {
      *
      * @param cacheCapacity Maximum number of elements the {@link this.cacheTracker} can hold
      * @param strategy
+     * @param storageConfig storage settings of the server, e.g. the aging of {@link LFU}
      * @return
      */
-    private ICacheDisplacementTracker initTracker(int cacheCapacity, CacheDisplacementStrategy strategy) {
+    private ICacheDisplacementTracker initTracker(int cacheCapacity, CacheDisplacementStrategy strategy, StorageConfig storageConfig) {
         switch (strategy) {
             case FIFO:
                 return new FIFO(cacheCapacity);
             case LFU:
-                return new LFU(cacheCapacity);
+                return new LFU(cacheCapacity, storageConfig.getLfuAgingPeriod());
             case LRU:
                 return new LRU(cacheCapacity);
+            case WTINYLFU:
+                return new WTinyLFU(cacheCapacity);
+            case ARC:
+                return new ARC(cacheCapacity);
+            case CLOCK:
+                return new CLOCK(cacheCapacity);
             default:
                 throw new IllegalArgumentException("Strategy not found!");
         }
@@ -89,21 +220,49 @@ public class CacheManager implements IStorageCRUD {
      */
     @Override
     public V get(K key, String MRToken) {
+        return get(key, MRToken, true);
+    }
+
+    /**
+     * Get a <K,V> pair like {@link #get(K, String)}, optionally without bringing it into the cache.
+     * Reads of MapReduce files never touch the cache, as their files are not the ones of the keys.
+     *
+     * @param key   is used to search for the relevant pair in file system or in cache
+     * @param admit false to read through without caching the pair or counting the access, e.g. for bulk reads
+     * @return a value associated with the {@link this.key}.
+     */
+    public V get(K key, String MRToken, boolean admit) {
+        boolean isMapReduce = !StringUtils.isEmpty(MRToken);
         V val;
-        if (StringUtils.isEmpty(MRToken) && cache.containsKey(key)) {
+        if (!isMapReduce) {
             val = cache.get(key);
-            updateCache(key, val);
-//            new Thread(new CacheUpdater(this, key, val)).start();
-            return val;
+            if (val instanceof OffHeapValue)
+                val = ((OffHeapValue) val).load();
+            if (val != null) {
+                hits.increment();
+                if (admit)
+                    recordHit(key);
+                return val;
+            }
+            misses.increment();
         }
 
         Path filePath = buildPath(key.getHashed(), buildPUTFileName(MRToken, key));
+        if (negativeCache != null && negativeCache.contains(filePath)) {
+            negativeHits.increment();
+            return null;
+        }
 
+        long stamp = (negativeCache != null) ? negativeCache.stamp(filePath) : 0;
         byte[] res = pm.read(filePath);
-        if (res == null)
+        if (res == null) {
+            if (negativeCache != null)
+                negativeCache.add(filePath, stamp);
             return null;
+        }
         val = new V(new String(res));
-        updateCache(key, val);
+        if (admit && !isMapReduce)
+            updateCache(key, val);
 //        new Thread(new CacheUpdater(this, key, val)).start();
         return val;
     }
@@ -119,12 +278,29 @@ public class CacheManager implements IStorageCRUD {
      */
     @Override
     public PUTStatus put(K key, V val, String MRToken) {
+        return put(key, val, MRToken, true);
+    }
+
+    /**
+     * Stores or deletes a <K,V> pair like {@link #put(K, V, String)}, optionally without bringing it into the cache.
+     * A pair that is not admitted is removed from the cache instead, so that the cache does not serve the old value.
+     * Writes of MapReduce files never touch the cache.
+     *
+     * @param key   key in <K,V> pair
+     * @param val   value in <K,V> pair, null to delete the pair
+     * @param admit false to write through without caching the pair, e.g. for data transferred from other servers
+     * @return {@link PUTStatus} as exit code of the function
+     */
+    public PUTStatus put(K key, V val, String MRToken, boolean admit) {
         Path filePath = buildPath(key.getHashed(), buildPUTFileName(MRToken, key));
 
         PUTStatus status = (val != null) ? pm.write(filePath, val.getBytes()) : pm.delete(filePath);
-        if (status.name().contains(ERROR))
+        if (negativeCache != null)
+            negativeCache.invalidate(filePath);
+        if (status.name().contains(ERROR) || !StringUtils.isEmpty(MRToken))
             return status;
-        updateCache(key, val);
+        writes.incrementAndGet(getWriteStripe(key));
+        updateCache(key, admit ? val : null);
 //        new Thread(new CacheUpdater(this, key, val)).start();
         return status;
     }
@@ -149,6 +325,36 @@ public class CacheManager implements IStorageCRUD {
     }
 
 
+    /**
+     * Records a hit of a cached key directly in the {@link this.cacheTracker} if it supports lock-free hits, else
+     * in the {@link #readBuffer}. If the buffer of the calling thread is full, the thread replays the buffered hits
+     * to the {@link this.cacheTracker}, unless another thread holds the {@link #evictionLock}
+     *
+     * @param key the key that was hit
+     */
+    private void recordHit(K key) {
+        if (cacheTracker.recordHit(key))
+            return;
+        if (readBuffer.offer(key) == ReadBuffer.Offer.FULL && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays the buffered hits to the {@link this.cacheTracker}. Hits of keys that have left the cache in the
+     * meantime are skipped. Must be called holding the {@link #evictionLock}
+     */
+    private void drainReadBuffer() {
+        readBuffer.drain(key -> {
+            if (cache.containsKey(key))
+                cacheTracker.register(key);
+        });
+    }
+
     /**
      * Updates the {@link this.cache} with the given <K,V> pair. A cache displacement can happen if the cache reaches
      * its {@link this.cacheCapacity}.
@@ -156,31 +362,216 @@ public class CacheManager implements IStorageCRUD {
      * @param key key in <K,V> pair. Being used to search for the relevant pair in {@link this.cache}
      * @param val key in <K,V> pair. The value that should be stored/updated on the {@link this.cache}.
      */
-    synchronized void updateCache(K key, V val) {
-        if (val != null) {
-            updateCacheForReadWriteOp(key, val);
-        } else if (val == null && cache.containsKey(key)) {
-            updateCacheForDeleteOp(key);
+    void updateCache(K key, V val) {
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            if (val != null) {
+                updateCacheForReadWriteOp(key, val);
+            } else if (val == null && cache.containsKey(key)) {
+                updateCacheForDeleteOp(key);
+            }
+        } finally {
+            evictionLock.unlock();
         }
     }
 
     private void updateCacheForDeleteOp(K key) {
         Validate.isTrue(cacheTracker.containsKey(key), key.getHashed() + " is not in cache. Cache and its tracker are out of sync");
-        cache.remove(key);
+        removeEntry(key);
         cacheTracker.unregister(key);
     }
 
     private void updateCacheForReadWriteOp(K key, V val) {
-        if (isCacheFull()) {
+        if (maxBytes > 0) {
+            updateCacheForReadWriteOpInBytes(key, val);
+            return;
+        }
+        if (!cache.containsKey(key) && isCacheFull()) {
+            K evicted = cacheTracker.evict();
+            evictions.increment();
+            Validate.isTrue(cache.containsKey(evicted), "cache and its tracker are out of sync");
+            removeEntry(evicted);
+        }
+        usedBytes += getEntrySize(key, val) - getEntrySize(key, cache.put(key, val));
+        cacheTracker.register(key);
+    }
+
+    /**
+     * Brings a <K,V> pair to the {@link this.cache} if it is bounded by {@link this.maxBytes}.
+     * Entries are evicted until the new pair fits. A pair larger than the whole budget is not cached at all.
+     * With an {@link #offHeapArena}, the value is copied into it.
+     *
+     * @param key key in <K,V> pair
+     * @param val value in <K,V> pair
+     */
+    private void updateCacheForReadWriteOpInBytes(K key, V val) {
+        long entrySize = getEntrySize(key, val);
+        if (cache.containsKey(key)) {
+            removeEntry(key);
+            cacheTracker.unregister(key);
+        }
+        if (entrySize > maxBytes)
+            return;
+        while (usedBytes + entrySize > maxBytes) {
             K evicted = cacheTracker.evict();
+            evictions.increment();
             Validate.isTrue(cache.containsKey(evicted), "cache and its tracker are out of sync");
-            cache.remove(evicted);
+            removeEntry(evicted);
+        }
+        V stored = val;
+        if (offHeapArena != null) {
+            stored = offHeapArena.store(val.getBytes());
+            if (stored == null) {
+                LOG.warn("Off-heap arena is out of free pages. Not caching " + key.get());
+                return;
+            }
         }
-        cache.put(key, val);
+        cache.put(key, stored);
+        usedBytes += entrySize;
         cacheTracker.register(key);
     }
 
+    /**
+     * Removes a pair from the {@link this.cache} and frees its value if it is off the heap
+     *
+     * @param key key in <K,V> pair
+     */
+    private void removeEntry(K key) {
+        V removed = cache.remove(key);
+        usedBytes -= getEntrySize(key, removed);
+        if (removed instanceof OffHeapValue)
+            ((OffHeapValue) removed).release();
+    }
+
+    /**
+     * Gets the number of bytes a <K,V> pair accounts for in the cache
+     *
+     * @param key key in <K,V> pair
+     * @param val value in <K,V> pair, may be null
+     * @return the length of the key plus the length of the value, or the pages the value takes in the
+     * {@link #offHeapArena}, whose size is the budget then
+     */
+    private long getEntrySize(K key, V val) {
+        if (val == null)
+            return 0;
+        if (val instanceof OffHeapValue)
+            return ((OffHeapValue) val).getAllocatedBytes();
+        if (offHeapArena != null)
+            return OffHeapArena.getAllocationSize(val.get().length());
+        return key.get().length() + val.get().length();
+    }
+
+    /**
+     * Reads a key of the warm-up snapshot from the storage into the cache, unless it has been cached in the meantime
+     * or the cache is full. The storage is read without holding the {@link #evictionLock}, and the value is only
+     * cached if no PUT of a key of the same stripe happened since the read started, so that a prefetched value never
+     * overwrites a newer one
+     *
+     * @param key key to prefetch
+     * @return true if the key was brought into the cache
+     */
+    boolean warmUp(K key) {
+        if (cache.containsKey(key) || isCacheFull())
+            return false;
+        Path filePath = buildPath(key.getHashed(), buildPUTFileName(null, key));
+        int stripe = getWriteStripe(key);
+        long stamp = writes.get(stripe);
+        byte[] res = pm.read(filePath);
+        if (res == null)
+            return false;
+        evictionLock.lock();
+        try {
+            if (writes.get(stripe) != stamp || cache.containsKey(key) || isCacheFull())
+                return false;
+            updateCacheForReadWriteOp(key, new V(new String(res)));
+            return cache.containsKey(key);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static int getWriteStripe(K key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (WRITE_STRIPES - 1);
+    }
+
+    /**
+     * Saves the keys the {@link this.cacheTracker} would evict last, so that they are prefetched when the server
+     * starts again. Stops a warm-up still in progress. To be called on shutdown, before the storage is closed
+     */
+    public void saveWarmUpSnapshot() {
+        if (warmUpSnapshot == null)
+            return;
+        if (warmUp != null)
+            warmUp.stop();
+        List<K> hottest;
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            hottest = cacheTracker.getHottest(warmUpKeys);
+        } finally {
+            evictionLock.unlock();
+        }
+        try {
+            CacheWarmUp.save(warmUpSnapshot, hottest);
+            LOG.info("Saved " + hottest.size() + " keys to warm up the cache at " + warmUpSnapshot);
+        } catch (IOException e) {
+            LOG.error("Unable to save cache snapshot " + warmUpSnapshot, e);
+        }
+    }
+
+    /**
+     * @return share of the warm-up snapshot that has been prefetched, between 0 and 1. 1 if there is no warm-up
+     */
+    public double getWarmUpProgress() {
+        return (warmUp == null) ? 1 : warmUp.getProgress();
+    }
+
+    /**
+     * @return number of keys brought into the cache by the warm-up
+     */
+    public int getWarmedUpKeys() {
+        return (warmUp == null) ? 0 : warmUp.getLoaded();
+    }
+
+    public Path getWarmUpSnapshot() {
+        return warmUpSnapshot;
+    }
+
+    /**
+     * Forgets all keys that were recently not found, e.g. because the key range of the server changed and
+     * data of other servers may arrive
+     */
+    public void clearNegativeCache() {
+        if (negativeCache != null)
+            negativeCache.clear();
+    }
+
+    /**
+     * Takes a snapshot of the statistics of the cache and of the disk operations
+     *
+     * @return the statistics
+     */
+    public StorageStats getStats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        StorageStats stats = new StorageStats()
+                .with("cache.hits", hitCount)
+                .with("cache.misses", lookups - hitCount)
+                .with("cache.hit.rate", String.format("%.4f", (lookups == 0) ? 0 : (double) hitCount / lookups))
+                .with("cache.evictions", evictions.sum())
+                .with("cache.negative.hits", negativeHits.sum())
+                .with("cache.entries", cache.mappingCount())
+                .with("cache.capacity", cacheCapacity)
+                .with("cache.bytes.used", usedBytes)
+                .with("cache.warmup.progress", String.format("%.2f", getWarmUpProgress()));
+        return pm.collectStats(stats);
+    }
+
     public boolean isCacheFull() {
+        if (maxBytes > 0)
+            return usedBytes >= maxBytes;
         return cache.mappingCount() >= this.cacheCapacity;
     }
 
@@ -188,7 +579,7 @@ public class CacheManager implements IStorageCRUD {
         return cache;
     }
 
-    public PersistenceManager getPersistenceManager() {
+    public IPersistenceManager getPersistenceManager() {
         return pm;
     }
 
@@ -197,6 +588,14 @@ public class CacheManager implements IStorageCRUD {
         return cacheCapacity;
     }
 
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
     public ICacheDisplacementTracker getCacheTracker() {
         return cacheTracker;
     }
@@ -0,0 +1,119 @@
+package server.storage.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import protocol.kv.K;
+import server.app.Server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refills the cache of a restarted server with the keys that were the hottest before it was shut down.
+ * On shutdown, the {@link CacheManager} saves the keys its {@link ICacheDisplacementTracker} would evict last into
+ * a snapshot file. On start, the keys are read from the storage in the background, beginning with the hottest one,
+ * while the server already serves requests. Only keys are saved, so values written in the meantime are never stale.
+ */
+class CacheWarmUp implements Runnable {
+    private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
+
+    private final CacheManager cm;
+    private final Path snapshot;
+
+    private volatile int total;
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private volatile boolean stopped;
+    private volatile boolean done;
+
+    CacheWarmUp(CacheManager cm, Path snapshot) {
+        this.cm = cm;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Writes the keys into the snapshot file. The file is replaced atomically, so that a crash while saving leaves
+     * the previous snapshot intact
+     *
+     * @param snapshot the snapshot file
+     * @param keys     the keys, the hottest first
+     * @throws IOException if the file cannot be written
+     */
+    static void save(Path snapshot, List<K> keys) throws IOException {
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(keys.size());
+            for (K key : keys)
+                out.writeUTF(key.get());
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<K> load(Path snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            int count = in.readInt();
+            List<K> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                keys.add(new K(in.readUTF()));
+            return keys;
+        }
+    }
+
+    @Override
+    public void run() {
+        long start = System.currentTimeMillis();
+        List<K> keys;
+        try {
+            keys = load(snapshot);
+        } catch (IOException e) {
+            LOG.error("Unable to read cache snapshot " + snapshot, e);
+            done = true;
+            return;
+        }
+        total = keys.size();
+        for (K key : keys) {
+            if (stopped || cm.isCacheFull())
+                break;
+            if (cm.warmUp(key))
+                loaded.incrementAndGet();
+            processed.incrementAndGet();
+        }
+        done = true;
+        LOG.info("Warmed up cache with " + loaded.get() + " of " + total + " keys in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Stops prefetching keys, e.g. because the storage is closed
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return number of keys read from the storage into the cache so far
+     */
+    int getLoaded() {
+        return loaded.get();
+    }
+
+    /**
+     * @return share of the snapshot that has been prefetched so far, between 0 and 1. 1 once the warm-up ended,
+     * even if it stopped early because the cache was full
+     */
+    double getProgress() {
+        if (done)
+            return 1;
+        int count = total;
+        return (count == 0) ? 0 : (double) processed.get() / count;
+    }
+}
@@ -2,7 +2,10 @@ package server.storage.cache;
 
 import protocol.kv.K;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * First In First Out strategy.
@@ -38,4 +41,11 @@ public class FIFO implements ICacheDisplacementTracker {
     public boolean containsKey(K key) {
         return registry.contains(key);
     }
+
+    @Override
+    public synchronized List<K> getHottest(int count) {
+        List<K> hottest = new ArrayList<>(registry);
+        Collections.reverse(hottest);
+        return new ArrayList<>(hottest.subList(0, Math.min(count, hottest.size())));
+    }
 }
@@ -0,0 +1,101 @@
+package server.storage.cache;
+
+/**
+ * Count-min sketch estimating how often keys were accessed recently, in constant space.
+ * Every key increments one 4-bit counter in each of {@link #DEPTH} rows, its estimate is the smallest of these
+ * counters. The counters are packed 16 to a long, row after row.
+ * Counters saturate at {@link #MAX_COUNT}, and once as many increments as {@link #sampleSize} were recorded, all
+ * counters are halved, so that the sketch reflects recent rather than all-time popularity.
+ * Not thread-safe, callers synchronize.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xbe98f273, 0x6c2b8c61, 0x5a3d7b49};
+
+    /**
+     * upper bound of the counters per row, so that the sketch takes at most 32 MB however large the cache is
+     */
+    private static final int MAX_WIDTH = 1 << 24;
+
+    /**
+     * increments per counter of a row after which all counters are halved
+     */
+    private static final int SAMPLES_PER_COUNTER = 10;
+
+    /**
+     * mask of the lower 3 bits of every counter of a word, applied after shifting the word to halve its counters
+     */
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int width;
+    private final int mask;
+    private final int sampleSize;
+    private int increments;
+
+    /**
+     * @param capacity number of keys the cache holds. The sketch gets about as many counters per row, at most
+     *                 {@link #MAX_WIDTH}
+     */
+    FrequencySketch(int capacity) {
+        width = Integer.highestOneBit(Math.max(16, Math.min(capacity, MAX_WIDTH)) - 1) << 1;
+        table = new long[DEPTH * width / 16];
+        mask = width - 1;
+        sampleSize = SAMPLES_PER_COUNTER * width;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean incremented = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = counterOf(hash, row);
+            int word = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            if (((table[word] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                table[word] += 1L << shift;
+                incremented = true;
+            }
+        }
+        if (incremented && ++increments >= sampleSize)
+            reset();
+    }
+
+    /**
+     * @param key the key
+     * @return estimated number of recent accesses of the key, at most {@link #MAX_COUNT}
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = counterOf(hash, row);
+            int count = (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & MAX_COUNT);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Halves all counters
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & HALF_MASK;
+        increments /= 2;
+    }
+
+    /**
+     * @return index of the counter of the hash in the row, counted over all rows
+     */
+    private int counterOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+        return row * width + ((h ^ (h >>> 16)) & mask);
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+}
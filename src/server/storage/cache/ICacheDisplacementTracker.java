@@ -2,6 +2,8 @@ package server.storage.cache;
 
 import protocol.kv.K;
 
+import java.util.List;
+
 /**
  * cache displacement strategy, that decides which entry to evict from the storage
  */
@@ -26,4 +28,24 @@ public interface ICacheDisplacementTracker {
     void unregister(K k);
 
     boolean containsKey(K key);
+
+    /**
+     * Records a hit of a tracked key without a lock, for strategies whose bookkeeping of hits is thread-safe.
+     * Keys that are not tracked are ignored, so that a hit racing with the eviction of its key does not track it again
+     *
+     * @param key the key that was hit
+     * @return false if the strategy does not support lock-free hits and hits must be registered under the
+     * eviction lock of the cache instead
+     */
+    default boolean recordHit(K key) {
+        return false;
+    }
+
+    /**
+     * Gets the keys that would be evicted last
+     *
+     * @param count maximum number of keys to return
+     * @return the tracked keys in reverse eviction order, i.e. the key to be evicted last comes first
+     */
+    List<K> getHottest(int count);
 }
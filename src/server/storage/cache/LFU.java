@@ -2,70 +2,190 @@ package server.storage.cache;
 
 import protocol.kv.K;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * Least Frequently Used strategy.
- * Evicts ({@link ICacheDisplacementTracker#evict()}) the least accessed item;
+ * Evicts ({@link ICacheDisplacementTracker#evict()}) the least accessed item, and among equally often accessed items
+ * the one accessed longest ago;
  * Access - put ot get operations.
+ * Keys are kept in frequency buckets, a doubly linked list ordered by access count in which every bucket holds its
+ * keys in access order. Hence registering, unregistering and evicting a key all take constant time.
+ * With aging, all access counts are halved after every given number of accesses, so that keys which were hot
+ * long ago but are not accessed anymore eventually get evicted.
  */
 public class LFU implements ICacheDisplacementTracker {
-  private ConcurrentHashMap<K, Counter> registry;
+  /**
+   * keys accessed equally often, in the order of their last access
+   */
+  private static class Bucket {
+    private final int frequency;
+    private final LinkedHashSet<K> keys = new LinkedHashSet<>();
+    private Bucket prev;
+    private Bucket next;
 
-  public LFU(int trackerCapacity) {
-    this.registry = new ConcurrentHashMap<>(trackerCapacity + 1, 1);
+    Bucket(int frequency) {
+      this.frequency = frequency;
+    }
   }
 
-  private class Counter implements Comparable<Counter> {
-    private int value = 1;
-    void inc() {
-      value++;
-    }
-    int getValue() {
-      return value;
-    }
+  private HashMap<K, Bucket> registry;
 
-    @Override
-    public int compareTo(Counter counter) {
-      return value - counter.getValue();
-    }
+  /**
+   * bucket of the least frequently accessed keys
+   */
+  private Bucket head;
+
+  /**
+   * number of accesses after which all access counts are halved, 0 disables aging
+   */
+  private final long agingPeriod;
+  private long accesses;
+
+  public LFU(int trackerCapacity) {
+    this(trackerCapacity, 0);
+  }
+
+  /**
+   * @param trackerCapacity maximum number of keys to track
+   * @param agingPeriod     number of accesses after which all access counts are halved, 0 disables aging.
+   *                        Halving takes time linear in the number of keys, so the period should not be
+   *                        smaller than the capacity
+   */
+  public LFU(int trackerCapacity, long agingPeriod) {
+    this.registry = new HashMap<>(trackerCapacity + 1, 1);
+    this.agingPeriod = agingPeriod;
   }
 
   @Override
   public synchronized K evict() {
-    Optional<Map.Entry<K, Counter>> min = registry.entrySet()
-        .stream()
-        .min(Map.Entry.comparingByValue());
-
-    if (min.isPresent()) {
-      K k = min.get().getKey();
-      this.registry.remove(k);
-      return k;
-    }
-    return null;
+    if (head == null)
+      return null;
+    Iterator<K> oldest = head.keys.iterator();
+    K k = oldest.next();
+    oldest.remove();
+    registry.remove(k);
+    if (head.keys.isEmpty())
+      unlink(head);
+    return k;
   }
 
   @Override
   public synchronized K register(K k) {
-    Counter c = registry.get(k);
-
-    if (c == null) {
-      registry.put(k, new Counter());
+    Bucket bucket = registry.get(k);
+    Bucket target;
+    if (bucket == null) {
+      target = (head != null && head.frequency == 1) ? head : linkAfter(null, 1);
     } else {
-      c.inc();
+      target = (bucket.next != null && bucket.next.frequency == bucket.frequency + 1)
+          ? bucket.next
+          : linkAfter(bucket, bucket.frequency + 1);
+      bucket.keys.remove(k);
+      if (bucket.keys.isEmpty())
+        unlink(bucket);
+    }
+    target.keys.add(k);
+    registry.put(k, target);
+
+    if (agingPeriod > 0 && ++accesses >= agingPeriod) {
+      accesses = 0;
+      age();
     }
     return k;
   }
 
   @Override
   public synchronized void unregister(K k) {
-    this.registry.remove(k);
+    Bucket bucket = registry.remove(k);
+    if (bucket == null)
+      return;
+    bucket.keys.remove(k);
+    if (bucket.keys.isEmpty())
+      unlink(bucket);
   }
 
   @Override
-  public boolean containsKey(K key) {
+  public synchronized boolean containsKey(K key) {
     return registry.containsKey(key);
   }
+
+  @Override
+  public synchronized List<K> getHottest(int count) {
+    Bucket tail = head;
+    while (tail != null && tail.next != null)
+      tail = tail.next;
+    List<K> hottest = new ArrayList<>();
+    for (Bucket bucket = tail; bucket != null && hottest.size() < count; bucket = bucket.prev) {
+      List<K> keys = new ArrayList<>(bucket.keys);
+      Collections.reverse(keys);
+      hottest.addAll(keys.subList(0, Math.min(count - hottest.size(), keys.size())));
+    }
+    return hottest;
+  }
+
+  /**
+   * Gets how often a key was accessed since it was registered, as halved by aging
+   *
+   * @param k the key
+   * @return access count of the key or 0 if the key is not tracked
+   */
+  public synchronized int getFrequency(K k) {
+    Bucket bucket = registry.get(k);
+    return (bucket == null) ? 0 : bucket.frequency;
+  }
+
+  /**
+   * Halves the access count of every key. Buckets whose counts become equal are merged, keeping the keys
+   * which were accessed less often before in front
+   */
+  private void age() {
+    Bucket bucket = head;
+    head = null;
+    Bucket tail = null;
+    while (bucket != null) {
+      Bucket next = bucket.next;
+      int frequency = Math.max(1, bucket.frequency / 2);
+      if (tail == null || tail.frequency != frequency)
+        tail = linkAfter(tail, frequency);
+      for (K k : bucket.keys) {
+        tail.keys.add(k);
+        registry.put(k, tail);
+      }
+      bucket = next;
+    }
+  }
+
+  /**
+   * Inserts a new empty bucket into the list
+   *
+   * @param prev      bucket to insert after, null to insert in front
+   * @param frequency access count of the new bucket
+   * @return the new bucket
+   */
+  private Bucket linkAfter(Bucket prev, int frequency) {
+    Bucket bucket = new Bucket(frequency);
+    bucket.prev = prev;
+    bucket.next = (prev == null) ? head : prev.next;
+    if (bucket.next != null)
+      bucket.next.prev = bucket;
+    if (prev == null)
+      head = bucket;
+    else
+      prev.next = bucket;
+    return bucket;
+  }
+
+  private void unlink(Bucket bucket) {
+    if (bucket.prev == null)
+      head = bucket.next;
+    else
+      bucket.prev.next = bucket.next;
+    if (bucket.next != null)
+      bucket.next.prev = bucket.prev;
+  }
 }
@@ -0,0 +1,128 @@
+package server.storage.cache;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers for a limited time which files were not found in the persistence layer, so that repeated GETs of a
+ * missing key are answered without a disk lookup. Holds at most a fixed number of files and forgets the oldest ones
+ * first. A file is forgotten as soon as it is written or deleted.
+ * To keep a GET that raced with a PUT of the same key from caching a miss the PUT has already invalidated, a miss is
+ * only cached if no invalidation of the file's stripe happened since the GET took its {@link #stamp(Path)}.
+ */
+class NegativeCache {
+    private static final int STRIPES = 64;
+
+    private final int capacity;
+    private final long ttlNanos;
+
+    /**
+     * expiry time in {@link System#nanoTime()} of every cached miss, in insertion order. Guarded by the instance
+     */
+    private final LinkedHashMap<Path, Long> misses;
+
+    /**
+     * number of invalidations per stripe of files
+     */
+    private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+
+    /**
+     * @param capacity maximum number of cached misses
+     * @param ttlMillis milliseconds after which a cached miss expires
+     */
+    NegativeCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1000000;
+        this.misses = new LinkedHashMap<Path, Long>(Math.min(capacity, 1 << 16) + 1, 1) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Long> eldest) {
+                return size() > NegativeCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param file the file
+     * @return true if the file was recently not found and has not been written since
+     */
+    synchronized boolean contains(Path file) {
+        Long expiry = misses.get(file);
+        if (expiry == null)
+            return false;
+        if (expiry - System.nanoTime() < 0) {
+            misses.remove(file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the invalidation count of the stripe of a file, to be taken before looking the file up
+     *
+     * @param file the file
+     * @return stamp to pass to {@link #add(Path, long)}
+     */
+    long stamp(Path file) {
+        return invalidations.get(getStripe(file));
+    }
+
+    /**
+     * Caches that a file was not found, unless a file of its stripe was invalidated after the stamp was taken
+     *
+     * @param file  the missing file
+     * @param stamp stamp taken before the lookup
+     */
+    synchronized void add(Path file, long stamp) {
+        if (invalidations.get(getStripe(file)) != stamp)
+            return;
+        misses.remove(file);
+        misses.put(file, System.nanoTime() + ttlNanos);
+        if (misses.size() >= capacity)
+            evictExpired();
+    }
+
+    /**
+     * Forgets a file, e.g. because it was written
+     *
+     * @param file the file
+     */
+    void invalidate(Path file) {
+        invalidations.incrementAndGet(getStripe(file));
+        synchronized (this) {
+            misses.remove(file);
+        }
+    }
+
+    /**
+     * Forgets all files, e.g. because the key range of the server changed
+     */
+    void clear() {
+        for (int i = 0; i < STRIPES; i++)
+            invalidations.incrementAndGet(i);
+        synchronized (this) {
+            misses.clear();
+        }
+    }
+
+    synchronized int size() {
+        return misses.size();
+    }
+
+    /**
+     * Removes expired misses from the front, which holds the oldest ones
+     */
+    private void evictExpired() {
+        long now = System.nanoTime();
+        Iterator<Long> expiries = misses.values().iterator();
+        while (expiries.hasNext() && expiries.next() - now < 0)
+            expiries.remove();
+    }
+
+    private static int getStripe(Path file) {
+        int hash = file.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
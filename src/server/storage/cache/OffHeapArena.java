@@ -0,0 +1,123 @@
+package server.storage.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed amount of memory outside of the Java heap holding the values of the cache.
+ * The arena is split into pages of {@link #PAGE_SIZE} bytes, carved out of direct buffers of {@link #SLAB_SIZE} bytes
+ * which are allocated when their first page is needed. A value occupies as many pages as it needs, which do not have
+ * to be adjacent, so every freed page can be reused by any value and the arena does not fragment.
+ * Only the page numbers of a value are kept on the heap, see {@link OffHeapValue}.
+ */
+class OffHeapArena {
+    static final int PAGE_SIZE = 1024;
+    static final int SLAB_SIZE = 1024 * 1024;
+    private static final int PAGES_PER_SLAB = SLAB_SIZE / PAGE_SIZE;
+
+    private final ByteBuffer[] slabs;
+    private final int pageCount;
+
+    /**
+     * stack of pages that were freed. Guarded by the instance
+     */
+    private final int[] freePages;
+    private int freeCount;
+
+    /**
+     * first page that was never handed out. Guarded by the instance
+     */
+    private int nextPage;
+
+    /**
+     * @param capacity size of the arena in bytes
+     */
+    OffHeapArena(long capacity) {
+        pageCount = (int) Math.min(capacity / PAGE_SIZE, Integer.MAX_VALUE - PAGES_PER_SLAB);
+        slabs = new ByteBuffer[(pageCount + PAGES_PER_SLAB - 1) / PAGES_PER_SLAB];
+        freePages = new int[pageCount];
+    }
+
+    /**
+     * Gets the number of bytes a value occupies in the arena
+     *
+     * @param length length of the value
+     * @return length rounded up to whole pages
+     */
+    static long getAllocationSize(int length) {
+        return (long) getPageCount(length) * PAGE_SIZE;
+    }
+
+    private static int getPageCount(int length) {
+        return (length + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Copies a value into the arena
+     *
+     * @param value the value
+     * @return handle of the stored value or null if the arena does not have enough free pages
+     */
+    OffHeapValue store(byte[] value) {
+        int[] pages = allocate(getPageCount(value.length));
+        if (pages == null)
+            return null;
+        int offset = 0;
+        for (int page : pages) {
+            int length = Math.min(PAGE_SIZE, value.length - offset);
+            getPage(page).put(value, offset, length);
+            offset += length;
+        }
+        return new OffHeapValue(this, pages, value.length);
+    }
+
+    /**
+     * Copies a value out of the arena
+     *
+     * @param pages  pages of the value
+     * @param length length of the value
+     * @return the value
+     */
+    byte[] load(int[] pages, int length) {
+        byte[] value = new byte[length];
+        int offset = 0;
+        for (int page : pages) {
+            int pageLength = Math.min(PAGE_SIZE, length - offset);
+            getPage(page).get(value, offset, pageLength);
+            offset += pageLength;
+        }
+        return value;
+    }
+
+    private synchronized int[] allocate(int count) {
+        if (count > freeCount + pageCount - nextPage)
+            return null;
+        int[] pages = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (freeCount > 0) {
+                pages[i] = freePages[--freeCount];
+            } else {
+                int slab = nextPage / PAGES_PER_SLAB;
+                if (slabs[slab] == null)
+                    slabs[slab] = ByteBuffer.allocateDirect(SLAB_SIZE);
+                pages[i] = nextPage++;
+            }
+        }
+        return pages;
+    }
+
+    synchronized void free(int[] pages) {
+        for (int page : pages)
+            freePages[freeCount++] = page;
+    }
+
+    /**
+     * @return a buffer positioned at the start of the page and limited to its end
+     */
+    private ByteBuffer getPage(int page) {
+        ByteBuffer slab = slabs[page / PAGES_PER_SLAB].duplicate();
+        int start = (page % PAGES_PER_SLAB) * PAGE_SIZE;
+        slab.limit(start + PAGE_SIZE);
+        slab.position(start);
+        return slab;
+    }
+}
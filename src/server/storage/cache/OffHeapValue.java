@@ -0,0 +1,109 @@
+package server.storage.cache;
+
+import protocol.kv.V;
+
+import java.io.ObjectStreamException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Value of the cache whose bytes reside in an {@link OffHeapArena}. On the heap it only takes the page numbers.
+ * The cache holds one reference to the value and every reader holds another one while it reads the pages.
+ * The pages are freed once the value has been removed from the cache and the last reader is done, so that they
+ * cannot be reused while they are still read.
+ * Only the value at rest is off-heap: every hit copies it onto the heap via {@link #load()}, so a hit allocates as
+ * much as it does with values on the heap. What shrinks is the heap the cache itself retains.
+ */
+class OffHeapValue extends V {
+    private static final long serialVersionUID = 8664644283919754218L;
+
+    private final transient OffHeapArena arena;
+    private final int[] pages;
+    private final int length;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    OffHeapValue(OffHeapArena arena, int[] pages, int length) {
+        super((String) null);
+        this.arena = arena;
+        this.pages = pages;
+        this.length = length;
+    }
+
+    /**
+     * Copies the value onto the heap
+     *
+     * @return the value or null if it has been freed in the meantime
+     */
+    V load() {
+        if (!retain())
+            return null;
+        try {
+            return new V(arena.load(pages, length));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Takes a reference to the value
+     *
+     * @return false if the value has been freed, i.e. its pages must not be read anymore
+     */
+    boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current <= 0)
+                return false;
+            if (references.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Gives up a reference to the value. The pages are freed with the last reference
+     */
+    void release() {
+        if (references.decrementAndGet() == 0)
+            arena.free(pages);
+    }
+
+    /**
+     * @return number of bytes the value occupies in the arena
+     */
+    long getAllocatedBytes() {
+        return (long) pages.length * OffHeapArena.PAGE_SIZE;
+    }
+
+    @Override
+    public String get() {
+        V value = load();
+        return (value == null) ? null : value.get();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        V value = load();
+        return (value == null) ? null : value.getBytes();
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapValue{length=" + length + ", pages=" + pages.length + '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    /**
+     * Serializes a copy on the heap, as the pages cannot leave this process
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return load();
+    }
+}
@@ -0,0 +1,97 @@
+package server.storage.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped, lossy buffer recording cache hits, so that readers do not contend on the lock of the
+ * {@link ICacheDisplacementTracker}. Every thread offers to the ring buffer of its stripe without locking.
+ * The hits are replayed to the tracker in batches by whoever holds the eviction lock. When a ring is full or
+ * two threads race for the same slot, the hit is dropped: the tracker then misses an access, which only makes its
+ * eviction order slightly less accurate, whereas the cache content stays consistent.
+ *
+ * @param <E> type of the recorded elements
+ */
+class ReadBuffer<E> {
+    /**
+     * number of elements per stripe. A power of two
+     */
+    static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    /**
+     * result of {@link #offer(Object)}
+     */
+    enum Offer {
+        SUCCESS, FULL, FAILED
+    }
+
+    private static class Stripe<E> {
+        private final AtomicReferenceArray<E> elements = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writeIndex = new AtomicLong();
+        private volatile long readIndex;
+    }
+
+    private final Stripe<E>[] stripes;
+    private final int mask;
+
+    ReadBuffer() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        stripes = newStripes(count);
+        for (int i = 0; i < count; i++)
+            stripes[i] = new Stripe<>();
+        mask = count - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Stripe<E>[] newStripes(int count) {
+        return (Stripe<E>[]) new Stripe<?>[count];
+    }
+
+    /**
+     * Records an element in the stripe of the calling thread
+     *
+     * @param e the element
+     * @return {@link Offer#FULL} if the stripe is full and should be drained, {@link Offer#FAILED} if another thread
+     * took the slot. The element is dropped in both cases
+     */
+    Offer offer(E e) {
+        Stripe<E> stripe = stripes[getStripeIndex()];
+        long tail = stripe.writeIndex.get();
+        if (tail - stripe.readIndex >= STRIPE_SIZE)
+            return Offer.FULL;
+        if (!stripe.writeIndex.compareAndSet(tail, tail + 1))
+            return Offer.FAILED;
+        stripe.elements.lazySet((int) tail & STRIPE_MASK, e);
+        return Offer.SUCCESS;
+    }
+
+    /**
+     * Hands all recorded elements to a consumer. Must not be called concurrently, i.e. only under the eviction lock
+     *
+     * @param consumer receives the elements
+     */
+    void drain(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            long head = stripe.readIndex;
+            long tail = stripe.writeIndex.get();
+            while (head < tail) {
+                int index = (int) head & STRIPE_MASK;
+                E e = stripe.elements.get(index);
+                if (e == null)
+                    break;
+                stripe.elements.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            }
+            stripe.readIndex = head;
+        }
+    }
+
+    private int getStripeIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
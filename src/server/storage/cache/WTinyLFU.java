@@ -0,0 +1,112 @@
+package server.storage.cache;
+
+import protocol.kv.K;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Window TinyLFU strategy.
+ * New keys enter a small LRU admission window of about 1% of the capacity. Keys leaving the window have to be
+ * admitted to the main region, a segmented LRU made of a probation and a protected segment: when the cache is full,
+ * the oldest key of the window competes with the oldest key of the probation segment, and the one accessed less
+ * often recently according to a {@link FrequencySketch} is evicted ({@link ICacheDisplacementTracker#evict()}).
+ * Keys accessed again in the probation segment move to the protected segment of about 80% of the main region.
+ * Hence a scan over many keys that are accessed once, e.g. by a MapReduce job, only churns the window and the
+ * probation segment instead of flushing the frequently accessed keys.
+ * Access - put ot get operations.
+ */
+public class WTinyLFU implements ICacheDisplacementTracker {
+    private final LinkedHashSet<K> window = new LinkedHashSet<>();
+    private final LinkedHashSet<K> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<K> protectedSegment = new LinkedHashSet<>();
+    private final FrequencySketch sketch;
+
+    private final int windowCapacity;
+    private final int protectedCapacity;
+
+    public WTinyLFU(int trackerCapacity) {
+        this.windowCapacity = Math.max(1, trackerCapacity / 100);
+        this.protectedCapacity = (int) ((trackerCapacity - windowCapacity) * 0.8);
+        this.sketch = new FrequencySketch(trackerCapacity);
+    }
+
+    @Override
+    public synchronized K evict() {
+        K candidate = first(window);
+        K victim = first(probation.isEmpty() ? protectedSegment : probation);
+        if (candidate == null && victim == null)
+            return null;
+        if (victim == null || (candidate != null && sketch.frequency(candidate) <= sketch.frequency(victim))) {
+            window.remove(candidate);
+            return candidate;
+        }
+        probation.remove(victim);
+        protectedSegment.remove(victim);
+        if (candidate != null) {
+            window.remove(candidate);
+            probation.add(candidate);
+        }
+        return victim;
+    }
+
+    @Override
+    public synchronized K register(K k) {
+        sketch.increment(k);
+        if (window.remove(k)) {
+            window.add(k);
+        } else if (probation.remove(k)) {
+            protectedSegment.add(k);
+            if (protectedSegment.size() > protectedCapacity) {
+                K demoted = first(protectedSegment);
+                protectedSegment.remove(demoted);
+                probation.add(demoted);
+            }
+        } else if (protectedSegment.remove(k)) {
+            protectedSegment.add(k);
+        } else {
+            window.add(k);
+            if (window.size() > windowCapacity) {
+                K overflow = first(window);
+                window.remove(overflow);
+                probation.add(overflow);
+            }
+        }
+        return k;
+    }
+
+    @Override
+    public synchronized void unregister(K k) {
+        if (!window.remove(k) && !probation.remove(k))
+            protectedSegment.remove(k);
+    }
+
+    @Override
+    public synchronized boolean containsKey(K key) {
+        return window.contains(key) || probation.contains(key) || protectedSegment.contains(key);
+    }
+
+    /**
+     * Gets the protected keys first, then the window and finally the probation segment, each from the most
+     * recently accessed key on. This only approximates the eviction order, which depends on the frequency sketch
+     */
+    @Override
+    public synchronized List<K> getHottest(int count) {
+        List<K> hottest = new ArrayList<>();
+        for (LinkedHashSet<K> segment : Arrays.asList(protectedSegment, window, probation)) {
+            List<K> keys = new ArrayList<>(segment);
+            Collections.reverse(keys);
+            hottest.addAll(keys.subList(0, Math.min(count - hottest.size(), keys.size())));
+        }
+        return hottest;
+    }
+
+    private static K first(LinkedHashSet<K> segment) {
+        Iterator<K> oldest = segment.iterator();
+        return oldest.hasNext() ? oldest.next() : null;
+    }
+}
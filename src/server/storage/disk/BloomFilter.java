@@ -0,0 +1,80 @@
+package server.storage.disk;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Probabilistic set of strings. A key that was added is always reported as possibly contained, a key that was not
+ * added is reported as contained only with a small false positive probability. Keys cannot be removed.
+ * Adding and querying are thread-safe and do not block.
+ */
+class BloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    /**
+     * Creates a filter sized for the given number of keys
+     *
+     * @param expectedKeys      number of keys the filter is expected to hold
+     * @param falsePositiveRate false positive probability the filter should have when holding the expected keys
+     */
+    BloomFilter(int expectedKeys, double falsePositiveRate) {
+        long optimalBits = (long) Math.ceil(-Math.max(expectedKeys, 1) * Math.log(falsePositiveRate) / (LN2 * LN2));
+        bitCount = (int) Math.min(Math.max(optimalBits, Long.SIZE), Integer.MAX_VALUE - Long.SIZE);
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / Math.max(expectedKeys, 1) * LN2));
+        bits = new AtomicLongArray((bitCount + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0)
+                    break;
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return false if the key was never added, true if it may have been added
+     */
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the characters of a key, finished with the mixing step of MurmurHash3
+     * so that both halves can serve as independent hashes
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
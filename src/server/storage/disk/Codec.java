@@ -0,0 +1,135 @@
+package server.storage.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression applied to values before they are stored. The id of the codec is kept in the flags of every
+ * {@link Record}, so values written with different codecs can be read side by side.
+ */
+public enum Codec {
+    /**
+     * values are stored as they are
+     */
+    NONE("NONE", 0) {
+        @Override
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] decode(ByteBuffer stored) {
+            byte[] value = new byte[stored.remaining()];
+            stored.get(value);
+            return value;
+        }
+    },
+
+    /**
+     * values are compressed with DEFLATE at its fastest level and stored as
+     * 4 bytes length of the original value followed by the compressed bytes
+     */
+    DEFLATE("DEFLATE", 1) {
+        /**
+         * DEFLATE expands a value by at most this factor, so longer declared lengths are corrupt
+         */
+        private static final int MAX_EXPANSION = 1032;
+
+        @Override
+        public byte[] encode(byte[] value) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(value);
+                deflater.finish();
+                byte[] buffer = new byte[4 + value.length];
+                ByteBuffer.wrap(buffer).putInt(value.length);
+                int length = 4;
+                while (!deflater.finished() && length < buffer.length)
+                    length += deflater.deflate(buffer, length, buffer.length - length);
+                if (!deflater.finished())
+                    return null;
+                byte[] encoded = new byte[length];
+                System.arraycopy(buffer, 0, encoded, 0, length);
+                return encoded;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(ByteBuffer stored) throws IOException {
+            ByteBuffer input = stored.duplicate();
+            if (input.remaining() < 4)
+                throw new IOException("Compressed value is truncated");
+            int declaredLength = input.getInt();
+            if (declaredLength < 0 || (long) declaredLength > (long) input.remaining() * MAX_EXPANSION)
+                throw new IOException("Compressed value declares an invalid length of " + declaredLength + " bytes");
+            byte[] value = new byte[declaredLength];
+            byte[] compressed = new byte[input.remaining()];
+            input.get(compressed);
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int length = 0;
+                while (length < value.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(value, length, value.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        throw new IOException("Compressed value is truncated");
+                    length += inflated;
+                }
+                if (length != value.length)
+                    throw new IOException("Compressed value is truncated");
+                return value;
+            } catch (DataFormatException e) {
+                throw new IOException("Compressed value is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    private String desc;
+    private int id;
+
+    Codec(String desc, int id) {
+        this.desc = desc;
+        this.id = id;
+    }
+
+    /**
+     * Encodes a value for storage
+     *
+     * @param value the value
+     * @return the encoded value or null if encoding does not make the value smaller
+     */
+    public abstract byte[] encode(byte[] value);
+
+    /**
+     * Decodes a stored value
+     *
+     * @param stored buffer holding exactly the stored value
+     * @return the original value
+     * @throws IOException if the stored value is truncated or corrupt
+     */
+    public abstract byte[] decode(ByteBuffer stored) throws IOException;
+
+    public String getDesc() {
+        return desc;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    static Codec getById(int id) {
+        for (Codec codec : values()) {
+            if (codec.id == id)
+                return codec;
+        }
+        throw new IllegalArgumentException("Unknown codec id " + id);
+    }
+}
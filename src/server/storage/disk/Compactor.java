@@ -0,0 +1,120 @@
+package server.storage.disk;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.app.Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reclaims the space of superseded records and tombstones of a {@link LogStructuredPersistenceManager}.
+ * Once the share of dead bytes in the sealed segments reaches the configured ratio, all sealed segments are merged:
+ * their live records are copied into fresh segments, the key directory is pointed to the copies one key at a time
+ * and the old segments are deleted afterwards. Writes keep going to the active segment meanwhile and the copying
+ * is throttled by a {@link RateLimiter}, so that client requests keep most of the disk bandwidth.
+ * As all sealed segments are merged together, no older record of a deleted key survives and tombstones can be dropped.
+ */
+class Compactor implements Runnable {
+    private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
+
+    /**
+     * milliseconds between two checks of the dead byte ratio
+     */
+    static final long CHECK_INTERVAL = 10000;
+
+    private final LogStructuredPersistenceManager pm;
+    private final double compactionRatio;
+    private final RateLimiter rateLimiter;
+
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    Compactor(LogStructuredPersistenceManager pm, double compactionRatio, long bytesPerSecond) {
+        this.pm = pm;
+        this.compactionRatio = compactionRatio;
+        this.rateLimiter = new RateLimiter(bytesPerSecond);
+    }
+
+    /**
+     * Checks the dead byte ratio in regular intervals and compacts if it is reached.
+     * Afterwards, hint files are written for segments sealed in the meantime.
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (running) {
+            try {
+                Thread.sleep(CHECK_INTERVAL);
+                if (pm.getDeadRatio() >= compactionRatio)
+                    compact();
+                synchronized (this) {
+                    pm.writeHints();
+                }
+            } catch (InterruptedException e) {
+                LOG.info("Compaction of " + pm + " stopped");
+                return;
+            } catch (IOException e) {
+                LOG.error("Compaction of " + pm + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Merges the live records of all sealed segments into new segments and removes the old ones
+     */
+    synchronized void compact() throws IOException, InterruptedException {
+        List<Segment> sealed = pm.getSealedSegments();
+        if (sealed.isEmpty())
+            return;
+        LOG.info("Compacting " + sealed);
+
+        List<Segment> output = new ArrayList<>();
+        Segment target = null;
+        long copied = 0;
+        for (Segment segment : sealed) {
+            long offset = 0;
+            while (offset < segment.getSize()) {
+                ByteBuffer header = segment.read(offset, Record.HEADER_LENGTH);
+                int recordLength = Record.getRecordLength(header);
+                rateLimiter.acquire(recordLength);
+                ByteBuffer record = segment.read(offset, recordLength);
+                String key = Record.decode(record.duplicate()).getKey();
+
+                IndexEntry current = pm.getIndexEntry(key);
+                if (current != null && current.getSegmentId() == segment.getId() && current.getRecordOffset() == offset) {
+                    if (target == null || target.getSize() + recordLength > pm.getMaxSegmentSize()) {
+                        target = pm.openSegment();
+                        output.add(target);
+                    }
+                    IndexEntry copy = current.moveTo(target.getId(), target.append(record));
+                    if (pm.moveIndexEntry(key, current, copy))
+                        copied += recordLength;
+                    else
+                        target.addDeadBytes(recordLength);
+                }
+                offset += recordLength;
+            }
+        }
+        for (Segment segment : output) {
+            segment.force();
+            pm.writeHint(segment);
+        }
+        pm.removeSegments(sealed);
+
+        long before = sealed.stream().mapToLong(Segment::getSize).sum();
+        LOG.info("Compacted " + sealed.size() + " segments of " + before + " bytes into " + output.size()
+                + " segments of " + copied + " live bytes");
+    }
+
+    /**
+     * Stops the background checks
+     */
+    void stop() {
+        running = false;
+        if (thread != null)
+            thread.interrupt();
+    }
+}
@@ -0,0 +1,30 @@
+package server.storage.disk;
+
+/**
+ * Point in time at which a write is forced onto the storage device
+ */
+public enum Durability {
+    /**
+     * a PUT is acknowledged only after its data is forced onto the device. Concurrent PUTs share one fsync
+     */
+    ALWAYS("ALWAYS"),
+
+    /**
+     * written data is forced onto the device in a fixed interval. A crash loses at most the writes of one interval
+     */
+    INTERVAL("INTERVAL"),
+
+    /**
+     * the operating system decides when written data reaches the device
+     */
+    OS("OS");
+
+    private String desc;
+    Durability(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
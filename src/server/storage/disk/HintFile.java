@@ -0,0 +1,137 @@
+package server.storage.disk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Index of a sealed {@link Segment}, stored next to it as [id].hint.
+ * A hint file lists the key, sequence number and position of every record of its segment without the values,
+ * so that the key directory can be rebuilt at startup without reading the whole segment.
+ * Layout: 8 bytes size of the segment the hint was built from, followed by one entry per record:
+ * 1 byte flags, 8 bytes sequence number, 8 bytes offset, 4 bytes record length, 4 bytes value length,
+ * 2 bytes key length and the key, and finally 8 bytes CRC32 over everything before.
+ * A hint that does not match the size of its segment or fails the checksum is ignored and the segment is scanned.
+ */
+class HintFile {
+    static final String HINT_SUFFIX = ".hint";
+
+    /**
+     * Receives the entries of a hint file
+     */
+    interface Visitor {
+        void visit(String key, boolean tombstone, IndexEntry entry);
+    }
+
+    private HintFile() {
+    }
+
+    static Path getPath(Path segmentDir, int segmentId) {
+        return segmentDir.resolve(String.format("%010d", segmentId) + HINT_SUFFIX);
+    }
+
+    /**
+     * Writes the hint file of a sealed segment by reading the headers and keys of its records
+     *
+     * @param segment the sealed segment
+     * @return path of the hint file
+     */
+    static Path write(Segment segment) throws IOException {
+        Path hintFile = getPath(segment.getPath().getParent(), segment.getId());
+        Path tmpFile = hintFile.resolveSibling(hintFile.getFileName() + ".tmp");
+        long size = segment.getSize();
+
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(tmpFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc)))) {
+            out.writeLong(size);
+            long offset = 0;
+            while (offset < size) {
+                ByteBuffer header = segment.read(offset, Record.HEADER_LENGTH);
+                int recordLength = Record.getRecordLength(header);
+                int valueOffset = Record.getValueOffset(header);
+                ByteBuffer keyBytes = segment.read(offset + Record.HEADER_LENGTH, valueOffset - Record.HEADER_LENGTH);
+
+                out.writeByte(Record.getFlags(header));
+                out.writeLong(Record.getSequence(header));
+                out.writeLong(offset);
+                out.writeInt(recordLength);
+                out.writeInt(recordLength - valueOffset);
+                out.writeShort(keyBytes.remaining());
+                out.write(keyBytes.array(), 0, keyBytes.remaining());
+                offset += recordLength;
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(tmpFile, hintFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return hintFile;
+    }
+
+    /**
+     * Reads the hint file of a segment
+     *
+     * @param segment the segment whose records are listed by the hint file
+     * @param visitor receives every entry of the hint file
+     * @return false if there is no valid hint file for the segment. The visitor does not receive any entry then
+     */
+    static boolean read(Segment segment, Visitor visitor) throws IOException {
+        Path hintFile = getPath(segment.getPath().getParent(), segment.getId());
+        if (!Files.exists(hintFile))
+            return false;
+
+        long length = Files.size(hintFile);
+        CRC32 crc = new CRC32();
+        List<String> keys = new ArrayList<>();
+        List<Boolean> tombstones = new ArrayList<>();
+        List<IndexEntry> entries = new ArrayList<>();
+        try (InputStream file = Files.newInputStream(hintFile);
+             DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(file), crc))) {
+            if (length < 16 || in.readLong() != segment.getSize())
+                return false;
+            long read = 8;
+            while (read < length - 8) {
+                byte flags = in.readByte();
+                long sequence = in.readLong();
+                long offset = in.readLong();
+                int recordLength = in.readInt();
+                int valueLength = in.readInt();
+                byte[] key = new byte[in.readShort() & 0xFFFF];
+                in.readFully(key);
+                read += 1 + 8 + 8 + 4 + 4 + 2 + key.length;
+
+                keys.add(new String(key, StandardCharsets.US_ASCII));
+                tombstones.add((flags & Record.TOMBSTONE) != 0);
+                entries.add(new IndexEntry(segment.getId(), offset, recordLength, recordLength - valueLength, valueLength, sequence,
+                        Record.getCodec(flags)));
+            }
+            long checksum = crc.getValue();
+            if (read != length - 8 || in.readLong() != checksum)
+                return false;
+        } catch (EOFException e) {
+            return false;
+        }
+        for (int i = 0; i < entries.size(); i++)
+            visitor.visit(keys.get(i), tombstones.get(i), entries.get(i));
+        return true;
+    }
+
+    static void delete(Path segmentDir, int segmentId) throws IOException {
+        Files.deleteIfExists(getPath(segmentDir, segmentId));
+    }
+}
@@ -1,8 +1,11 @@
 package server.storage.disk;
 
+import ecs.KeyHashRange;
 import server.storage.PUTStatus;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.Iterator;
 
 /**
  * Persistence Manager
@@ -27,6 +30,15 @@ public interface IPersistenceManager {
      */
     byte[] read(Path file);
 
+    /**
+     * Reads a value from a file into a buffer, which may be a view on data shared with the persistence manager
+     * instead of a copy on the heap. Hence the buffer must not be written to
+     *
+     * @param file path to the file that is supposed to be read from
+     * @return the value of the file, ready to be read from, or null if it does not exist
+     */
+    ByteBuffer readBuffer(Path file);
+
     /**
      * Delete a file
      *
@@ -34,4 +46,26 @@ public interface IPersistenceManager {
      * @return Status indicating if operation was successful
      */
     PUTStatus delete(Path file);
+
+    /**
+     * Iterates over the files of all values whose hashed key lies in a given range, ordered by the hashed key.
+     * Values written or deleted while iterating may or may not be seen.
+     *
+     * @param range range of hashed keys, which may wrap around
+     * @return the paths of the values in the range
+     */
+    Iterator<Path> iterate(KeyHashRange range);
+
+    /**
+     * Gets the root folder of the data managed by this instance
+     *
+     * @return path to the database folder of the server
+     */
+    String getDbPath();
+
+    /**
+     * Releases the resources held for the data on disk and makes sure
+     * all written values are on disk before the server stops
+     */
+    void close();
 }
\ No newline at end of file
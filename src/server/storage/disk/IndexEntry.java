@@ -0,0 +1,75 @@
+package server.storage.disk;
+
+/**
+ * Entry of the in-memory key index of {@link LogStructuredPersistenceManager}.
+ * Points to the latest record of a key.
+ */
+class IndexEntry {
+    private final int segmentId;
+    private final long recordOffset;
+    private final int recordLength;
+    private final int valueOffset;
+    private final int valueLength;
+    private final long sequence;
+    private final Codec codec;
+
+    IndexEntry(int segmentId, long recordOffset, int recordLength, int valueOffset, int valueLength, long sequence, Codec codec) {
+        this.segmentId = segmentId;
+        this.recordOffset = recordOffset;
+        this.recordLength = recordLength;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
+        this.sequence = sequence;
+        this.codec = codec;
+    }
+
+    /**
+     * Creates an entry pointing to a copy of the same record at another position, e.g. after compaction
+     *
+     * @param segmentId    segment holding the copy
+     * @param recordOffset position of the copy within the segment
+     * @return the entry of the copy
+     */
+    IndexEntry moveTo(int segmentId, long recordOffset) {
+        return new IndexEntry(segmentId, recordOffset, recordLength, valueOffset, valueLength, sequence, codec);
+    }
+
+    int getSegmentId() {
+        return segmentId;
+    }
+
+    long getRecordOffset() {
+        return recordOffset;
+    }
+
+    int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * @return position of the value within the segment
+     */
+    long getValuePosition() {
+        return recordOffset + valueOffset;
+    }
+
+    int getValueLength() {
+        return valueLength;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return codec the stored value is encoded with
+     */
+    Codec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexEntry{segment=" + segmentId + ", offset=" + recordOffset + ", length=" + recordLength + ", seq=" + sequence + '}';
+    }
+}
@@ -0,0 +1,120 @@
+package server.storage.disk;
+
+import ecs.KeyHashRange;
+import server.storage.PUTStatus;
+import server.storage.stats.LatencyHistogram;
+import server.storage.stats.StorageStats;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the operations, their latency and the bytes read and written of the {@link IPersistenceManager} it wraps,
+ * whichever storage engine that is
+ */
+public class InstrumentedPersistenceManager implements IPersistenceManager {
+    private final IPersistenceManager pm;
+
+    private final LatencyHistogram reads = new LatencyHistogram();
+    private final LatencyHistogram writes = new LatencyHistogram();
+    private final LatencyHistogram deletes = new LatencyHistogram();
+    private final LongAdder readMisses = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    public InstrumentedPersistenceManager(IPersistenceManager pm) {
+        this.pm = pm;
+    }
+
+    @Override
+    public PUTStatus write(Path file, byte[] value) {
+        long start = System.nanoTime();
+        PUTStatus status = pm.write(file, value);
+        writes.record(System.nanoTime() - start);
+        bytesWritten.add(value.length);
+        return status;
+    }
+
+    @Override
+    public byte[] read(Path file) {
+        long start = System.nanoTime();
+        byte[] value = pm.read(file);
+        reads.record(System.nanoTime() - start);
+        if (value == null)
+            readMisses.increment();
+        else
+            bytesRead.add(value.length);
+        return value;
+    }
+
+    @Override
+    public ByteBuffer readBuffer(Path file) {
+        long start = System.nanoTime();
+        ByteBuffer value = pm.readBuffer(file);
+        reads.record(System.nanoTime() - start);
+        if (value == null)
+            readMisses.increment();
+        else
+            bytesRead.add(value.remaining());
+        return value;
+    }
+
+    @Override
+    public PUTStatus delete(Path file) {
+        long start = System.nanoTime();
+        PUTStatus status = pm.delete(file);
+        deletes.record(System.nanoTime() - start);
+        return status;
+    }
+
+    @Override
+    public Iterator<Path> iterate(KeyHashRange range) {
+        return pm.iterate(range);
+    }
+
+    @Override
+    public String getDbPath() {
+        return pm.getDbPath();
+    }
+
+    @Override
+    public void close() {
+        pm.close();
+    }
+
+    /**
+     * @return the wrapped persistence manager
+     */
+    public IPersistenceManager getDelegate() {
+        return pm;
+    }
+
+    /**
+     * Adds the disk statistics to a snapshot, including the false positive rate of the key filter if the storage
+     * engine is {@link StorageEngine#FILE}
+     *
+     * @param stats the snapshot
+     * @return the snapshot
+     */
+    public StorageStats collectStats(StorageStats stats) {
+        stats.with("disk.reads", reads.getCount())
+                .with("disk.read.misses", readMisses.sum())
+                .with("disk.read.latency", reads.summarize())
+                .with("disk.writes", writes.getCount())
+                .with("disk.write.latency", writes.summarize())
+                .with("disk.deletes", deletes.getCount())
+                .with("disk.delete.latency", deletes.summarize())
+                .with("disk.bytes.read", bytesRead.sum())
+                .with("disk.bytes.written", bytesWritten.sum());
+        if (pm instanceof PersistenceManager)
+            stats.with("disk.filter.fp.rate", ((PersistenceManager) pm).getFalsePositiveRate());
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return pm.toString();
+    }
+}
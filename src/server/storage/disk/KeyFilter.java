@@ -0,0 +1,147 @@
+package server.storage.disk;
+
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers most lookups of keys that do not exist without touching the disk.
+ * Keeps one {@link BloomFilter} per top-level folder of the database, i.e. per first byte of the hashed key,
+ * over the keys of the {@link KeyIndex}. As Bloom filters cannot forget keys, a filter is rebuilt from the index
+ * once as many keys have been removed from its folder as it was sized for, or once more keys were added than it
+ * was sized for, so that its false positive rate stays close to {@link #FALSE_POSITIVE_RATE}.
+ * Keys outside of the hashed folders are never filtered.
+ */
+class KeyFilter {
+    /**
+     * false positive probability every filter is sized for
+     */
+    static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * smallest number of keys a filter is sized for
+     */
+    private static final int MIN_CAPACITY = 1024;
+    private static final int PREFIX_LENGTH = 2;
+    private static final int FILTERS = 256;
+
+    /**
+     * filter of one top-level folder. Adds and rebuilds are synchronized on the instance,
+     * lookups read the current filter without locking. The filter is set by the first {@link #rebuild}
+     */
+    private static class Slot {
+        private volatile BloomFilter filter;
+        private int capacity;
+        private int added;
+        private int removed;
+    }
+
+    private final KeyIndex keyIndex;
+    private final Slot[] slots = new Slot[FILTERS];
+
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Creates the filters of all keys currently held by an index
+     *
+     * @param keyIndex the index, which has to be updated before the filter on every add and remove
+     */
+    KeyFilter(KeyIndex keyIndex) {
+        this.keyIndex = keyIndex;
+        for (int i = 0; i < FILTERS; i++) {
+            slots[i] = new Slot();
+            rebuild(slots[i], toPrefix(i));
+        }
+    }
+
+    void add(String key) {
+        int index = getSlotIndex(key);
+        if (index < 0)
+            return;
+        Slot slot = slots[index];
+        synchronized (slot) {
+            slot.filter.add(key);
+            if (++slot.added > slot.capacity)
+                rebuild(slot, toPrefix(index));
+        }
+    }
+
+    void remove(String key) {
+        int index = getSlotIndex(key);
+        if (index < 0)
+            return;
+        Slot slot = slots[index];
+        synchronized (slot) {
+            if (++slot.removed > slot.capacity)
+                rebuild(slot, toPrefix(index));
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return false if the key is not stored, true if it may be stored
+     */
+    boolean mightContain(String key) {
+        int index = getSlotIndex(key);
+        if (index < 0)
+            return true;
+        boolean mightContain = slots[index].filter.mightContain(key);
+        if (!mightContain)
+            negatives.increment();
+        return mightContain;
+    }
+
+    /**
+     * Records that a key the filter reported as possibly stored was not found
+     */
+    void falsePositive() {
+        falsePositives.increment();
+        negatives.increment();
+    }
+
+    /**
+     * Gets the share of lookups of missing keys that the filters did not answer
+     *
+     * @return a value between 0 and 1
+     */
+    double getFalsePositiveRate() {
+        long total = negatives.sum();
+        return total == 0 ? 0 : (double) falsePositives.sum() / total;
+    }
+
+    /**
+     * Replaces the filter of a folder by one built from the keys of the index, sized for twice their number
+     */
+    private void rebuild(Slot slot, String prefix) {
+        synchronized (slot) {
+            NavigableSet<String> keys = keyIndex.withPrefix(prefix);
+            int count = keys.size();
+            int capacity = (int) Math.max(MIN_CAPACITY, Math.min(2L * count, Integer.MAX_VALUE / 2));
+            BloomFilter filter = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+            for (String key : keys)
+                filter.add(key);
+            slot.filter = filter;
+            slot.capacity = capacity;
+            slot.added = count;
+            slot.removed = 0;
+        }
+    }
+
+    private static String toPrefix(int index) {
+        return String.format("%02x", index);
+    }
+
+    /**
+     * @param key the key
+     * @return index of the filter of the key's top-level folder or -1 if the key is not in a hashed folder
+     */
+    private static int getSlotIndex(String key) {
+        if (key.length() <= PREFIX_LENGTH)
+            return -1;
+        int high = Character.digit(key.charAt(0), 16);
+        int low = Character.digit(key.charAt(1), 16);
+        if (high < 0 || low < 0 || Character.isUpperCase(key.charAt(0)) || Character.isUpperCase(key.charAt(1)))
+            return -1;
+        return high << 4 | low;
+    }
+}
@@ -0,0 +1,83 @@
+package server.storage.disk;
+
+import ecs.KeyHashRange;
+import util.StringUtils;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+import static util.FileUtils.SEP;
+
+/**
+ * Sorted index of the keys stored by a persistence manager, ordered by their hashed key.
+ * The keys are the paths of the values relative to the database folder as built by
+ * {@link util.FileUtils#buildPath(String, String, String)}, i.e. the hashed key split into folders of 2 characters
+ * followed by the file name. As the hashed key has a fixed length, the natural order of these paths is the order
+ * of the hashed keys, so all keys of a {@link KeyHashRange} form one contiguous range of the index.
+ * Finding them takes O(log n) plus the number of keys found instead of walking the directory tree.
+ */
+class KeyIndex {
+    /**
+     * sorts behind every character which may appear in a file name
+     */
+    private static final char UPPER_BOUND = Character.MAX_VALUE;
+
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+
+    void add(String key) {
+        keys.add(key);
+    }
+
+    void remove(String key) {
+        keys.remove(key);
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * Iterates over all keys whose hashed key lies in the given range, in the order of the hashed keys.
+     * The iterator is weakly consistent, i.e. it reflects writes and deletes done while iterating only partly.
+     *
+     * @param range range of hashed keys, which may wrap around
+     * @param dbDir database folder the keys are relative to
+     * @return the paths of the keys in the range
+     */
+    Iterator<Path> range(KeyHashRange range, Path dbDir) {
+        String from = toPathPrefix(range.getStart());
+        String to = toPathPrefix(range.getEnd()) + UPPER_BOUND;
+        Stream<String> inRange;
+        if (range.isWrappedAround()) {
+            NavigableSet<String> high = keys.tailSet(from, true);
+            NavigableSet<String> low = keys.headSet(to, false);
+            inRange = Stream.concat(high.stream(), low.stream());
+        } else {
+            inRange = keys.subSet(from, true, to, false).stream();
+        }
+        return inRange.map(dbDir::resolve).iterator();
+    }
+
+    /**
+     * Gets all keys starting with a prefix, e.g. all keys in one top-level folder
+     *
+     * @param prefix the prefix
+     * @return a weakly consistent view of the keys with the prefix
+     */
+    NavigableSet<String> withPrefix(String prefix) {
+        return keys.subSet(prefix, true, prefix + UPPER_BOUND, false);
+    }
+
+    /**
+     * Converts a hashed key into the folders its values are stored in
+     *
+     * @param keyHashed hashed key
+     * @return relative path of the folder of the hashed key, ending with a separator
+     */
+    private static String toPathPrefix(String keyHashed) {
+        return StringUtils.insertCharEvery(keyHashed, SEP.charAt(0), 2);
+    }
+}
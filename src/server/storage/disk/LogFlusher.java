@@ -0,0 +1,125 @@
+package server.storage.disk;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.app.Server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Forces the segments of a {@link LogStructuredPersistenceManager} onto the storage device, implementing group commit.
+ * The segments serve as write-ahead log: writers append their records under a short lock and, if the durability is
+ * {@link Durability#ALWAYS}, wait in {@link #awaitDurable(Segment, long)} afterwards. While the flusher thread
+ * performs one fsync, further writers pile up and are acknowledged together by the next one, so the number of
+ * fsyncs grows with the number of batches rather than with the number of writes.
+ * With {@link Durability#INTERVAL} the active segment is forced in a fixed interval and writers never wait.
+ */
+class LogFlusher implements Runnable {
+    private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
+
+    private final LogStructuredPersistenceManager pm;
+    private final Durability durability;
+    private final long interval;
+
+    private final Object lock = new Object();
+
+    /**
+     * segments which writers are waiting for. Guarded by {@link #lock}
+     */
+    private final Set<Segment> pending = new LinkedHashSet<>();
+
+    /**
+     * error of the latest flush, null if it succeeded. Guarded by {@link #lock}
+     */
+    private IOException failure;
+
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    LogFlusher(LogStructuredPersistenceManager pm, Durability durability, long interval) {
+        this.pm = pm;
+        this.durability = durability;
+        this.interval = interval;
+    }
+
+    /**
+     * Blocks until a segment is forced onto the storage device up to a given position
+     *
+     * @param segment  the segment written to
+     * @param position end of the written record
+     * @throws IOException if forcing the segment failed
+     */
+    void awaitDurable(Segment segment, long position) throws IOException {
+        synchronized (lock) {
+            while (segment.getDurableSize() < position) {
+                if (!running)
+                    throw new IOException("Log flusher is stopped");
+                pending.add(segment);
+                lock.notifyAll();
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for flush", e);
+                }
+                if (failure != null && segment.getDurableSize() < position)
+                    throw new IOException("Unable to flush " + segment, failure);
+            }
+        }
+    }
+
+    /**
+     * Forces the segments writers are waiting for, one batch after the other
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (running) {
+            List<Segment> batch;
+            synchronized (lock) {
+                try {
+                    if (pending.isEmpty())
+                        lock.wait(durability == Durability.INTERVAL ? interval : 0);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            if (batch.isEmpty())
+                batch.add(pm.getActiveSegment());
+
+            IOException error = null;
+            for (Segment segment : batch) {
+                try {
+                    if (segment.getDurableSize() < segment.getSize())
+                        segment.force();
+                } catch (IOException e) {
+                    LOG.error("Unable to flush " + segment, e);
+                    error = e;
+                }
+            }
+            synchronized (lock) {
+                failure = error;
+                lock.notifyAll();
+            }
+        }
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the flusher thread. Writers still waiting fail
+     */
+    void stop() {
+        running = false;
+        if (thread != null)
+            thread.interrupt();
+    }
+}
@@ -0,0 +1,583 @@
+package server.storage.disk;
+
+import ecs.KeyHashRange;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.app.Server;
+import server.storage.PUTStatus;
+import server.storage.StorageConfig;
+import util.FileUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static util.FileUtils.SEP;
+import static util.FileUtils.WORKING_DIR;
+
+/**
+ * Log-structured persistence in the style of Bitcask.
+ * Instead of one file per key, every write or delete is appended as a {@link Record} to the active {@link Segment}
+ * under db/[serverId]/segments/. An in-memory hash index (the key directory) maps each live key to the segment and
+ * offset of its latest record, so a write costs one append and a read costs one positional read.
+ * The key of a record is the path of the file the {@link PersistenceManager} would use for the same value,
+ * relative to the database folder. Hence both implementations are interchangeable behind {@link IPersistenceManager}.
+ * The key directory is rebuilt by scanning all segments when the server starts. As records carry a sequence number,
+ * the latest record of a key wins regardless of the order in which the segments are scanned.
+ * Superseded records and tombstones are reclaimed in the background by the {@link Compactor}.
+ * The segments double as write-ahead log: how soon a write is forced onto the device is chosen by the
+ * {@link Durability} of the {@link StorageConfig} and carried out by the {@link LogFlusher} with group commit.
+ * Values of at least the configured threshold are compressed with the configured {@link Codec} before they are
+ * appended. Each record names its codec, so changing the setting does not affect values written before.
+ */
+public class LogStructuredPersistenceManager implements IPersistenceManager {
+    private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
+
+    static final String SEGMENT_FOLDER = "segments";
+
+    /**
+     * lists the segments a finished compaction has replaced but which might not be deleted yet
+     */
+    static final String OBSOLETE_FILE = "obsolete";
+
+    /**
+     * number of attempts of a read whose segment is removed by a compaction in the meantime
+     */
+    private static final int READ_ATTEMPTS = 3;
+
+    private String db_path = WORKING_DIR + "/db" + SEP;
+    private final Path dbDir;
+    private final Path segmentDir;
+
+    /**
+     * maps the key of every live record to the position of its latest version
+     */
+    private final ConcurrentHashMap<String, IndexEntry> keyDir = new ConcurrentHashMap<>();
+
+    /**
+     * the keys of the key directory sorted by their hashed key. Updated together with the key directory
+     */
+    private final KeyIndex keyIndex = new KeyIndex();
+    private final ConcurrentHashMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSegmentId = new AtomicInteger();
+
+    /**
+     * the segment which new records are appended to
+     */
+    private volatile Segment activeSegment;
+    private final Object appendLock = new Object();
+
+    /**
+     * sequence number of the next record. Guarded by {@link #appendLock}
+     */
+    private long nextSequence;
+
+    private final long maxSegmentSize;
+    private final Durability durability;
+    private final ReadMode readMode;
+    private final Codec codec;
+    private final int compressionThreshold;
+    private final Compactor compactor;
+
+    /**
+     * forces written records onto the storage device, null if the durability is left to the OS
+     */
+    private final LogFlusher flusher;
+
+    public LogStructuredPersistenceManager(String serverId) {
+        this(serverId, new StorageConfig());
+    }
+
+    public LogStructuredPersistenceManager(String serverId, StorageConfig config) {
+        db_path += serverId + SEP;
+        dbDir = Paths.get(db_path);
+        segmentDir = dbDir.resolve(SEGMENT_FOLDER);
+        maxSegmentSize = config.getSegmentSize();
+        durability = config.getDurability();
+        readMode = config.getReadMode();
+        codec = config.getCodec();
+        compressionThreshold = config.getCompressionThreshold();
+        try {
+            Files.createDirectories(segmentDir);
+            load();
+        } catch (IOException e) {
+            LOG.error("Unable to open segments at " + segmentDir, e);
+            throw new IllegalStateException(e);
+        }
+        compactor = new Compactor(this, config.getCompactionRatio(), config.getCompactionRate());
+        Thread compactorThread = new Thread(compactor, "compactor-" + serverId);
+        compactorThread.setDaemon(true);
+        compactorThread.start();
+
+        if (durability == Durability.OS) {
+            flusher = null;
+        } else {
+            flusher = new LogFlusher(this, durability, config.getDurabilityInterval());
+            Thread flusherThread = new Thread(flusher, "flusher-" + serverId);
+            flusherThread.setDaemon(true);
+            flusherThread.start();
+        }
+    }
+
+    /**
+     * Opens all existing segments and rebuilds the key directory from their records.
+     * Segments with a valid {@link HintFile} are loaded from it, every other segment, e.g. the one that was active
+     * when the server went down, is scanned record by record.
+     * New records always go to a fresh segment, so that every segment that existed before is sealed.
+     */
+    private void load() throws IOException {
+        deleteObsoleteSegments();
+        int[] ids;
+        try (Stream<Path> files = Files.list(segmentDir)) {
+            ids = files.mapToInt(Segment::parseId).filter(id -> id >= 0).sorted().toArray();
+        }
+        Map<String, Long> tombstones = new HashMap<>();
+        int hinted = 0;
+        for (int id : ids) {
+            Segment segment = new Segment(id, segmentDir);
+            segments.put(id, segment);
+            if (HintFile.read(segment, (key, tombstone, entry) -> load(segment, key, tombstone, entry, tombstones))) {
+                segment.setHinted(true);
+                hinted++;
+            } else {
+                scan(segment, tombstones);
+            }
+        }
+        nextSegmentId.set(ids.length == 0 ? 0 : ids[ids.length - 1] + 1);
+
+        Segment last = ids.length == 0 ? null : segments.get(ids[ids.length - 1]);
+        if (last != null && last.getSize() == 0) {
+            HintFile.delete(segmentDir, last.getId());
+            last.setHinted(false);
+            activeSegment = last;
+        } else {
+            activeSegment = openSegment();
+        }
+        LOG.info("Loaded " + keyDir.size() + " keys from " + ids.length + " segments at " + segmentDir
+                + ", " + hinted + " of them from hint files");
+    }
+
+    /**
+     * Finishes a compaction that was interrupted after its result had been persisted by deleting
+     * the segments it replaced
+     */
+    private void deleteObsoleteSegments() throws IOException {
+        Path obsoleteFile = segmentDir.resolve(OBSOLETE_FILE);
+        if (!Files.exists(obsoleteFile))
+            return;
+        for (String id : Files.readAllLines(obsoleteFile, StandardCharsets.US_ASCII)) {
+            if (id.trim().isEmpty())
+                continue;
+            int segmentId = Integer.parseInt(id.trim());
+            Files.deleteIfExists(segmentDir.resolve(Segment.getFileName(segmentId)));
+            HintFile.delete(segmentDir, segmentId);
+        }
+        Files.delete(obsoleteFile);
+    }
+
+    /**
+     * Reads all records of a segment from the beginning, verifies their checksums and applies them to the key directory.
+     * Everything from the first incomplete or corrupt record on is cut off, as it is the remainder of a write
+     * interrupted by a crash.
+     *
+     * @param segment    the segment to scan
+     * @param tombstones sequence number of the latest tombstone of every key deleted in the segments scanned so far
+     */
+    private void scan(Segment segment, Map<String, Long> tombstones) throws IOException {
+        long offset = 0;
+        while (offset + Record.HEADER_LENGTH <= segment.getSize()) {
+            ByteBuffer header = segment.read(offset, Record.HEADER_LENGTH);
+            int recordLength = Record.getRecordLength(header);
+            if (recordLength < Record.HEADER_LENGTH || offset + recordLength > segment.getSize())
+                break;
+            ByteBuffer buffer = segment.read(offset, recordLength);
+            if (!Record.isValid(buffer))
+                break;
+            Record record = Record.decode(buffer);
+            int valueLength = record.isTombstone() ? 0 : record.getValue().length;
+            load(segment, record.getKey(), record.isTombstone(), new IndexEntry(segment.getId(), offset, recordLength,
+                    Record.getValueOffset(header), valueLength, record.getSequence(), record.getCodec()), tombstones);
+            offset += recordLength;
+        }
+        if (offset < segment.getSize()) {
+            LOG.warn("Cutting off " + (segment.getSize() - offset) + " bytes of torn records at offset " + offset + " of " + segment);
+            segment.truncate(offset);
+            segment.force();
+        }
+    }
+
+    /**
+     * Applies a record found while loading to the key directory unless a newer record of the same key is known
+     *
+     * @param segment    segment holding the record
+     * @param key        key of the record
+     * @param tombstone  true if the record deletes its key
+     * @param entry      position and sequence number of the record
+     * @param tombstones sequence number of the latest tombstone of every key deleted in the segments loaded so far
+     */
+    private void load(Segment segment, String key, boolean tombstone, IndexEntry entry, Map<String, Long> tombstones) {
+        nextSequence = Math.max(nextSequence, entry.getSequence() + 1);
+        IndexEntry current = keyDir.get(key);
+        long latest = Math.max(current == null ? -1 : current.getSequence(), tombstones.getOrDefault(key, -1L));
+        if (entry.getSequence() < latest) {
+            segment.addDeadBytes(entry.getRecordLength());
+            return;
+        }
+        if (tombstone) {
+            tombstones.put(key, entry.getSequence());
+            segment.addDeadBytes(entry.getRecordLength());
+            markDead(apply(key, null));
+        } else {
+            markDead(apply(key, entry));
+        }
+    }
+
+    /**
+     * Writes the hint files of all sealed segments which do not have one yet
+     */
+    void writeHints() {
+        for (Segment segment : getSealedSegments())
+            writeHint(segment);
+    }
+
+    void writeHint(Segment segment) {
+        if (segment.isHinted())
+            return;
+        try {
+            HintFile.write(segment);
+            segment.setHinted(true);
+        } catch (IOException e) {
+            LOG.error("Unable to write hint file of " + segment, e);
+        }
+    }
+
+    /**
+     * Points a key of the key directory to a new record
+     *
+     * @param key   key of the record
+     * @param entry position of the record or null if the key was deleted
+     * @return the entry the key pointed to before
+     */
+    private IndexEntry apply(String key, IndexEntry entry) {
+        if (entry == null) {
+            IndexEntry previous = keyDir.remove(key);
+            if (previous != null)
+                keyIndex.remove(key);
+            return previous;
+        }
+        IndexEntry previous = keyDir.put(key, entry);
+        if (previous == null)
+            keyIndex.add(key);
+        return previous;
+    }
+
+    /**
+     * Accounts the record of an index entry as dead in its segment
+     *
+     * @param superseded entry of a record that was superseded, may be null
+     */
+    void markDead(IndexEntry superseded) {
+        if (superseded == null)
+            return;
+        Segment segment = segments.get(superseded.getSegmentId());
+        if (segment != null)
+            segment.addDeadBytes(superseded.getRecordLength());
+    }
+
+    /**
+     * Creates a new empty segment with the next free id
+     *
+     * @return the new segment
+     */
+    Segment openSegment() throws IOException {
+        Segment segment = new Segment(nextSegmentId.getAndIncrement(), segmentDir);
+        segments.put(segment.getId(), segment);
+        LOG.info("Opened new " + segment);
+        return segment;
+    }
+
+    @Override
+    public PUTStatus write(Path file, byte[] value) {
+        String key = toRecordKey(file);
+        Codec valueCodec = Codec.NONE;
+        byte[] stored = value;
+        if (codec != Codec.NONE && value.length >= compressionThreshold) {
+            byte[] encoded = codec.encode(value);
+            if (encoded != null) {
+                valueCodec = codec;
+                stored = encoded;
+            }
+        }
+        try {
+            IndexEntry previous = append(key, stored, valueCodec);
+            return (previous == null) ? PUTStatus.CREATE_SUCCESS : PUTStatus.UPDATE_SUCCESS;
+        } catch (IOException e) {
+            LOG.error("Unable to append record of " + file, e);
+        }
+        return keyDir.containsKey(key) ? PUTStatus.UPDATE_ERROR : PUTStatus.CREATE_ERROR;
+    }
+
+    @Override
+    public byte[] read(Path file) {
+        ByteBuffer value = readBuffer(file);
+        if (value == null)
+            return null;
+        if (value.hasArray() && value.arrayOffset() == 0 && value.array().length == value.remaining())
+            return value.array();
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a value without a read system call, if the {@link ReadMode} is {@link ReadMode#MMAP}.
+     * Values in sealed segments are served as slices of the memory-mapped segment then. Values in the active segment
+     * are always read by a positional read, as the active segment still grows. Callers that need the value on the heap,
+     * like {@link #read(Path)} and thus every GET of the cache manager, still copy it out of the mapping.
+     * Compressed values are decoded into a new buffer in either mode.
+     */
+    @Override
+    public ByteBuffer readBuffer(Path file) {
+        String key = toRecordKey(file);
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            IndexEntry entry = keyDir.get(key);
+            if (entry == null)
+                return null;
+            Segment segment = segments.get(entry.getSegmentId());
+            if (segment == null)
+                continue;
+            try {
+                ByteBuffer stored = (readMode == ReadMode.MMAP && segment != activeSegment)
+                        ? segment.slice(entry.getValuePosition(), entry.getValueLength())
+                        : segment.read(entry.getValuePosition(), entry.getValueLength());
+                if (entry.getCodec() == Codec.NONE)
+                    return stored;
+                return ByteBuffer.wrap(entry.getCodec().decode(stored));
+            } catch (ClosedChannelException e) {
+                LOG.debug("Segment of " + file + " was compacted while reading. Retrying");
+            } catch (IOException e) {
+                LOG.error("Unable to read record of " + file + " at " + entry, e);
+                return null;
+            }
+        }
+        LOG.error("Unable to read record of " + file + " after " + READ_ATTEMPTS + " attempts");
+        return null;
+    }
+
+    @Override
+    public PUTStatus delete(Path file) {
+        String key = toRecordKey(file);
+        if (!keyDir.containsKey(key))
+            return PUTStatus.DELETE_ERROR;
+        try {
+            append(key, null, Codec.NONE);
+            return PUTStatus.DELETE_SUCCESS;
+        } catch (IOException e) {
+            LOG.error("Unable to append tombstone of " + file, e);
+        }
+        return PUTStatus.DELETE_ERROR;
+    }
+
+    /**
+     * Appends a record to the active segment and points the key directory to it.
+     * Appends are serialized so that the order of records in the log matches the order of the index updates.
+     * If the durability is {@link Durability#ALWAYS}, the call returns once the record is forced onto the device.
+     * Waiting happens outside of the append lock, so that concurrent writers share one fsync.
+     *
+     * @param key   key of the record
+     * @param value value of the record as encoded by the codec or null to append a tombstone
+     * @param codec codec the value is encoded with
+     * @return the entry the key pointed to before
+     */
+    private IndexEntry append(String key, byte[] value, Codec codec) throws IOException {
+        Segment segment;
+        long end;
+        IndexEntry previous;
+        synchronized (appendLock) {
+            long sequence = nextSequence++;
+            ByteBuffer record = Record.encode(key, value, codec, sequence);
+            int recordLength = record.remaining();
+            int valueOffset = Record.getValueOffset(record);
+            if (activeSegment.getSize() > 0 && activeSegment.getSize() + recordLength > maxSegmentSize) {
+                if (durability != Durability.OS)
+                    activeSegment.force();
+                activeSegment = openSegment();
+            }
+
+            long offset = activeSegment.append(record);
+            if (value == null) {
+                activeSegment.addDeadBytes(recordLength);
+                previous = apply(key, null);
+            } else {
+                previous = apply(key, new IndexEntry(activeSegment.getId(), offset, recordLength, valueOffset, value.length, sequence, codec));
+            }
+            markDead(previous);
+            segment = activeSegment;
+            end = segment.getSize();
+        }
+        if (durability == Durability.ALWAYS)
+            flusher.awaitDurable(segment, end);
+        return previous;
+    }
+
+    Segment getActiveSegment() {
+        return activeSegment;
+    }
+
+    /**
+     * Gets all segments except the active one, ordered by id
+     *
+     * @return the sealed segments
+     */
+    List<Segment> getSealedSegments() {
+        Segment active;
+        synchronized (appendLock) {
+            active = activeSegment;
+        }
+        return segments.values().stream()
+                .filter(segment -> segment != active)
+                .sorted(Comparator.comparingInt(Segment::getId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the share of dead bytes in all sealed segments
+     *
+     * @return a value between 0 and 1
+     */
+    double getDeadRatio() {
+        long size = 0;
+        long dead = 0;
+        for (Segment segment : getSealedSegments()) {
+            size += segment.getSize();
+            dead += segment.getDeadBytes();
+        }
+        return size == 0 ? 0 : (double) dead / size;
+    }
+
+    IndexEntry getIndexEntry(String key) {
+        return keyDir.get(key);
+    }
+
+    /**
+     * Points a key to a copy of its record, unless the key has been written or deleted since the original entry was read
+     *
+     * @param key      key of the record
+     * @param original entry of the original record
+     * @param copy     entry of the copy
+     * @return true if the key now points to the copy
+     */
+    boolean moveIndexEntry(String key, IndexEntry original, IndexEntry copy) {
+        return keyDir.replace(key, original, copy);
+    }
+
+    long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    /**
+     * Removes segments that were replaced by a compaction.
+     * The ids are persisted first, so that a restart finishes the removal if the server stops in between.
+     *
+     * @param obsolete segments which do not hold any live record anymore
+     */
+    void removeSegments(List<Segment> obsolete) throws IOException {
+        Path obsoleteFile = segmentDir.resolve(OBSOLETE_FILE);
+        Path tmpFile = segmentDir.resolve(OBSOLETE_FILE + ".tmp");
+        List<String> ids = new ArrayList<>();
+        for (Segment segment : obsolete)
+            ids.add(String.valueOf(segment.getId()));
+        Files.write(tmpFile, ids, StandardCharsets.US_ASCII);
+        Files.move(tmpFile, obsoleteFile, StandardCopyOption.ATOMIC_MOVE);
+
+        for (Segment segment : obsolete) {
+            segments.remove(segment.getId());
+            segment.delete();
+            HintFile.delete(segmentDir, segment.getId());
+        }
+        Files.delete(obsoleteFile);
+    }
+
+    /**
+     * Merges all sealed segments right away instead of waiting for the dead byte ratio to be reached
+     */
+    public void compact() throws IOException {
+        try {
+            compactor.compact();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compaction interrupted", e);
+        }
+    }
+
+    /**
+     * Stops the background threads and closes all segments. Unless the durability is left to the OS,
+     * the segments are forced onto the device before. Every segment gets a hint file, so that
+     * the next start does not need to scan any of them.
+     */
+    @Override
+    public void close() {
+        compactor.stop();
+        if (flusher != null)
+            flusher.stop();
+        synchronized (appendLock) {
+            for (Segment segment : segments.values())
+                writeHint(segment);
+        }
+        for (Segment segment : segments.values()) {
+            try {
+                if (durability != Durability.OS)
+                    segment.force();
+                segment.close();
+            } catch (IOException e) {
+                LOG.error("Unable to close " + segment, e);
+            }
+        }
+    }
+
+    /**
+     * Converts the file path of a value to the key of its records
+     *
+     * @param file path as built by {@link FileUtils#buildPath(String, String, String)}
+     * @return the path relative to the database folder
+     */
+    private String toRecordKey(Path file) {
+        return dbDir.relativize(file).toString();
+    }
+
+    @Override
+    public Iterator<Path> iterate(KeyHashRange range) {
+        return keyIndex.range(range, dbDir);
+    }
+
+    int[] getSegmentIds() {
+        return segments.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    @Override
+    public String getDbPath() {
+        return db_path;
+    }
+
+    @Override
+    public String toString() {
+        return "LogStructuredPersistenceManager{" + segmentDir + ", keys=" + keyDir.size()
+                + ", segments=" + Arrays.toString(getSegmentIds()) + '}';
+    }
+}
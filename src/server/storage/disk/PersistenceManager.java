@@ -1,7 +1,9 @@
 package server.storage.disk;
 
+import ecs.KeyHashRange;
 import server.app.Server;
 import server.storage.PUTStatus;
+import server.storage.StorageConfig;
 
 import java.awt.*;
 import java.io.IOException;
@@ -11,8 +13,8 @@ import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.*;
 import java.util.Arrays;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -25,13 +27,50 @@ import static util.FileUtils.WORKING_DIR;
 
 public class PersistenceManager implements IPersistenceManager {
     private static Logger LOG = LogManager.getLogger(Server.SERVER_LOG);
-    private final ConcurrentMap<String, Object> fileLocks = new ConcurrentHashMap<>();
+
+    /**
+     * number of locks writes and deletes are striped over. A power of two
+     */
+    static final int LOCK_STRIPES = 64;
+
+    /**
+     * Writes and deletes of a file hold the lock its name hashes to, so that operations on the same key stay ordered
+     * while operations on different keys mostly run in parallel
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * sorted index of all files in the database folder, updated under the lock of the file
+     */
+    private final KeyIndex keyIndex = new KeyIndex();
+
+    /**
+     * Bloom filters over the key index, so that reads of files that do not exist skip the stat of their deep path
+     */
+    private final KeyFilter keyFilter;
 
     private String db_path = WORKING_DIR + "/db" + SEP;
 
+    /**
+     * options to open a file with when writing a value. With {@link Durability#ALWAYS} every write is synchronous,
+     * otherwise it is left to the OS when values reach the device, as one file per key offers nothing to batch
+     */
+    private final OpenOption[] writeOptions;
+
     public PersistenceManager(String serverId) {
+        this(serverId, new StorageConfig());
+    }
+
+    public PersistenceManager(String serverId, StorageConfig config) {
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
         db_path += serverId + SEP;
         createDBDir(db_path);
+        loadKeyIndex();
+        keyFilter = new KeyFilter(keyIndex);
+        writeOptions = (config.getDurability() == Durability.ALWAYS)
+                ? new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.DSYNC}
+                : new OpenOption[0];
     }
 
     /**
@@ -55,6 +94,23 @@ public class PersistenceManager implements IPersistenceManager {
         return false;
     }
 
+    /**
+     * Walks the database folder once to fill the {@link KeyIndex} with all existing files
+     */
+    private void loadKeyIndex() {
+        Path dbDir = Paths.get(db_path);
+        try (Stream<Path> files = Files.walk(dbDir)) {
+            files.filter(Files::isRegularFile).forEach(file -> keyIndex.add(toIndexKey(file)));
+            LOG.info("Indexed " + keyIndex.size() + " files at " + dbDir);
+        } catch (IOException e) {
+            LOG.error("Unable to index files at " + dbDir, e);
+        }
+    }
+
+    private String toIndexKey(Path file) {
+        return Paths.get(db_path).relativize(file).toString();
+    }
+
     @Override
     public PUTStatus write(Path file, byte[] value) {
         try {
@@ -75,31 +131,32 @@ public class PersistenceManager implements IPersistenceManager {
 
 
     /**
-     * Handles creating or updating a value in a given path
+     * Handles creating or updating a value in a given path. A new file is added to the {@link KeyIndex} and the
+     * {@link KeyFilter} only once its value is written, and removed again if writing it fails
      *
      * @param file        path in which the value is supposed
      *                    to be stored
      * @param fileContent value being stored in a file
      * @return Status if operation was successful or failed
      */
-    private synchronized PUTStatus createOrUpdate(Path file, byte[] fileContent) {
-        LOG.info("Performing write");
+    private PUTStatus createOrUpdate(Path file, byte[] fileContent) {
+        LOG.debug("Performing write");
         try {
-            String fileName = file.getFileName().toString();
-            Object lock = fileLocks.get(fileName);
-            if (lock == null) {
-                fileLocks.put(fileName, new Object());
-                lock = fileLocks.get(fileName);
-            }
-            synchronized (lock) {
+            synchronized (getLock(file)) {
                 if (!FileUtils.exists(file)) {
                     Files.createFile(file);
-                    Files.write(file, fileContent);
-                    fileLocks.remove(fileName);
+                    try {
+                        Files.write(file, fileContent, writeOptions);
+                    } catch (IOException e) {
+                        Files.deleteIfExists(file);
+                        throw e;
+                    }
+                    String indexKey = toIndexKey(file);
+                    keyIndex.add(indexKey);
+                    keyFilter.add(indexKey);
                     return PUTStatus.CREATE_SUCCESS;
                 }
-                fileLocks.remove(fileName);
-                Files.write(file, fileContent);
+                Files.write(file, fileContent, writeOptions);
                 return PUTStatus.UPDATE_SUCCESS;
             }
         } catch (IOException e) {
@@ -108,9 +165,25 @@ public class PersistenceManager implements IPersistenceManager {
         return (FileUtils.exists(file)) ? PUTStatus.UPDATE_ERROR : PUTStatus.CREATE_ERROR;
     }
 
+    /**
+     * Gets the lock guarding writes and deletes of a file
+     *
+     * @param file path of the file
+     * @return the lock of the stripe the file name hashes to
+     */
+    private Object getLock(Path file) {
+        int hash = file.getFileName().toString().hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
 
+
+    /**
+     * Reads the value of a file. Files the {@link KeyFilter} rules out are not looked up on disk at all.
+     */
     @Override
     public byte[] read(Path file) {
+        if (!keyFilter.mightContain(toIndexKey(file)))
+            return null;
         if (FileUtils.exists(file)) {
             try {
                 return Files.readAllBytes(file);
@@ -118,15 +191,28 @@ public class PersistenceManager implements IPersistenceManager {
                 LOG.error(e);
                 e.printStackTrace();
             }
+        } else {
+            keyFilter.falsePositive();
         }
         return null;
     }
 
     @Override
-    public synchronized PUTStatus delete(Path file) {
+    public ByteBuffer readBuffer(Path file) {
+        byte[] value = read(file);
+        return (value == null) ? null : ByteBuffer.wrap(value);
+    }
+
+    @Override
+    public PUTStatus delete(Path file) {
         if (!Files.isDirectory(file)) {
             try {
-                Files.delete(file);
+                synchronized (getLock(file)) {
+                    Files.delete(file);
+                    String indexKey = toIndexKey(file);
+                    keyIndex.remove(indexKey);
+                    keyFilter.remove(indexKey);
+                }
                 return PUTStatus.DELETE_SUCCESS;
             } catch (IOException e) {
                 LOG.error(e);
@@ -135,8 +221,31 @@ public class PersistenceManager implements IPersistenceManager {
         return null;
     }
 
+    @Override
+    public Iterator<Path> iterate(KeyHashRange range) {
+        return keyIndex.range(range, Paths.get(db_path));
+    }
+
+    @Override
     public String getDbPath() {
         return db_path;
     }
+
+    /**
+     * Gets the share of reads of missing files which the Bloom filters let through to the disk
+     *
+     * @return a value between 0 and 1
+     */
+    public double getFalsePositiveRate() {
+        return keyFilter.getFalsePositiveRate();
+    }
+
+    /**
+     * Nothing to release, as every value is written to and read from its own file right away
+     */
+    @Override
+    public void close() {
+        LOG.info("False positive rate of the key filter of " + db_path + ": " + getFalsePositiveRate());
+    }
 }
 
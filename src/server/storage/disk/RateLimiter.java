@@ -0,0 +1,40 @@
+package server.storage.disk;
+
+/**
+ * Limits the throughput of a background task to a number of bytes per second, so that it does not
+ * compete with client requests for disk bandwidth.
+ */
+class RateLimiter {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * allowed bytes per second. 0 means unlimited
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * point in time until which the bytes acquired so far would be processed at the allowed rate
+     */
+    private long nextFree = System.nanoTime();
+
+    RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Blocks until the given number of bytes may be processed without exceeding the allowed rate
+     *
+     * @param bytes number of bytes about to be processed
+     */
+    synchronized void acquire(long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0)
+            return;
+        long now = System.nanoTime();
+        if (nextFree < now)
+            nextFree = now;
+        long wait = nextFree - now;
+        nextFree += bytes * NANOS_PER_SECOND / bytesPerSecond;
+        if (wait > 0)
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+    }
+}
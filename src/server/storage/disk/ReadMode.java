@@ -0,0 +1,26 @@
+package server.storage.disk;
+
+/**
+ * Way in which the {@link LogStructuredPersistenceManager} reads values from its segments
+ */
+public enum ReadMode {
+    /**
+     * every value is read into a fresh buffer by a positional read on the segment file
+     */
+    CHANNEL("CHANNEL"),
+
+    /**
+     * sealed segments are memory-mapped and values are served as slices of the mapping without a system call. This
+     * saves the positional read only, GETs still copy the value onto the heap
+     */
+    MMAP("MMAP");
+
+    private String desc;
+    ReadMode(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
@@ -0,0 +1,191 @@
+package server.storage.disk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and decodes the records stored in a {@link Segment}.
+ * A record has the following layout:
+ * 4 bytes CRC32 checksum over all following bytes of the record
+ * 1 byte flags: {@link #TOMBSTONE} and the id of the {@link Codec} of the value in the bits of {@link #CODEC_MASK}
+ * 8 bytes sequence number, increasing with every write on the server
+ * 2 bytes length of the key
+ * 4 bytes length of the value
+ * the key in US-ASCII
+ * the value as encoded by its codec
+ * The sequence number decides which record of a key is the latest one, independent of the segment it resides in.
+ * The checksum is verified when a segment is scanned at startup, so that a record torn by a crash is detected.
+ */
+class Record {
+    static final int HEADER_LENGTH = 4 + 1 + 8 + 2 + 4;
+
+    private static final int FLAGS_POS = 4;
+    private static final int SEQUENCE_POS = 5;
+    private static final int KEY_LENGTH_POS = 13;
+    private static final int VALUE_LENGTH_POS = 15;
+
+    /**
+     * marks a record that deletes its key
+     */
+    static final byte TOMBSTONE = 0x01;
+
+    /**
+     * bits of the flags holding the id of the codec of the value
+     */
+    static final byte CODEC_MASK = 0x0E;
+    private static final int CODEC_SHIFT = 1;
+
+    private final String key;
+    private final byte[] value;
+    private final byte flags;
+    private final long sequence;
+    private final long checksum;
+
+    private Record(String key, byte[] value, byte flags, long sequence, long checksum) {
+        this.key = key;
+        this.value = value;
+        this.flags = flags;
+        this.sequence = sequence;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Encodes a record
+     *
+     * @param key      key of the record
+     * @param value    value of the record as encoded by the codec or null to encode a tombstone
+     * @param codec    codec the value is encoded with
+     * @param sequence sequence number of the write
+     * @return a buffer holding the whole record, ready to be written
+     */
+    static ByteBuffer encode(String key, byte[] value, Codec codec, long sequence) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+        byte flags = (byte) ((value == null) ? TOMBSTONE : (codec.getId() << CODEC_SHIFT) & CODEC_MASK);
+        int valueLength = (value == null) ? 0 : value.length;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + keyBytes.length + valueLength);
+        record.position(FLAGS_POS);
+        record.put(flags);
+        record.putLong(sequence);
+        record.putShort((short) keyBytes.length);
+        record.putInt(valueLength);
+        record.put(keyBytes);
+        if (value != null)
+            record.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), FLAGS_POS, record.capacity() - FLAGS_POS);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Gets the total length of a record from its header
+     *
+     * @param header buffer positioned at the start of a record header
+     * @return length of the record including its header
+     */
+    static int getRecordLength(ByteBuffer header) {
+        int start = header.position();
+        return HEADER_LENGTH + getKeyLength(header, start) + header.getInt(start + VALUE_LENGTH_POS);
+    }
+
+    /**
+     * Gets the offset of the value within a record
+     *
+     * @param header buffer positioned at the start of a record header
+     * @return number of bytes in front of the value
+     */
+    static int getValueOffset(ByteBuffer header) {
+        return HEADER_LENGTH + getKeyLength(header, header.position());
+    }
+
+    static byte getFlags(ByteBuffer header) {
+        return header.get(header.position() + FLAGS_POS);
+    }
+
+    static Codec getCodec(byte flags) {
+        return Codec.getById((flags & CODEC_MASK) >> CODEC_SHIFT);
+    }
+
+    static long getSequence(ByteBuffer header) {
+        return header.getLong(header.position() + SEQUENCE_POS);
+    }
+
+    /**
+     * Checks the CRC32 checksum of a complete record
+     *
+     * @param record buffer positioned at the start of a record and holding at least the whole record
+     * @return true if the bytes of the record match its checksum
+     */
+    static boolean isValid(ByteBuffer record) {
+        int start = record.position();
+        int length = getRecordLength(record);
+        if (length < HEADER_LENGTH || record.remaining() < length)
+            return false;
+        CRC32 crc = new CRC32();
+        if (record.hasArray()) {
+            crc.update(record.array(), record.arrayOffset() + start + FLAGS_POS, length - FLAGS_POS);
+        } else {
+            byte[] content = new byte[length - FLAGS_POS];
+            ByteBuffer duplicate = record.duplicate();
+            duplicate.position(start + FLAGS_POS);
+            duplicate.get(content);
+            crc.update(content);
+        }
+        return (record.getInt(start) & 0xFFFFFFFFL) == crc.getValue();
+    }
+
+    private static int getKeyLength(ByteBuffer header, int start) {
+        return header.getShort(start + KEY_LENGTH_POS) & 0xFFFF;
+    }
+
+    /**
+     * Decodes a complete record
+     *
+     * @param record buffer holding exactly one record
+     * @return the decoded record
+     */
+    static Record decode(ByteBuffer record) {
+        long checksum = record.getInt() & 0xFFFFFFFFL;
+        byte flags = record.get();
+        long sequence = record.getLong();
+        int keyLength = record.getShort() & 0xFFFF;
+        int valueLength = record.getInt();
+
+        byte[] keyBytes = new byte[keyLength];
+        record.get(keyBytes);
+        byte[] value = null;
+        if ((flags & TOMBSTONE) == 0) {
+            value = new byte[valueLength];
+            record.get(value);
+        }
+        return new Record(new String(keyBytes, StandardCharsets.US_ASCII), value, flags, sequence, checksum);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    byte[] getValue() {
+        return value;
+    }
+
+    boolean isTombstone() {
+        return (flags & TOMBSTONE) != 0;
+    }
+
+    Codec getCodec() {
+        return getCodec(flags);
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    long getChecksum() {
+        return checksum;
+    }
+}
@@ -0,0 +1,209 @@
+package server.storage.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static util.FileUtils.SEP;
+
+/**
+ * An append-only data file of {@link LogStructuredPersistenceManager}.
+ * Records are only ever appended to the end of the file. Reads are positional and therefore safe
+ * to run concurrently with appends.
+ */
+class Segment {
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+
+    /**
+     * number of bytes written to this segment so far. Only the appending thread changes it.
+     */
+    private volatile long size;
+
+    /**
+     * number of bytes known to be forced onto the storage device
+     */
+    private volatile long durableSize;
+
+    /**
+     * number of bytes taken by records which are superseded by a newer record of the same key or are tombstones.
+     * These bytes are reclaimed by compaction.
+     */
+    private final AtomicLong deadBytes = new AtomicLong();
+
+    /**
+     * true if a valid {@link HintFile} exists for this segment
+     */
+    private volatile boolean hinted;
+
+    /**
+     * read-only mapping of the segment, created on the first mapped read
+     */
+    private volatile MappedByteBuffer mapping;
+
+    Segment(int id, Path segmentDir) throws IOException {
+        this.id = id;
+        this.path = segmentDir.resolve(getFileName(id));
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = channel.size();
+        this.durableSize = size;
+    }
+
+    /**
+     * Appends a record to the end of the segment
+     *
+     * @param record the encoded record, see {@link Record}
+     * @return the offset at which the record starts
+     */
+    long append(ByteBuffer record) throws IOException {
+        long offset = size;
+        long position = offset;
+        while (record.hasRemaining())
+            position += channel.write(record, position);
+        size = position;
+        return offset;
+    }
+
+    /**
+     * Reads a number of bytes at a given position of the segment
+     *
+     * @param offset position of the first byte to read
+     * @param length number of bytes to read
+     * @return a buffer holding the bytes read, ready to be read from
+     */
+    ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets a number of bytes at a given position of the segment as a slice of a read-only memory mapping.
+     * The segment is mapped on first use and mapped again if it has grown beyond the mapping since.
+     * A slice stays valid even after the segment is closed and deleted. A mapping cannot reach beyond 2 GB, so bytes
+     * past that, e.g. of a record appended to a segment just below the seal threshold, are read positionally instead.
+     *
+     * @param offset position of the first byte
+     * @param length number of bytes
+     * @return a read-only buffer holding the bytes, ready to be read from
+     */
+    ByteBuffer slice(long offset, int length) throws IOException {
+        if (offset + length > Integer.MAX_VALUE)
+            return read(offset, length);
+        MappedByteBuffer mapped = mapping;
+        if (mapped == null || offset + length > mapped.capacity())
+            mapped = map(offset + length);
+        ByteBuffer slice = mapped.duplicate();
+        slice.position((int) offset).limit((int) offset + length);
+        return slice.slice();
+    }
+
+    private synchronized MappedByteBuffer map(long minSize) throws IOException {
+        if (mapping == null || mapping.capacity() < minSize)
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+        return mapping;
+    }
+
+    /**
+     * Cuts off everything behind the given position, e.g. an incomplete record at the end of the segment
+     *
+     * @param newSize the new size of the segment in bytes
+     */
+    void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+        durableSize = Math.min(durableSize, newSize);
+    }
+
+    /**
+     * Forces all appended records onto the storage device
+     */
+    synchronized void force() throws IOException {
+        long forced = size;
+        channel.force(false);
+        if (forced > durableSize)
+            durableSize = forced;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes the segment and removes its file
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    void addDeadBytes(long bytes) {
+        deadBytes.addAndGet(bytes);
+    }
+
+    long getDeadBytes() {
+        return deadBytes.get();
+    }
+
+    boolean isHinted() {
+        return hinted;
+    }
+
+    void setHinted(boolean hinted) {
+        this.hinted = hinted;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getDurableSize() {
+        return durableSize;
+    }
+
+    static String getFileName(int id) {
+        return String.format("%010d", id) + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * Extracts the id of a segment from its file name
+     *
+     * @param segmentFile path to the segment file
+     * @return id of the segment or -1 if the file is not a segment file
+     */
+    static int parseId(Path segmentFile) {
+        String fileName = segmentFile.getFileName().toString();
+        if (!fileName.endsWith(SEGMENT_SUFFIX))
+            return -1;
+        try {
+            return Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Segment{" + path.getParent().getFileName() + SEP + path.getFileName() + ", size=" + size + ", dead=" + deadBytes.get() + '}';
+    }
+}
@@ -0,0 +1,25 @@
+package server.storage.disk;
+
+/**
+ * Layout in which a server keeps its key-value pairs on disk
+ */
+public enum StorageEngine {
+    /**
+     * one file per key under a directory tree built from the hashed key, see {@link PersistenceManager}
+     */
+    FILE("FILE"),
+
+    /**
+     * append-only segment files with an in-memory key index, see {@link LogStructuredPersistenceManager}
+     */
+    LOG("LOG");
+
+    private String desc;
+    StorageEngine(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
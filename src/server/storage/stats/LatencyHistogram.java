@@ -0,0 +1,80 @@
+package server.storage.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of operation latencies that many threads can record into without contention.
+ * Latencies are counted in buckets of powers of two microseconds, so percentiles are reported as the upper bound of
+ * the bucket they fall into, i.e. they are accurate to a factor of two.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    /**
+     * bucket i counts the latencies below 2^i microseconds that did not fit into a lower bucket
+     */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * @param nanos latency of one operation in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    /**
+     * @return mean latency in microseconds, 0 if nothing was recorded
+     */
+    public double getMeanMicros() {
+        long count = getCount();
+        return (count == 0) ? 0 : totalNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return upper bound in microseconds of the latencies below the percentile, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * @return summary of the recorded latencies for {@link StorageStats}
+     */
+    public String summarize() {
+        return String.format("count=%d, mean=%.1fus, p50<%dus, p99<%dus", getCount(), getMeanMicros(),
+                getPercentileMicros(50), getPercentileMicros(99));
+    }
+}
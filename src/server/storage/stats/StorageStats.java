@@ -0,0 +1,50 @@
+package server.storage.stats;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the statistics of the cache and the storage of a server, as sent to the ECS on its request.
+ * Holds named values in the order they were added.
+ */
+public class StorageStats implements Serializable {
+    private static final long serialVersionUID = 2419573412509878150L;
+
+    private final LinkedHashMap<String, String> values = new LinkedHashMap<>();
+
+    public StorageStats with(String name, Object value) {
+        values.put(name, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * @param name name of the value
+     * @return the value or null if there is none with that name
+     */
+    public String get(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * @param name name of a counter
+     * @return the counter or 0 if there is none with that name
+     */
+    public long getLong(String name) {
+        String value = values.get(name);
+        return (value == null) ? 0 : Long.parseLong(value);
+    }
+
+    public Map<String, String> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : values.entrySet())
+            sb.append('\t').append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+        return sb.toString();
+    }
+}
@@ -30,11 +30,15 @@ import static util.FileUtils.USER_DIR;
 @Suite.SuiteClasses({
         CacheTest.class,
         ClientAppTest.class,
+        ClientAsyncTest.class,
+        ConnectionReserveTest.class,
         ConnectionTest.class,
         ECSAppTest.class,
         FetchBatchDataTest.class,
+        FrontEndTest.class,
         InteractionTest.class,
         KeyRangeTest.class,
+        LogStructuredPersistenceTest.class,
         MarshallingTest.class,
         PersistenceTest.class
 })
@@ -5,13 +5,24 @@ import org.apache.logging.log4j.Logger;
 import org.junit.Test;
 import protocol.kv.K;
 import protocol.kv.V;
+import server.storage.StorageConfig;
+import server.storage.cache.ARC;
+import server.storage.cache.CLOCK;
 import server.storage.cache.CacheManager;
+import server.storage.cache.LFU;
+import server.storage.cache.LRU;
+import server.storage.stats.LatencyHistogram;
+import server.storage.stats.StorageStats;
 import server.storage.cache.CacheDisplacementStrategy;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
@@ -120,6 +131,30 @@ public class CacheTest {
     testCacheStrategySimplePut(1000, CacheDisplacementStrategy.LFU);
   }
 
+  /**
+   * Test simple put for {@link server.storage.cache.WTinyLFU} strategy {@link #testCacheStrategySimplePut(int, CacheDisplacementStrategy)}
+   */
+  @Test
+  public void testWTinyLFUsimplePut() throws NoSuchMethodException, InterruptedException {
+    testCacheStrategySimplePut(1000, CacheDisplacementStrategy.WTINYLFU);
+  }
+
+  /**
+   * Test simple put for {@link server.storage.cache.ARC} strategy {@link #testCacheStrategySimplePut(int, CacheDisplacementStrategy)}
+   */
+  @Test
+  public void testARCsimplePut() throws NoSuchMethodException, InterruptedException {
+    testCacheStrategySimplePut(1000, CacheDisplacementStrategy.ARC);
+  }
+
+  /**
+   * Test simple put for {@link server.storage.cache.CLOCK} strategy {@link #testCacheStrategySimplePut(int, CacheDisplacementStrategy)}
+   */
+  @Test
+  public void testCLOCKsimplePut() throws NoSuchMethodException, InterruptedException {
+    testCacheStrategySimplePut(1000, CacheDisplacementStrategy.CLOCK);
+  }
+
   /**
    * Test one of the edge cases when there is a cache of loadedDataSize one, check if eviction works
    * @param strategy {@link CacheDisplacementStrategy}
@@ -166,6 +201,30 @@ public class CacheTest {
     testCacheOneItemEvict(CacheDisplacementStrategy.LFU);
   }
 
+  /**
+   * Eviction test {@link #testCacheOneItemEvict(CacheDisplacementStrategy)} for {@link server.storage.cache.WTinyLFU} strategy
+   */
+  @Test
+  public void testWTinyLFUoneItemEvict() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    testCacheOneItemEvict(CacheDisplacementStrategy.WTINYLFU);
+  }
+
+  /**
+   * Eviction test {@link #testCacheOneItemEvict(CacheDisplacementStrategy)} for {@link server.storage.cache.ARC} strategy
+   */
+  @Test
+  public void testARConeItemEvict() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    testCacheOneItemEvict(CacheDisplacementStrategy.ARC);
+  }
+
+  /**
+   * Eviction test {@link #testCacheOneItemEvict(CacheDisplacementStrategy)} for {@link server.storage.cache.CLOCK} strategy
+   */
+  @Test
+  public void testCLOCKoneItemEvict() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    testCacheOneItemEvict(CacheDisplacementStrategy.CLOCK);
+  }
+
   /**
    * Test removing an item from the cache when value of put operations is null
    * @param cm {@link CacheManager} to test
@@ -210,4 +269,352 @@ public class CacheTest {
     testDelete(cm);
   }
 
+  /**
+   * Cache item remove operation for cache {@link #testDelete(CacheManager)} with {@link server.storage.cache.ARC} strategy
+   */
+  @Test
+  public void testARCDelete() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 100, CacheDisplacementStrategy.ARC);
+    testDelete(cm);
+  }
+
+  /**
+   * Cache item remove operation for cache {@link #testDelete(CacheManager)} with {@link server.storage.cache.WTinyLFU} strategy
+   */
+  @Test
+  public void testWTinyLFUDelete() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 100, CacheDisplacementStrategy.WTINYLFU);
+    testDelete(cm);
+  }
+
+  /**
+   * Test that a scan over keys accessed only once does not flush frequently accessed keys out of a
+   * {@link server.storage.cache.WTinyLFU} cache
+   */
+  @Test
+  public void testWTinyLFUScanResistance() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 100, CacheDisplacementStrategy.WTINYLFU);
+    Method updateCache = getUpdateCacheMethod(cm);
+
+    V v = new V("testValue");
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++)
+        updateCache.invoke(cm, new K("hot" + i), v);
+    }
+    for (int i = 0; i < 1000; i++)
+      updateCache.invoke(cm, new K("scan" + i), v);
+
+    assertEquals(100, cm.getCache().size());
+    int survivors = 0;
+    for (int i = 0; i < 50; i++) {
+      if (cm.getCache().containsKey(new K("hot" + i)))
+        survivors++;
+    }
+    assertTrue("Only " + survivors + " hot keys survived the scan", survivors >= 45);
+  }
+
+  /**
+   * Test that a cache bounded in bytes evicts until a new entry fits and skips entries larger than the whole budget
+   */
+  @Test
+  public void testLRUByteBudget() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 1000, CacheDisplacementStrategy.LRU, new StorageConfig().withCacheBytes(100));
+    Method updateCache = getUpdateCacheMethod(cm);
+
+    for (int i = 0; i < 10; i++)
+      updateCache.invoke(cm, new K("k" + i), new V("012345678901234567"));
+    assertEquals(5, cm.getCache().size());
+    assertEquals(100, cm.getUsedBytes());
+    assertTrue(cm.getCache().containsKey(new K("k9")));
+    assertTrue(!cm.getCache().containsKey(new K("k4")));
+
+    updateCache.invoke(cm, new K("k9"), new V("0"));
+    assertEquals(83, cm.getUsedBytes());
+    updateCache.invoke(cm, new K("big"), new V(new String(new char[100])));
+    assertEquals(5, cm.getCache().size());
+    assertTrue(!cm.getCache().containsKey(new K("big")));
+
+    updateCache.invoke(cm, new K("k9"), null);
+    assertEquals(80, cm.getUsedBytes());
+  }
+
+  /**
+   * Test that {@link LFU} evicts the least accessed key, the least recently accessed one among ties,
+   * and that aging lets a formerly hot key be evicted
+   */
+  @Test
+  public void testLFUEvictionOrderAndAging() {
+    LFU lfu = new LFU(10, 8);
+    K hot = new K("hot");
+    K a = new K("a");
+    K b = new K("b");
+    for (int i = 0; i < 6; i++)
+      lfu.register(hot);
+    lfu.register(a);
+    lfu.register(b);
+    assertEquals(a, lfu.evict());
+    assertEquals(3, lfu.getFrequency(hot));
+
+    lfu.register(a);
+    lfu.register(a);
+    lfu.register(a);
+    lfu.register(a);
+    lfu.unregister(b);
+    assertEquals(hot, lfu.evict());
+    assertEquals(a, lfu.evict());
+    assertEquals(null, lfu.evict());
+  }
+
+  /**
+   * Test that concurrent hits, which are only buffered for the tracker, keep the cache and its tracker in sync
+   * with concurrent puts and evictions
+   */
+  @Test
+  public void testConcurrentHitsKeepTrackerInSync() throws InterruptedException {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 50, CacheDisplacementStrategy.LRU);
+    for (int i = 0; i < 50; i++)
+      cm.put(new K("key" + i), new V("value" + i), null);
+
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 2000; i++) {
+          int k = (i * 31 + seed) % 100;
+          if (i % 10 == 0)
+            cm.put(new K("key" + k), new V("value" + k), null);
+          else
+            cm.get(new K("key" + k), null);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread t : threads)
+      t.join();
+
+    assertTrue(cm.getCache().size() <= 50);
+    for (K key : cm.getCache().keySet())
+      assertTrue(key.get() + " is cached but not tracked", cm.getCacheTracker().containsKey(key));
+  }
+
+  /**
+   * Test that an off-heap cache returns the values it was given, evicts by the pages its values take
+   * and reuses the pages of evicted and deleted values
+   */
+  @Test
+  public void testOffHeapCache() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 1000, CacheDisplacementStrategy.LRU,
+        new StorageConfig().withCacheBytes(10 * 1024).withCacheOffHeap(true));
+    Method updateCache = getUpdateCacheMethod(cm);
+
+    String large = new String(new char[3000]).replace("\0", "x");
+    for (int i = 0; i < 20; i++)
+      updateCache.invoke(cm, new K("key" + i), new V(large + i));
+    assertEquals(3, cm.getCache().size());
+    assertEquals(3 * 3 * 1024, cm.getUsedBytes());
+    for (int i = 17; i < 20; i++)
+      assertEquals(large + i, cm.get(new K("key" + i), null).get());
+
+    updateCache.invoke(cm, new K("key19"), null);
+    updateCache.invoke(cm, new K("small"), new V("small"));
+    assertEquals("small", cm.get(new K("small"), null).get());
+    assertEquals(7 * 1024, cm.getUsedBytes());
+    assertEquals(3, cm.getCache().size());
+  }
+
+  @Test
+  public void testNegativeCacheInvalidatedByPut() {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 1, CacheDisplacementStrategy.LRU,
+        new StorageConfig().withNegativeCacheSize(10).withNegativeCacheTtl(60000));
+    K key = new K("missingKey");
+    K other = new K("otherKey");
+
+    assertEquals(null, cm.get(key, null));
+    assertEquals(null, cm.get(key, null));
+    cm.put(key, new V("found"), null);
+    cm.put(other, new V("evicts missingKey from the cache"), null);
+    assertEquals("found", cm.get(key, null).get());
+
+    cm.put(key, null, null);
+    assertEquals(null, cm.get(key, null));
+    cm.put(key, new V("found again"), null);
+    cm.put(other, new V("evicts missingKey again"), null);
+    assertEquals("found again", cm.get(key, null).get());
+
+    cm.put(key, null, null);
+    cm.put(other, null, null);
+  }
+
+  @Test
+  public void testWarmUpFromSnapshot() throws InterruptedException, IOException {
+    StorageConfig config = new StorageConfig().withWarmUpKeys(3);
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 5, CacheDisplacementStrategy.LRU, config);
+    for (int i = 0; i < 5; i++)
+      cm.put(new K("warm" + i), new V("value" + i), null);
+    cm.get(new K("warm0"), null);
+    cm.saveWarmUpSnapshot();
+
+    CacheManager restarted = new CacheManager(AllTests.DB_DIR, 5, CacheDisplacementStrategy.LRU, config);
+    for (int i = 0; i < 100 && restarted.getWarmUpProgress() < 1; i++)
+      Thread.sleep(50);
+    assertEquals(1, restarted.getWarmUpProgress(), 0);
+    assertEquals(3, restarted.getWarmedUpKeys());
+    assertEquals(3, restarted.getCache().size());
+    assertEquals("value0", restarted.getCache().get(new K("warm0")).get());
+    assertTrue(restarted.getCache().containsKey(new K("warm4")));
+    assertTrue(restarted.getCache().containsKey(new K("warm3")));
+
+    for (int i = 0; i < 5; i++)
+      cm.put(new K("warm" + i), null, null);
+    Files.delete(restarted.getWarmUpSnapshot());
+  }
+
+  /**
+   * Test that {@link ARC} keeps keys accessed repeatedly during a scan and grows its recency list when keys
+   * evicted from it are accessed again
+   */
+  @Test
+  public void testARCAdaptation() {
+    ARC arc = new ARC(4);
+    for (int i = 0; i < 2; i++) {
+      arc.register(new K("hot0"));
+      arc.register(new K("hot1"));
+    }
+    for (int i = 0; i < 10; i++) {
+      if (i >= 2)
+        arc.evict();
+      arc.register(new K("scan" + i));
+    }
+    assertTrue(arc.containsKey(new K("hot0")));
+    assertTrue(arc.containsKey(new K("hot1")));
+    assertEquals(0, arc.getTarget());
+
+    arc.evict();
+    arc.register(new K("scan7"));
+    assertEquals(1, arc.getTarget());
+    assertEquals(Arrays.asList(new K("scan7"), new K("hot1"), new K("hot0")), arc.getHottest(3));
+  }
+
+  /**
+   * Test that {@link CLOCK} gives referenced keys a second chance and keeps working beyond its capacity
+   */
+  @Test
+  public void testCLOCKSecondChance() {
+    CLOCK clock = new CLOCK(3);
+    K a = new K("a"), b = new K("b"), c = new K("c"), d = new K("d");
+    clock.register(a);
+    clock.register(b);
+    clock.register(c);
+    clock.register(a);
+    assertEquals(Arrays.asList(a, c, b), clock.getHottest(3));
+    assertEquals(b, clock.evict());
+
+    clock.register(d);
+    clock.register(b);
+    assertTrue(clock.containsKey(b));
+    assertEquals(c, clock.evict());
+    assertEquals(b, clock.evict());
+    assertEquals(a, clock.evict());
+    assertEquals(d, clock.evict());
+    assertEquals(null, clock.evict());
+  }
+
+  /**
+   * Test that the cache records hits on {@link CLOCK} directly, so they count before the next write, and that a
+   * hit never tracks a key again
+   */
+  @Test
+  public void testCLOCKLockFreeHits() {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 3, CacheDisplacementStrategy.CLOCK);
+    K a = new K("clockA"), b = new K("clockB"), c = new K("clockC"), d = new K("clockD");
+    cm.put(a, new V("a"), null);
+    cm.put(b, new V("b"), null);
+    cm.put(c, new V("c"), null);
+
+    assertEquals("a", cm.get(a, null).get());
+    assertEquals(Arrays.asList(a, c, b), cm.getCacheTracker().getHottest(3));
+
+    assertTrue(cm.getCacheTracker().recordHit(d));
+    assertTrue(!cm.getCacheTracker().containsKey(d));
+    assertTrue(!new LRU(3).recordHit(a));
+  }
+
+  /**
+   * Test that reads and writes without admission and MapReduce files leave the cache alone
+   */
+  @Test
+  public void testNoAdmit() {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 10, CacheDisplacementStrategy.LRU);
+    K key = new K("bulkKey");
+
+    cm.put(key, new V("transferred"), null, false);
+    assertTrue(!cm.getCache().containsKey(key));
+    assertEquals("transferred", cm.get(key, null, false).get());
+    assertTrue(!cm.getCache().containsKey(key));
+
+    assertEquals("transferred", cm.get(key, null).get());
+    assertTrue(cm.getCache().containsKey(key));
+    cm.put(key, new V("transferred again"), null, false);
+    assertTrue(!cm.getCache().containsKey(key));
+    assertEquals("transferred again", cm.get(key, null).get());
+
+    cm.put(key, new V("intermediate"), "job1");
+    assertEquals("intermediate", cm.get(key, "job1").get());
+    assertEquals("transferred again", cm.getCache().get(key).get());
+    assertEquals("transferred again", cm.get(key, null).get());
+
+    cm.put(key, null, "job1");
+    cm.put(key, null, null);
+  }
+
+  /**
+   * Test that the statistics count cache hits, misses and evictions as well as the disk operations behind them
+   */
+  @Test
+  public void testStats() {
+    CacheManager cm = new CacheManager(AllTests.DB_DIR, 2, CacheDisplacementStrategy.LRU,
+        new StorageConfig().withNegativeCacheSize(0));
+    for (int i = 0; i < 3; i++)
+      cm.put(new K("statsKey" + i), new V("value" + i), null);
+    cm.get(new K("statsKey2"), null);
+    cm.get(new K("statsKey0"), null);
+    cm.get(new K("statsMissing"), null);
+
+    StorageStats stats = cm.getStats();
+    assertEquals(1, stats.getLong("cache.hits"));
+    assertEquals(2, stats.getLong("cache.misses"));
+    assertEquals(2, stats.getLong("cache.evictions"));
+    assertEquals(2, stats.getLong("cache.entries"));
+    assertEquals(3, stats.getLong("disk.writes"));
+    assertEquals(2, stats.getLong("disk.reads"));
+    assertEquals(1, stats.getLong("disk.read.misses"));
+    assertEquals(6 + 6 + 6, stats.getLong("disk.bytes.written"));
+    assertEquals(6, stats.getLong("disk.bytes.read"));
+    double falsePositiveRate = Double.parseDouble(stats.get("disk.filter.fp.rate"));
+    assertTrue(falsePositiveRate >= 0 && falsePositiveRate <= 1);
+
+    for (int i = 0; i < 3; i++)
+      cm.put(new K("statsKey" + i), null, null);
+    assertEquals(3, cm.getStats().getLong("disk.deletes"));
+  }
+
+  /**
+   * Test that the percentiles of a {@link LatencyHistogram} are the upper bounds of their power of two buckets
+   */
+  @Test
+  public void testLatencyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentileMicros(99));
+    for (int i = 0; i < 98; i++)
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(4, histogram.getPercentileMicros(50));
+    assertEquals(128, histogram.getPercentileMicros(99));
+    assertEquals(8192, histogram.getPercentileMicros(100));
+    assertEquals((98 * 3 + 100 + 5000) / 100.0, histogram.getMeanMicros(), 0.001);
+  }
+
 }
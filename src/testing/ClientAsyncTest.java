@@ -0,0 +1,201 @@
+package testing;
+
+import client.api.Client;
+import ecs.Metadata;
+import org.junit.Test;
+import protocol.FrameDecoder;
+import protocol.kv.IMessage;
+import protocol.kv.IMessage.Status;
+import protocol.kv.K;
+import protocol.kv.Message;
+import protocol.kv.V;
+import protocol.kv.WireProtocol;
+import server.api.FrontEnd;
+import server.app.Server;
+import util.HashUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the asynchronous API of the {@link Client} against fake servers, which answer the requests in a given order
+ * and with given statuses, and against a real server
+ */
+public class ClientAsyncTest {
+    private static final int TIMEOUT_S = 10;
+
+    /**
+     * Test that responses arriving in the reverse order of their requests complete the futures of their requests
+     */
+    @Test(timeout = 20000)
+    public void testOutOfOrderResponses() throws Exception {
+        int requests = 10;
+        try (ServerSocket server = new ServerSocket(0)) {
+            serve(server, requests, batch -> {
+                List<IMessage> responses = new ArrayList<>();
+                for (IMessage request : batch)
+                    responses.add(answerGet(request, "server"));
+                Collections.reverse(responses);
+                return responses;
+            });
+
+            Client client = new Client("127.0.0.1", server.getLocalPort());
+            try {
+                List<CompletableFuture<IMessage>> futures = new ArrayList<>();
+                for (int i = 0; i < requests; i++)
+                    futures.add(client.getAsync("key" + i));
+                for (int i = 0; i < requests; i++) {
+                    IMessage response = futures.get(i).get(TIMEOUT_S, TimeUnit.SECONDS);
+                    assertEquals(Status.GET_SUCCESS, response.getStatus());
+                    assertEquals("key" + i, response.getK().get());
+                    assertEquals("server:key" + i, response.getV().get());
+                }
+            } finally {
+                client.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Test that a request answered with {@link Status#SERVER_NOT_RESPONSIBLE} is sent again to the server responsible
+     * according to the metadata of the response
+     */
+    @Test(timeout = 20000)
+    public void testRerouteToResponsibleServer() throws Exception {
+        try (ServerSocket wrong = new ServerSocket(0); ServerSocket responsible = new ServerSocket(0)) {
+            String end = HashUtils.hash("127.0.0.1:" + responsible.getLocalPort());
+            Metadata metadata = new Metadata();
+            metadata.add("responsible", "127.0.0.1", responsible.getLocalPort(), HashUtils.increaseHashBy1(end), end);
+            serve(wrong, 1, batch -> {
+                IMessage response = new Message(Status.SERVER_NOT_RESPONSIBLE, metadata);
+                response.setRequestId(batch.get(0).getRequestId());
+                return Collections.singletonList(response);
+            });
+            serve(responsible, 1, batch -> Collections.singletonList(answerGet(batch.get(0), "responsible")));
+
+            Client client = new Client("127.0.0.1", wrong.getLocalPort());
+            try {
+                IMessage response = client.getAsync("key").get(TIMEOUT_S, TimeUnit.SECONDS);
+                assertEquals(Status.GET_SUCCESS, response.getStatus());
+                assertEquals("responsible:key", response.getV().get());
+                assertEquals(responsible.getLocalPort(), client.getMetadata().get(0).getPort());
+            } finally {
+                client.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Test that a PUT answered with {@link Status#SERVER_WRITE_LOCK} is sent again until the lock is released
+     */
+    @Test(timeout = 20000)
+    public void testRetryWriteLockedServer() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0)) {
+            serve(server, 1, batch -> {
+                IMessage request = batch.get(0);
+                IMessage response = new Message(attempts.incrementAndGet() < 3 ? Status.SERVER_WRITE_LOCK : Status.PUT_SUCCESS,
+                        request.getK(), request.getV());
+                response.setRequestId(request.getRequestId());
+                return Collections.singletonList(response);
+            });
+
+            Client client = new Client("127.0.0.1", server.getLocalPort());
+            try {
+                IMessage response = client.putAsync("key", "value").get(TIMEOUT_S, TimeUnit.SECONDS);
+                assertEquals(Status.PUT_SUCCESS, response.getStatus());
+                assertEquals(3, attempts.get());
+            } finally {
+                client.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Test that PUTs of the same key pipelined to a server with the blocking front end take effect in the order they
+     * were sent, so that the last one wins
+     */
+    @Test(timeout = 30000)
+    public void testPipelinedPutsKeepOrder() throws Exception {
+        int puts = 200;
+        String serverId = "test_async";
+        int servicePort = 51720;
+        Server server = new Server(serverId, servicePort, 51820, "ERROR", FrontEnd.BLOCKING);
+        server.start();
+        try {
+            while (!server.isRunning())
+                Thread.sleep(10);
+            String end = HashUtils.hash("127.0.0.1:" + servicePort);
+            Metadata metadata = new Metadata();
+            metadata.add(serverId, "127.0.0.1", servicePort, HashUtils.increaseHashBy1(end), end);
+            server.initKVServer(metadata, 10, "LRU");
+            server.startService();
+
+            Client client = new Client("127.0.0.1", servicePort);
+            try {
+                List<CompletableFuture<IMessage>> futures = new ArrayList<>();
+                for (int i = 0; i < puts; i++)
+                    futures.add(client.putAsync("orderedKey", "value" + i));
+                for (CompletableFuture<IMessage> future : futures)
+                    future.get(TIMEOUT_S, TimeUnit.SECONDS);
+
+                IMessage response = client.getAsync("orderedKey").get(TIMEOUT_S, TimeUnit.SECONDS);
+                assertEquals(Status.GET_SUCCESS, response.getStatus());
+                assertEquals("value" + (puts - 1), response.getV().get());
+            } finally {
+                client.disconnect();
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Accepts a single connection in the background and answers its requests in batches: reads the given number of
+     * requests, then writes the responses the responder returns for them in the order it returns them
+     */
+    private void serve(ServerSocket server, int batchSize, Function<List<IMessage>, List<IMessage>> responder) {
+        Thread thread = new Thread(() -> {
+            FrameDecoder decoder = new FrameDecoder(WireProtocol.BINARY);
+            try (Socket connection = server.accept()) {
+                OutputStream out = connection.getOutputStream();
+                while (true) {
+                    List<IMessage> batch = new ArrayList<>();
+                    for (int i = 0; i < batchSize; i++)
+                        batch.add(decoder.read(connection.getInputStream()));
+                    for (IMessage response : responder.apply(batch))
+                        out.write(WireProtocol.BINARY.encode(response));
+                    out.flush();
+                }
+            } catch (EOFException e) {
+                // the client disconnected
+            } catch (IOException e) {
+                if (!server.isClosed())
+                    e.printStackTrace();
+            } finally {
+                decoder.release();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private IMessage answerGet(IMessage request, String serverName) {
+        String key = request.getK().get();
+        IMessage response = new Message(Status.GET_SUCCESS, new K(key), new V(serverName + ":" + key));
+        response.setRequestId(request.getRequestId());
+        return response;
+    }
+}
@@ -0,0 +1,109 @@
+package testing;
+
+import ecs.Metadata;
+import ecs.NodeInfo;
+import management.MessageSerializer;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import protocol.kv.IMessage;
+import protocol.kv.IMessage.Status;
+import protocol.kv.K;
+import protocol.kv.Message;
+import protocol.kv.V;
+import server.api.FrontEnd;
+import server.api.Replicator;
+import server.app.Server;
+import util.ConnectionExecutor;
+import util.ExecutionMode;
+import util.HashUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that replication reaches a server whose pool of client connection handlers is exhausted
+ */
+public class ConnectionReserveTest {
+    private static final String SERVER_ID = "test_reserve";
+    private static final int SERVICE_PORT = 51710;
+    private static final int ADMIN_PORT = 51810;
+
+    /**
+     * client connections that occupy all pooled threads, see {@link ConnectionExecutor}
+     */
+    private static final int POOLED_CONNECTIONS = 512;
+
+    private static ExecutionMode previousMode;
+    private static Server server;
+
+    @BeforeClass
+    public static void startServer() throws InterruptedException {
+        previousMode = ConnectionExecutor.getMode();
+        ConnectionExecutor.setMode(ExecutionMode.VIRTUAL);
+
+        server = new Server(SERVER_ID, SERVICE_PORT, ADMIN_PORT, "ERROR", FrontEnd.BLOCKING);
+        server.start();
+        while (!server.isRunning())
+            Thread.sleep(10);
+
+        String end = HashUtils.hash("127.0.0.1:" + SERVICE_PORT);
+        Metadata metadata = new Metadata();
+        metadata.add(SERVER_ID, "127.0.0.1", SERVICE_PORT, HashUtils.increaseHashBy1(end), end);
+        server.initKVServer(metadata, 10, "LRU");
+        server.startService();
+    }
+
+    @AfterClass
+    public static void shutdownServer() {
+        server.shutdown();
+        ConnectionExecutor.setMode(previousMode);
+    }
+
+    /**
+     * Test that once clients hold all pooled threads, a further client is closed without an answer, while a
+     * replicated PUT still gets through on the reserved threads
+     */
+    @Test(timeout = 30000)
+    public void testReplicationWithFullPool() throws IOException {
+        Assume.assumeFalse("virtual threads do not pool client connections", ConnectionExecutor.isVirtual());
+
+        List<Socket> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < POOLED_CONNECTIONS; i++)
+                clients.add(connect());
+
+            try (Socket rejected = connect()) {
+                OutputStream out = rejected.getOutputStream();
+                out.write(MessageSerializer.serialize(new Message(Status.GET, new K("key"))));
+                out.flush();
+                InputStream in = rejected.getInputStream();
+                assertEquals(-1, in.read());
+            }
+
+            IMessage replicated = new Message(Status.PUT, new K("replicatedKey"), new V("replicatedValue"));
+            replicated.setInternal();
+            new Replicator(new NodeInfo(SERVER_ID, "127.0.0.1", SERVICE_PORT, server.getWriteRange()))
+                    .replicate(replicated);
+
+            assertEquals("replicatedValue", server.getCacheManager().get(new K("replicatedKey"), null).get());
+        } finally {
+            for (Socket client : clients)
+                client.close();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("127.0.0.1", SERVICE_PORT), 5000);
+        return socket;
+    }
+}
@@ -9,7 +9,6 @@ import util.FileUtils;
 import util.HashUtils;
 import util.StringUtils;
 
-import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -18,7 +17,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -67,22 +66,18 @@ public class FetchBatchDataTest {
 
         node3_range = new KeyHashRange(HashUtils.increaseHashBy1(node1_range.getEnd()), node3_range.getEnd());
         NodeInfo target = new NodeInfo(NODE_3, "127.0.0.1", 50000, node3_range);
-        BatchDataTransferProcessor batchProcessor = new BatchDataTransferProcessor(target, pm2.getDbPath());
+        BatchDataTransferProcessor batchProcessor = new BatchDataTransferProcessor(target, pm2);
         setIndexRelevantDataFilesMethod(batchProcessor);
-        String[] indexFiles = (String[]) indexRelevantDataFiles.invoke(batchProcessor, node3_range);
+        Iterator<?> indexedFiles = (Iterator<?>) indexRelevantDataFiles.invoke(batchProcessor, node3_range);
 
         List<String> filesToTransfer = new ArrayList<>();
-        for (String file : indexFiles) {
-            filesToTransfer.addAll(Files.readAllLines(Paths.get(file)));
-        }
+        indexedFiles.forEachRemaining(file -> filesToTransfer.add(file.toString()));
         assertThat(filesToTransfer.size() == keySet2.length, is(true));
         List<String> keySet2_toMove = Arrays.asList(keySet2);
         for (String file : filesToTransfer) {
             String fileName = Paths.get(file).getFileName().toString();
             assertThat(keySet2_toMove.contains(fileName), is(true));
         }
-
-        deleteIndexFolder(batchProcessor);
     }
 
     @Test
@@ -96,23 +91,19 @@ public class FetchBatchDataTest {
         // update range of successor (node1)
         node1_range = new KeyHashRange(HashUtils.increaseHashBy1(newNodeHash), node1_range.getEnd());
         NodeInfo target = new NodeInfo(NODE_1, "127.0.0.1", 50000, node1_range);
-        BatchDataTransferProcessor batchProcessor = new BatchDataTransferProcessor(target, pm1.getDbPath());
+        BatchDataTransferProcessor batchProcessor = new BatchDataTransferProcessor(target, pm1);
 
         setIndexRelevantDataFilesMethod(batchProcessor);
-        String[] indexFiles = (String[]) indexRelevantDataFiles.invoke(batchProcessor, newNode_range);
+        Iterator<?> indexedFiles = (Iterator<?>) indexRelevantDataFiles.invoke(batchProcessor, newNode_range);
 
         List<String> filesToTransfer = new ArrayList<>();
-        for (String file : indexFiles) {
-            filesToTransfer.addAll(Files.readAllLines(Paths.get(file)));
-        }
+        indexedFiles.forEachRemaining(file -> filesToTransfer.add(file.toString()));
 
         List<String> keySet1_toMove = Arrays.asList(Arrays.copyOfRange(keySet1, 0, 5));
         for (String file : filesToTransfer) {
             String fileName = Paths.get(file).getFileName().toString();
             assertThat(keySet1_toMove.contains(fileName), is(true));
         }
-        deleteIndexFolder(batchProcessor);
-
     }
 
     private void setIndexRelevantDataFilesMethod(BatchDataTransferProcessor batchProcessor) throws NoSuchMethodException {
@@ -125,18 +116,6 @@ public class FetchBatchDataTest {
         cleanUp.setAccessible(true);
     }
 
-    private void deleteIndexFolder(BatchDataTransferProcessor batchProcessor) throws IOException {
-        Path dirToDel = Paths.get(batchProcessor.getDataTransferIndexFolder());
-
-        Files.walk(dirToDel)
-                .sorted(Comparator.reverseOrder())
-                .filter(Files::isRegularFile)
-                .map(Path::toFile)
-                .forEach(File::delete);
-
-        Files.deleteIfExists(dirToDel);
-    }
-
 
     private void populateData() {
         keySet1 = new String[]{
@@ -0,0 +1,154 @@
+package testing;
+
+import ecs.Metadata;
+import management.MessageSerializer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import protocol.FrameDecoder;
+import protocol.kv.IMessage;
+import protocol.kv.IMessage.Status;
+import protocol.kv.K;
+import protocol.kv.Message;
+import protocol.kv.V;
+import protocol.kv.WireProtocol;
+import server.api.FrontEnd;
+import server.app.Server;
+import util.HashUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the NIO front end serves the requests of a connection in order, however the network merges or splits
+ * their bytes
+ */
+public class FrontEndTest {
+    private static final String SERVER_ID = "test_nio";
+    private static final int SERVICE_PORT = 51700;
+    private static final int ADMIN_PORT = 51800;
+    private static final int KEYS = 10;
+    private static final int PAUSE_MS = 50;
+
+    private static Server server;
+
+    @BeforeClass
+    public static void startServer() throws InterruptedException {
+        server = new Server(SERVER_ID, SERVICE_PORT, ADMIN_PORT, "ERROR", FrontEnd.NIO);
+        server.start();
+        while (!server.isRunning())
+            Thread.sleep(10);
+
+        String end = HashUtils.hash("127.0.0.1:" + SERVICE_PORT);
+        Metadata metadata = new Metadata();
+        metadata.add(SERVER_ID, "127.0.0.1", SERVICE_PORT, HashUtils.increaseHashBy1(end), end);
+        server.initKVServer(metadata, KEYS, "LRU");
+        server.startService();
+        for (int i = 0; i < KEYS; i++)
+            server.getCacheManager().put(new K("key" + i), new V("value" + i), null);
+    }
+
+    @AfterClass
+    public static void shutdownServer() {
+        server.shutdown();
+    }
+
+    /**
+     * Test that requests written back to back in a single write are answered one by one in the order they were sent
+     */
+    @Test(timeout = 10000)
+    public void testCoalescedRequests() throws IOException {
+        try (Socket socket = connect()) {
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            for (int i = 0; i < KEYS; i++)
+                requests.write(serializeGet(i));
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toByteArray());
+            out.flush();
+
+            assertResponses(socket.getInputStream(), 0, KEYS);
+        }
+    }
+
+    /**
+     * Test that requests arriving in parts are answered once complete, also when a part holds the end of one request
+     * and the start of the next
+     */
+    @Test(timeout = 10000)
+    public void testSplitRequests() throws IOException, InterruptedException {
+        try (Socket socket = connect()) {
+            byte[] first = serializeGet(0);
+            byte[] second = serializeGet(1);
+            ByteArrayOutputStream middle = new ByteArrayOutputStream();
+            middle.write(first, first.length / 2, first.length - first.length / 2);
+            middle.write(second, 0, second.length / 2);
+
+            OutputStream out = socket.getOutputStream();
+            writeAndPause(out, Arrays.copyOfRange(first, 0, first.length / 2));
+            writeAndPause(out, middle.toByteArray());
+            writeAndPause(out, Arrays.copyOfRange(second, second.length / 2, second.length));
+
+            assertResponses(socket.getInputStream(), 0, 2);
+        }
+    }
+
+    /**
+     * Test that a request sent one byte at a time is answered, followed by the response to a request sent at once
+     */
+    @Test(timeout = 10000)
+    public void testRequestSentByteByByte() throws IOException, InterruptedException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            for (byte b : serializeGet(2)) {
+                out.write(b);
+                out.flush();
+            }
+            Thread.sleep(PAUSE_MS);
+            out.write(serializeGet(3));
+            out.flush();
+
+            assertResponses(socket.getInputStream(), 2, 4);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress("127.0.0.1", SERVICE_PORT), 5000);
+        return socket;
+    }
+
+    private void writeAndPause(OutputStream out, byte[] bytes) throws IOException, InterruptedException {
+        out.write(bytes);
+        out.flush();
+        Thread.sleep(PAUSE_MS);
+    }
+
+    private byte[] serializeGet(int key) {
+        return MessageSerializer.serialize(new Message(Status.GET, new K("key" + key)));
+    }
+
+    /**
+     * Reads the responses to GETs of the keys from the first one to the end, exclusive, and checks them in order
+     */
+    private void assertResponses(InputStream in, int first, int end) throws IOException {
+        FrameDecoder decoder = new FrameDecoder(WireProtocol.SERIALIZED);
+        try {
+            for (int i = first; i < end; i++) {
+                IMessage response = decoder.read(in);
+                assertEquals(Status.GET_SUCCESS, response.getStatus());
+                assertEquals("key" + i, response.getK().get());
+                assertEquals("value" + i, response.getV().get());
+            }
+        } finally {
+            decoder.release();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package testing;
+
+import ecs.KeyHashRange;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import protocol.kv.K;
+import protocol.kv.V;
+import server.storage.PUTStatus;
+import server.storage.StorageConfig;
+import server.storage.disk.Codec;
+import server.storage.disk.Durability;
+import server.storage.disk.LogStructuredPersistenceManager;
+import server.storage.disk.ReadMode;
+import util.FileUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static util.FileUtils.SEP;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LogStructuredPersistenceTest {
+    private static final String DB_DIR = AllTests.DB_DIR + SEP + "log";
+
+    LogStructuredPersistenceManager persistenceManager = new LogStructuredPersistenceManager(DB_DIR);
+    private final K key = new K("SomeKey=09");
+    private V value = new V(getMaxLengthString());
+    Path filePath = FileUtils.buildPath(persistenceManager.getDbPath(), key.getHashed(), key.getByteString());
+
+    @Test
+    public void test1CreateRecord() {
+        PUTStatus status = persistenceManager.write(filePath, value.getBytes());
+        assertThat(status, is(PUTStatus.CREATE_SUCCESS));
+        assertThat(FileUtils.exists(filePath), equalTo(Boolean.FALSE));
+    }
+
+    @Test
+    public void test2ReadRecordAfterRestart() {
+        String got = new String(persistenceManager.read(filePath));
+        assertThat(got, equalTo(value.get()));
+    }
+
+    @Test
+    public void test3UpdateRecord() {
+        V newValue = new V("New\"Val=10");
+        PUTStatus status = persistenceManager.write(filePath, newValue.getBytes());
+        assertThat(status, is(PUTStatus.UPDATE_SUCCESS));
+
+        String got = new String(persistenceManager.read(filePath));
+        assertThat(got, equalTo(newValue.get()));
+
+        LogStructuredPersistenceManager reopened = new LogStructuredPersistenceManager(DB_DIR);
+        assertThat(new String(reopened.read(filePath)), equalTo(newValue.get()));
+    }
+
+    @Test
+    public void test4DeleteRecord() {
+        PUTStatus status = persistenceManager.delete(filePath);
+        assertThat(status, is(PUTStatus.DELETE_SUCCESS));
+        assertThat(persistenceManager.read(filePath), is(nullValue()));
+
+        LogStructuredPersistenceManager reopened = new LogStructuredPersistenceManager(DB_DIR);
+        assertThat(reopened.read(filePath), is(nullValue()));
+        assertThat(reopened.delete(filePath), is(PUTStatus.DELETE_ERROR));
+    }
+
+    @Test
+    public void test5CompactSegments() throws IOException {
+        String dbDir = DB_DIR + "_compaction";
+        StorageConfig config = new StorageConfig().withSegmentSize(1024).withCompactionRate(0);
+        LogStructuredPersistenceManager pm = new LogStructuredPersistenceManager(dbDir, config);
+
+        for (int version = 0; version < 5; version++) {
+            for (int i = 0; i < 50; i++)
+                pm.write(getPath(pm, i), ("value" + i + "_" + version).getBytes());
+        }
+        for (int i = 0; i < 10; i++)
+            pm.delete(getPath(pm, i));
+
+        long sizeBefore = getSegmentsSize(pm);
+        pm.compact();
+        assertTrue(getSegmentsSize(pm) < sizeBefore);
+        assertValues(pm);
+        pm.close();
+
+        LogStructuredPersistenceManager reopened = new LogStructuredPersistenceManager(dbDir, config);
+        assertValues(reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void test6ConcurrentDurableWrites() throws InterruptedException {
+        String dbDir = DB_DIR + "_durable";
+        StorageConfig config = new StorageConfig().withDurability(Durability.ALWAYS);
+        LogStructuredPersistenceManager pm = new LogStructuredPersistenceManager(dbDir, config);
+
+        List<Thread> writers = new ArrayList<>();
+        List<PUTStatus> failures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int first = t * 25;
+            writers.add(new Thread(() -> {
+                for (int i = first; i < first + 25; i++) {
+                    PUTStatus status = pm.write(getPath(pm, i), ("value" + i).getBytes());
+                    if (status != PUTStatus.CREATE_SUCCESS) {
+                        synchronized (failures) {
+                            failures.add(status);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread writer : writers)
+            writer.start();
+        for (Thread writer : writers)
+            writer.join();
+        assertTrue(failures.isEmpty());
+        pm.close();
+
+        LogStructuredPersistenceManager reopened = new LogStructuredPersistenceManager(dbDir, config);
+        for (int i = 0; i < 200; i++)
+            assertThat(new String(reopened.read(getPath(reopened, i))), equalTo("value" + i));
+        reopened.close();
+    }
+
+    @Test
+    public void test7RecoverFromTornWrite() throws IOException {
+        String dbDir = DB_DIR + "_recovery";
+        LogStructuredPersistenceManager crashed = new LogStructuredPersistenceManager(dbDir);
+        for (int i = 0; i < 10; i++)
+            crashed.write(getPath(crashed, i), ("value" + i).getBytes());
+
+        Path lastSegment = getSegmentFiles(crashed, ".seg")[0];
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        LogStructuredPersistenceManager recovered = new LogStructuredPersistenceManager(dbDir);
+        for (int i = 0; i < 9; i++)
+            assertThat(new String(recovered.read(getPath(recovered, i))), equalTo("value" + i));
+        assertThat(recovered.read(getPath(recovered, 9)), is(nullValue()));
+        assertThat(recovered.write(getPath(recovered, 9), "value9".getBytes()), is(PUTStatus.CREATE_SUCCESS));
+        recovered.close();
+        assertThat(getSegmentFiles(recovered, ".hint").length, equalTo(getSegmentFiles(recovered, ".seg").length));
+
+        LogStructuredPersistenceManager reopened = new LogStructuredPersistenceManager(dbDir);
+        for (int i = 0; i < 10; i++)
+            assertThat(new String(reopened.read(getPath(reopened, i))), equalTo("value" + i));
+        reopened.close();
+    }
+
+    @Test
+    public void test8ReadMappedSegments() throws IOException {
+        String dbDir = DB_DIR + "_mmap";
+        StorageConfig config = new StorageConfig().withSegmentSize(1024).withReadMode(ReadMode.MMAP);
+        LogStructuredPersistenceManager pm = new LogStructuredPersistenceManager(dbDir, config);
+        for (int i = 0; i < 50; i++)
+            pm.write(getPath(pm, i), ("value" + i).getBytes());
+
+        ByteBuffer sealed = pm.readBuffer(getPath(pm, 0));
+        assertTrue(sealed.isDirect());
+        assertThat(sealed.remaining(), equalTo("value0".length()));
+        for (int i = 0; i < 50; i++)
+            assertThat(new String(pm.read(getPath(pm, i))), equalTo("value" + i));
+
+        pm.compact();
+        for (int i = 0; i < 50; i++)
+            assertThat(new String(pm.read(getPath(pm, i))), equalTo("value" + i));
+        pm.close();
+    }
+
+    @Test
+    public void test9IterateKeyRange() throws IOException {
+        LogStructuredPersistenceManager pm = new LogStructuredPersistenceManager(DB_DIR + "_range");
+        for (int i = 0; i < 50; i++)
+            pm.write(getPath(pm, i), ("value" + i).getBytes());
+        pm.delete(getPath(pm, 0));
+
+        KeyHashRange range = new KeyHashRange("c0000000000000000000000000000000", "3fffffffffffffffffffffffffffffff");
+        List<Path> expected = new ArrayList<>();
+        for (int i = 1; i < 50; i++) {
+            if (range.contains(new K("key" + i).getHashed()))
+                expected.add(getPath(pm, i));
+        }
+
+        List<Path> iterated = new ArrayList<>();
+        Iterator<Path> files = pm.iterate(range);
+        files.forEachRemaining(iterated::add);
+        assertThat(iterated.size(), equalTo(expected.size()));
+        assertTrue(iterated.containsAll(expected));
+        pm.close();
+    }
+
+    @Test
+    public void test10CompressLargeValues() throws IOException {
+        StorageConfig config = new StorageConfig().withCodec(Codec.DEFLATE).withCompressionThreshold(1024);
+        LogStructuredPersistenceManager pm = new LogStructuredPersistenceManager(DB_DIR + "_compression", config);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            large.append("value").append(i % 10);
+        pm.write(getPath(pm, 0), large.toString().getBytes());
+        pm.write(getPath(pm, 1), "small".getBytes());
+        assertThat(new String(pm.read(getPath(pm, 0))), equalTo(large.toString()));
+        assertThat(new String(pm.read(getPath(pm, 1))), equalTo("small"));
+        long stored = 0;
+        for (Path segment : getSegmentFiles(pm, ".seg"))
+            stored += Files.size(segment);
+        assertTrue(stored > 0 && stored < large.length() / 10);
+        pm.close();
+
+        pm = new LogStructuredPersistenceManager(DB_DIR + "_compression");
+        assertThat(new String(pm.read(getPath(pm, 0))), equalTo(large.toString()));
+        assertThat(new String(pm.read(getPath(pm, 1))), equalTo("small"));
+        pm.compact();
+        assertThat(new String(pm.read(getPath(pm, 0))), equalTo(large.toString()));
+        pm.close();
+    }
+
+    @Test(timeout = 5000, expected = IOException.class)
+    public void test11DecodeTruncatedCompressedValue() throws IOException {
+        byte[] encoded = Codec.DEFLATE.encode(getMaxLengthString().getBytes());
+        Codec.DEFLATE.decode(ByteBuffer.wrap(encoded, 0, encoded.length / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void test12DecodeCompressedValueOfInvalidLength() throws IOException {
+        byte[] encoded = Codec.DEFLATE.encode(getMaxLengthString().getBytes());
+        ByteBuffer.wrap(encoded).putInt(Integer.MAX_VALUE);
+        Codec.DEFLATE.decode(ByteBuffer.wrap(encoded));
+    }
+
+    private Path[] getSegmentFiles(LogStructuredPersistenceManager pm, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(pm.getDbPath(), "segments"))) {
+            return files.filter(file -> file.toString().endsWith(suffix))
+                    .sorted((a, b) -> b.compareTo(a))
+                    .toArray(Path[]::new);
+        }
+    }
+
+    private void assertValues(LogStructuredPersistenceManager pm) {
+        for (int i = 0; i < 10; i++)
+            assertThat(pm.read(getPath(pm, i)), is(nullValue()));
+        for (int i = 10; i < 50; i++)
+            assertThat(new String(pm.read(getPath(pm, i))), equalTo("value" + i + "_4"));
+    }
+
+    private Path getPath(LogStructuredPersistenceManager pm, int i) {
+        K k = new K("key" + i);
+        return FileUtils.buildPath(pm.getDbPath(), k.getHashed(), k.getByteString());
+    }
+
+    private long getSegmentsSize(LogStructuredPersistenceManager pm) throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(pm.getDbPath(), "segments"))) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private String getMaxLengthString() {
+        return new String(new char[1024 * 24]).replace("\0", "ab cd");
+    }
+}
@@ -1,10 +1,19 @@
 package testing;
 
 import management.MessageSerializer;
+import protocol.FrameDecoder;
 import protocol.kv.*;
 import protocol.kv.IMessage.Status;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -14,11 +23,24 @@ import ecs.Metadata;
 import util.HashUtils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class MarshallingTest {
     private static Logger LOG = LogManager.getLogger(AllTests.TEST_LOG);
 
+    /**
+     * PUT of "thiskey" and "thisvalue" as serialized by the Message class before it pinned its serialVersionUID
+     */
+    private static final String BASELINE_PUT = "rO0ABXNyABNwcm90b2NvbC5rdi5NZXNzYWdllHCdhv3ce2oCAAZaAAppc0ludGVybmFsTAAHTVJUb2tlbnQAEkxqYXZhL2xhbmcv"
+            + "U3RyaW5nO0wAA2tleXQAD0xwcm90b2NvbC9rdi9LO0wACG1ldGFkYXRhdAAOTGVjcy9NZXRhZGF0YTtMAAZzdGF0dXN0AB1McHJv"
+            + "dG9jb2wva3YvSU1lc3NhZ2UkU3RhdHVzO0wABXZhbHVldAAPTHByb3RvY29sL2t2L1Y7eHAAcHNyAA1wcm90b2NvbC5rdi5L8Ffp"
+            + "tGaLA04CAAFMAANrZXlxAH4AAXhwdAAHdGhpc2tleXB+cgAbcHJvdG9jb2wua3YuSU1lc3NhZ2UkU3RhdHVzAAAAAAAAAAASAAB4"
+            + "cgAOamF2YS5sYW5nLkVudW0AAAAAAAAAABIAAHhwdAADUFVUc3IADXByb3RvY29sLmt2Lla6FITR8cJ/4AIAAUwABXZhbHVlcQB+"
+            + "AAF4cHQACXRoaXN2YWx1ZQ==";
+
     @Test
     public void testSerializeMetadata() {
         Metadata metadata = new Metadata();
@@ -71,6 +93,83 @@ public class MarshallingTest {
         serializeDeserializeAssert(message);
     }
 
+    /**
+     * Test that a PUT serialized by the Message class of before the request ids and the no-admit hint is still read
+     */
+    @Test
+    public void testDeserializeBaselineMessage() {
+        byte[] baseline = Base64.getDecoder().decode(BASELINE_PUT);
+        IMessage message = MessageSerializer.deserialize(baseline);
+        assertEquals(Status.PUT, message.getStatus());
+        assertEquals("thiskey", message.getK().get());
+        assertEquals("thisvalue", message.getV().get());
+        assertEquals(0, message.getRequestId());
+        assertFalse(message.isNoAdmit());
+    }
+
+    @Test
+    public void testBinaryEncoding() {
+        IMessage message = new Message(Status.PUT, new K("thiskey"), new V("thisvalue \u00e4\u00f6\u00fc"));
+        message.setMRToken("wordcount");
+        message.setNoAdmit();
+        message.setRequestId(42);
+        IMessage decoded = WireProtocol.BINARY.decode(WireProtocol.BINARY.encode(message));
+        assertEquals(Status.PUT, decoded.getStatus());
+        assertEquals("thiskey", decoded.getK().get());
+        assertEquals("thisvalue \u00e4\u00f6\u00fc", decoded.getV().get());
+        assertEquals("wordcount", decoded.getMRToken());
+        assertTrue(decoded.isInternal());
+        assertTrue(decoded.isNoAdmit());
+        assertEquals(42, decoded.getRequestId());
+
+        decoded = WireProtocol.BINARY.decode(WireProtocol.BINARY.encode(new Message(Status.GET, new K("thiskey"))));
+        assertEquals(Status.GET, decoded.getStatus());
+        assertEquals(null, decoded.getV());
+        assertTrue(!decoded.isInternal() && !decoded.isNoAdmit());
+
+        decoded = WireProtocol.BINARY.decode(WireProtocol.BINARY.encode(new Message(Status.SERVER_STOPPED)));
+        assertEquals(Status.SERVER_STOPPED, decoded.getStatus());
+        assertEquals(null, decoded.getK());
+    }
+
+    @Test
+    public void testBinaryEncodingMetadata() {
+        Metadata metadata = new Metadata();
+        String hashKey1 = HashUtils.hash("127.0.0.1:50000");
+        String hashKey2 = HashUtils.hash("127.0.0.1:50001");
+        metadata.add("node1", "127.0.0.1", 50000, HashUtils.increaseHashBy1(hashKey2), hashKey1);
+        metadata.add("node2", "localhost", 50001, HashUtils.increaseHashBy1(hashKey1), hashKey2);
+        IMessage decoded = WireProtocol.BINARY.decode(WireProtocol.BINARY.encode(new Message(Status.SERVER_NOT_RESPONSIBLE, metadata)));
+        assertEquals(Status.SERVER_NOT_RESPONSIBLE, decoded.getStatus());
+        assertEquals(2, decoded.getMetadata().getLength());
+        for (int i = 0; i < metadata.getLength(); i++) {
+            assertEquals(metadata.get(i).getId(), decoded.getMetadata().get(i).getId());
+            assertEquals(metadata.get(i).getHost(), decoded.getMetadata().get(i).getHost());
+            assertEquals(metadata.get(i).getPort(), decoded.getMetadata().get(i).getPort());
+            assertEquals(metadata.get(i).getWriteRange().getStart(), decoded.getMetadata().get(i).getWriteRange().getStart());
+            assertEquals(metadata.get(i).getWriteRange().getEnd(), decoded.getMetadata().get(i).getWriteRange().getEnd());
+        }
+    }
+
+    @Test
+    public void testBinaryFraming() {
+        byte[] frame = WireProtocol.BINARY.encode(new Message(Status.PUT, new K("thiskey"), new V("thisvalue")));
+        assertEquals(WireProtocol.BINARY, WireProtocol.detect(frame[0]));
+        assertEquals(WireProtocol.SERIALIZED, WireProtocol.detect(MessageSerializer.serialize(new Message(Status.GET))[0]));
+        assertEquals(frame.length, MessageCodec.getFrameLength(ByteBuffer.wrap(frame)));
+
+        ByteBuffer partial = ByteBuffer.wrap(frame, 0, frame.length - 1);
+        assertEquals(null, MessageCodec.decode(partial));
+        assertEquals(0, partial.position());
+
+        ByteBuffer twoFrames = ByteBuffer.allocate(2 * frame.length);
+        twoFrames.put(frame).put(frame).flip();
+        assertEquals("thiskey", MessageCodec.decode(twoFrames).getK().get());
+        assertEquals(frame.length, twoFrames.position());
+        assertEquals("thisvalue", MessageCodec.decode(twoFrames).getV().get());
+        assertTrue(!twoFrames.hasRemaining());
+    }
+
     private void serializeDeserializeAssert(IMessage message) {
         byte[] serializedMessage = MessageSerializer.serialize(message);
         IMessage deserializedMessage = MessageSerializer.deserialize(serializedMessage);
@@ -81,4 +180,77 @@ public class MarshallingTest {
         else
             assertEquals(message.getV().get(), deserializedMessage.getV().get());
     }
+
+    @Test
+    public void testFrameDecoderSplitReads() throws IOException {
+        char[] chars = new char[200 * 1024];
+        Arrays.fill(chars, 'v');
+        String largeValue = new String(chars);
+        for (WireProtocol protocol : WireProtocol.values()) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            stream.write(protocol.encode(new Message(Status.PUT, new K("large"), new V(largeValue))));
+            stream.write(protocol.encode(new Message(Status.GET, new K("small1"))));
+            stream.write(protocol.encode(new Message(Status.GET, new K("small2"))));
+
+            FrameDecoder decoder = new FrameDecoder();
+            InputStream in = new ChunkedInputStream(stream.toByteArray(), 1000);
+            IMessage large = decoder.read(in);
+            assertEquals(protocol, decoder.getProtocol());
+            assertEquals(largeValue, large.getV().get());
+            assertEquals("small1", decoder.<IMessage>read(in).getK().get());
+            assertEquals("small2", decoder.<IMessage>read(in).getK().get());
+            assertFalse(decoder.hasBufferedBytes());
+        }
+    }
+
+    @Test
+    public void testFrameDecoderCoalescedReads() throws IOException {
+        for (WireProtocol protocol : WireProtocol.values()) {
+            byte[] first = protocol.encode(new Message(Status.PUT, new K("key1"), new V("value1")));
+            byte[] second = protocol.encode(new Message(Status.GET, new K("key2")));
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            stream.write(first);
+            stream.write(second);
+            stream.write(first, 0, 3);
+
+            FrameDecoder decoder = new FrameDecoder(protocol);
+            InputStream in = new ByteArrayInputStream(stream.toByteArray());
+            assertTrue(decoder.readFrom(in) > 0);
+            assertTrue(Arrays.equals(first, decoder.nextFrame()));
+            IMessage message = decoder.next();
+            assertEquals(Status.GET, message.getStatus());
+            assertNull(decoder.next());
+            assertTrue(decoder.hasBufferedBytes());
+            try {
+                decoder.read(in);
+                fail("Stream ended in the middle of a message");
+            } catch (EOFException e) {
+                LOG.info(e.getMessage());
+            }
+            decoder.release();
+            assertFalse(decoder.hasBufferedBytes());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testFrameDecoderUnknownProtocol() throws IOException {
+        new FrameDecoder().read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}));
+    }
+
+    /**
+     * Returns at most a fixed number of bytes per read, as a socket does for a message larger than its buffers
+     */
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+        private final int chunkLength;
+
+        ChunkedInputStream(byte[] bytes, int chunkLength) {
+            super(bytes);
+            this.chunkLength = chunkLength;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunkLength));
+        }
+    }
 }
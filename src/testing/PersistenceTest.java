@@ -16,6 +16,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertTrue;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class PersistenceTest {
@@ -60,6 +61,27 @@ public class PersistenceTest {
         assertThat(!FileUtils.exists(filePath) && !FileUtils.isDir(filePath), equalTo(Boolean.TRUE));
     }
 
+    @Test
+    public void test5SkipMissingFiles() {
+        PersistenceManager pm = new PersistenceManager(AllTests.DB_DIR + "_filter");
+        for (int i = 0; i < 500; i++)
+            pm.write(getPath(pm, "key" + i), ("value" + i).getBytes());
+        pm.delete(getPath(pm, "key0"));
+
+        pm = new PersistenceManager(AllTests.DB_DIR + "_filter");
+        assertThat(pm.read(getPath(pm, "key0")) == null, equalTo(Boolean.TRUE));
+        for (int i = 1; i < 500; i++)
+            assertThat(new String(pm.read(getPath(pm, "key" + i))), equalTo("value" + i));
+        for (int i = 0; i < 5000; i++)
+            assertThat(pm.read(getPath(pm, "missing" + i)) == null, equalTo(Boolean.TRUE));
+        assertTrue(pm.getFalsePositiveRate() < 0.05);
+    }
+
+    private Path getPath(PersistenceManager pm, String key) {
+        K k = new K(key);
+        return FileUtils.buildPath(pm.getDbPath(), k.getHashed(), k.getByteString());
+    }
+
     private String getMaxLengthString() {
         return new String(new char[1024 * 24]).replace("\0", "ab cd");
     }
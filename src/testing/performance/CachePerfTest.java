@@ -0,0 +1,393 @@
+package testing.performance;
+
+import org.junit.Test;
+import protocol.kv.K;
+import protocol.kv.V;
+import server.storage.StorageConfig;
+import server.storage.cache.ARC;
+import server.storage.cache.CLOCK;
+import server.storage.cache.CacheDisplacementStrategy;
+import server.storage.cache.CacheManager;
+import server.storage.cache.FIFO;
+import server.storage.cache.ICacheDisplacementTracker;
+import server.storage.cache.LFU;
+import server.storage.cache.LRU;
+import server.storage.cache.WTinyLFU;
+import util.FileUtils;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import static util.FileUtils.SEP;
+
+/**
+ * Benchmarks the cache displacement trackers in-process
+ */
+public class CachePerfTest {
+    private static final int[] CACHE_SIZES = new int[]{1000, 100000, 1000000};
+
+    /**
+     * evictions per cache size. Each one is followed by registering a new key and accessing an existing one
+     */
+    private static final int EVICTIONS = 1000;
+
+    private static final int HIT_RATE_CACHE_SIZE = 1000;
+    private static final int HIT_RATE_KEYS = 100000;
+    private static final int HIT_RATE_ACCESSES = 1000000;
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    /**
+     * every this many accesses, a scan over keys outside of the Zipfian key space is replayed
+     */
+    private static final int SCAN_INTERVAL = 100000;
+    private static final int SCAN_LENGTH = 5000;
+
+    private static final int[] NUM_THREADS = new int[]{1, 2, 4, 8, 16};
+    private static final int GETS_PER_THREAD = 1000000;
+    private static final int HIT_KEYS = 1000;
+
+    private static final int GC_KEYS = 1000;
+    private static final int GC_OPS = 200000;
+    private static final long GC_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_VALUE_LENGTH = 120 * 1024;
+
+    private ReportBuilder reportBuilder = new ReportBuilder();
+
+    @Test
+    public void test_lfu_eviction() throws IOException {
+        reportBuilder.insert("evictions: " + EVICTIONS);
+        reportBuilder.lineSeparator();
+
+        for (int cacheSize : CACHE_SIZES) {
+            K[] keys = new K[cacheSize + EVICTIONS];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = new K("key" + i);
+
+            reportBuilder.insert("cache_size: " + cacheSize);
+            benchmark("LFU", LFU::new, keys, cacheSize);
+            benchmark("ScanLFU", ScanLFU::new, keys, cacheSize);
+            reportBuilder.blankLine();
+        }
+        saveReport("lfu_eviction");
+    }
+
+    @Test
+    public void test_hit_rate() throws IOException {
+        reportBuilder.insert("cache_size: " + HIT_RATE_CACHE_SIZE);
+        reportBuilder.insert("keys: " + HIT_RATE_KEYS + ", zipf_exponent: " + ZIPF_EXPONENT);
+        reportBuilder.insert("accesses: " + HIT_RATE_ACCESSES + ", scan of " + SCAN_LENGTH + " keys every " + SCAN_INTERVAL + " accesses");
+        reportBuilder.lineSeparator();
+
+        int[] trace = zipfTrace(new Random(42));
+        for (CacheDisplacementStrategy strategy : CacheDisplacementStrategy.values()) {
+            ICacheDisplacementTracker tracker = createTracker(strategy, HIT_RATE_CACHE_SIZE);
+            int size = 0;
+            long hits = 0;
+            long zipfHits = 0;
+            int scanned = 0;
+            for (int i = 0; i < trace.length; i++) {
+                K key = new K("key" + trace[i]);
+                if (tracker.containsKey(key)) {
+                    hits++;
+                    if (trace[i] < HIT_RATE_KEYS)
+                        zipfHits++;
+                } else if (size < HIT_RATE_CACHE_SIZE) {
+                    size++;
+                } else {
+                    tracker.evict();
+                }
+                tracker.register(key);
+                if (trace[i] >= HIT_RATE_KEYS)
+                    scanned++;
+            }
+            reportBuilder.insert(strategy.getDesc() + " hit_rate: " + (double) hits / trace.length
+                    + ", hit_rate without scans: " + (double) zipfHits / (trace.length - scanned));
+        }
+        saveReport("cache_hit_rate");
+    }
+
+    @Test
+    public void test_get_hit_throughput() throws InterruptedException, IOException {
+        reportBuilder.insert("gets_per_thread: " + GETS_PER_THREAD + ", cached_keys: " + HIT_KEYS);
+        reportBuilder.lineSeparator();
+
+        for (CacheDisplacementStrategy strategy : CacheDisplacementStrategy.values()) {
+            CacheManager cm = new CacheManager("perf_cache", HIT_KEYS, strategy);
+            K[] keys = new K[HIT_KEYS];
+            for (int i = 0; i < HIT_KEYS; i++) {
+                keys[i] = new K("key" + i);
+                cm.put(keys[i], new V("value" + i), null);
+            }
+
+            reportBuilder.insert("strategy: " + strategy.getDesc());
+            for (int numThreads : NUM_THREADS) {
+                Thread[] threads = new Thread[numThreads];
+                for (int t = 0; t < numThreads; t++) {
+                    final int seed = t;
+                    threads[t] = new Thread(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < GETS_PER_THREAD; i++)
+                            cm.get(keys[random.nextInt(HIT_KEYS)], null);
+                    });
+                }
+
+                Stopwatch sw = new Stopwatch();
+                sw.tick();
+                for (Thread t : threads)
+                    t.start();
+                for (Thread t : threads)
+                    t.join();
+                sw.tock();
+
+                Performance perf = new Performance().withRuntime(sw.getRuntimeInSeconds()).withNumOps((long) numThreads * GETS_PER_THREAD);
+                reportBuilder.insert("threads: " + numThreads + ", throughput (ops/s): " + perf.getThroughput());
+            }
+            reportBuilder.blankLine();
+            cm.getPersistenceManager().close();
+        }
+        saveReport("get_hit_throughput");
+    }
+
+    /**
+     * Registers hits of tracked keys directly at the trackers from concurrent threads, i.e. the cost of an access
+     * without the read buffer of the {@link CacheManager}
+     */
+    @Test
+    public void test_register_hit_throughput() throws InterruptedException, IOException {
+        reportBuilder.insert("registers_per_thread: " + GETS_PER_THREAD + ", tracked_keys: " + HIT_KEYS);
+        reportBuilder.lineSeparator();
+
+        K[] keys = new K[HIT_KEYS];
+        for (int i = 0; i < HIT_KEYS; i++)
+            keys[i] = new K("key" + i);
+        for (CacheDisplacementStrategy strategy : CacheDisplacementStrategy.values()) {
+            ICacheDisplacementTracker tracker = createTracker(strategy, HIT_KEYS);
+            for (K key : keys)
+                tracker.register(key);
+
+            reportBuilder.insert("strategy: " + strategy.getDesc());
+            for (int numThreads : NUM_THREADS) {
+                Thread[] threads = new Thread[numThreads];
+                for (int t = 0; t < numThreads; t++) {
+                    final int seed = t;
+                    threads[t] = new Thread(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < GETS_PER_THREAD; i++)
+                            tracker.register(keys[random.nextInt(HIT_KEYS)]);
+                    });
+                }
+
+                Stopwatch sw = new Stopwatch();
+                sw.tick();
+                for (Thread t : threads)
+                    t.start();
+                for (Thread t : threads)
+                    t.join();
+                sw.tock();
+
+                Performance perf = new Performance().withRuntime(sw.getRuntimeInSeconds()).withNumOps((long) numThreads * GETS_PER_THREAD);
+                reportBuilder.insert("threads: " + numThreads + ", throughput (ops/s): " + perf.getThroughput());
+            }
+            reportBuilder.blankLine();
+        }
+        saveReport("register_hit_throughput");
+    }
+
+    /**
+     * Replays GETs and PUTs in-process against cache managers with values on and off the heap, without the network
+     * and request handling of a server. Hits copy off-heap values onto the heap, so the comparison only shows the
+     * effect of keeping the values at rest off-heap
+     */
+    @Test
+    public void test_gc_off_heap() throws IOException {
+        reportBuilder.insert("keys: " + GC_KEYS + ", ops: " + GC_OPS + " (90% GET), cache_bytes: " + GC_CACHE_BYTES);
+        reportBuilder.lineSeparator();
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            StorageConfig config = new StorageConfig().withCacheBytes(GC_CACHE_BYTES).withCacheOffHeap(offHeap);
+            CacheManager cm = new CacheManager("perf_gc_" + offHeap, GC_KEYS, CacheDisplacementStrategy.LRU, config);
+            Random random = new Random(42);
+            K[] keys = new K[GC_KEYS];
+            for (int i = 0; i < GC_KEYS; i++) {
+                keys[i] = new K("key" + i);
+                cm.put(keys[i], new V(randomValue(random)), null);
+            }
+
+            System.gc();
+            long[] before = getGcTimeAndCount();
+            Stopwatch sw = new Stopwatch();
+            sw.tick();
+            for (int i = 0; i < GC_OPS; i++) {
+                K key = keys[random.nextInt(GC_KEYS)];
+                if (random.nextInt(10) == 0)
+                    cm.put(key, new V(randomValue(random)), null);
+                else
+                    cm.get(key, null);
+            }
+            sw.tock();
+            long[] after = getGcTimeAndCount();
+            cm.getPersistenceManager().close();
+
+            Performance perf = new Performance().withRuntime(sw.getRuntimeInSeconds()).withNumOps(GC_OPS);
+            reportBuilder.insert("off_heap: " + offHeap);
+            reportBuilder.insert("run_time (s): " + perf.getRuntime());
+            reportBuilder.insert("gc_time (ms): " + (after[0] - before[0]) + ", gc_count: " + (after[1] - before[1]));
+            reportBuilder.blankLine();
+        }
+        saveReport("gc_off_heap");
+    }
+
+    private static String randomValue(Random random) {
+        char[] value = new char[1 + random.nextInt(MAX_VALUE_LENGTH)];
+        Arrays.fill(value, (char) ('a' + random.nextInt(26)));
+        return new String(value);
+    }
+
+    /**
+     * @return accumulated time in milliseconds and number of all garbage collections of the JVM so far
+     */
+    private static long[] getGcTimeAndCount() {
+        long time = 0;
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return new long[]{time, count};
+    }
+
+    /**
+     * Builds an access trace of keys drawn from a Zipfian distribution, interrupted by scans of unique keys
+     *
+     * @param random source of randomness
+     * @return numbers of the accessed keys, scanned keys are numbered from {@link #HIT_RATE_KEYS} on
+     */
+    private static int[] zipfTrace(Random random) {
+        double[] cdf = new double[HIT_RATE_KEYS];
+        double sum = 0;
+        for (int i = 0; i < HIT_RATE_KEYS; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cdf[i] = sum;
+        }
+        int scans = HIT_RATE_ACCESSES / SCAN_INTERVAL;
+        int[] trace = new int[HIT_RATE_ACCESSES + scans * SCAN_LENGTH];
+        int next = 0;
+        int scanKey = HIT_RATE_KEYS;
+        for (int i = 0; i < HIT_RATE_ACCESSES; i++) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[next++] = Math.min(rank < 0 ? -rank - 1 : rank, HIT_RATE_KEYS - 1);
+            if ((i + 1) % SCAN_INTERVAL == 0) {
+                for (int j = 0; j < SCAN_LENGTH; j++)
+                    trace[next++] = scanKey++;
+            }
+        }
+        return trace;
+    }
+
+    private static ICacheDisplacementTracker createTracker(CacheDisplacementStrategy strategy, int capacity) {
+        switch (strategy) {
+            case FIFO:
+                return new FIFO(capacity);
+            case LRU:
+                return new LRU(capacity);
+            case LFU:
+                return new LFU(capacity);
+            case WTINYLFU:
+                return new WTinyLFU(capacity);
+            case ARC:
+                return new ARC(capacity);
+            case CLOCK:
+                return new CLOCK(capacity);
+            default:
+                throw new IllegalArgumentException("Strategy not found!");
+        }
+    }
+
+    private void benchmark(String name, IntFunction<ICacheDisplacementTracker> factory, K[] keys, int cacheSize) {
+        ICacheDisplacementTracker tracker = factory.apply(cacheSize);
+        Random random = new Random(42);
+        for (int i = 0; i < cacheSize; i++) {
+            tracker.register(keys[i]);
+            if (random.nextBoolean())
+                tracker.register(keys[i]);
+        }
+
+        Stopwatch sw = new Stopwatch();
+        sw.tick();
+        for (int i = 0; i < EVICTIONS; i++) {
+            tracker.evict();
+            tracker.register(keys[cacheSize + i]);
+            tracker.register(keys[i + 1 + random.nextInt(cacheSize - 1)]);
+        }
+        sw.tock();
+
+        Performance perf = new Performance().withRuntime(sw.getRuntimeInSeconds()).withNumOps(EVICTIONS);
+        reportBuilder.insert(name + " run_time (s): " + perf.getRuntime());
+        reportBuilder.insert(name + " throughput (evictions/s): " + perf.getThroughput());
+    }
+
+    /**
+     * The LFU tracker as it was before the frequency buckets, which scans all keys for every eviction
+     */
+    private static class ScanLFU implements ICacheDisplacementTracker {
+        private final ConcurrentHashMap<K, Integer> registry;
+
+        ScanLFU(int trackerCapacity) {
+            registry = new ConcurrentHashMap<>(trackerCapacity + 1, 1);
+        }
+
+        @Override
+        public synchronized K evict() {
+            Optional<Map.Entry<K, Integer>> min = registry.entrySet().stream().min(Map.Entry.comparingByValue());
+            if (!min.isPresent())
+                return null;
+            K k = min.get().getKey();
+            registry.remove(k);
+            return k;
+        }
+
+        @Override
+        public synchronized K register(K key) {
+            registry.merge(key, 1, Integer::sum);
+            return key;
+        }
+
+        @Override
+        public synchronized void unregister(K k) {
+            registry.remove(k);
+        }
+
+        @Override
+        public boolean containsKey(K key) {
+            return registry.containsKey(key);
+        }
+
+        @Override
+        public synchronized List<K> getHottest(int count) {
+            return registry.entrySet().stream()
+                    .sorted(Map.Entry.<K, Integer>comparingByValue().reversed())
+                    .limit(count)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void saveReport(String reportName) throws IOException {
+        Path perfDir = Paths.get(FileUtils.USER_DIR + SEP + "perf");
+        if (!FileUtils.dirExists(perfDir))
+            Files.createDirectories(perfDir);
+        reportBuilder.save(Paths.get(perfDir.toString() + SEP + reportName + ".txt"));
+    }
+}
@@ -0,0 +1,242 @@
+package testing.performance;
+
+import client.api.Client;
+import ecs.Metadata;
+import management.MessageSerializer;
+import org.junit.Test;
+import protocol.FrameDecoder;
+import protocol.kv.IMessage;
+import protocol.kv.IMessage.Status;
+import protocol.kv.K;
+import protocol.kv.Message;
+import protocol.kv.V;
+import protocol.kv.WireProtocol;
+import server.api.FrontEnd;
+import server.app.Server;
+import server.storage.stats.LatencyHistogram;
+import util.ConnectionExecutor;
+import util.ExecutionMode;
+import util.FileUtils;
+import util.HashUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static util.FileUtils.SEP;
+
+/**
+ * Benchmarks the front ends of the server with many concurrent clients sending GET requests over the loopback
+ * interface. Each client holds its own connection, so the blocking front end runs a thread per client while the
+ * NIO front end serves all of them with its selector thread and workers.
+ * The clients send the serialized messages directly and split the responses with a {@link FrameDecoder} instead of
+ * using {@link client.api.Client}, so that connecting 1000 clients does not request the metadata 1000 times.
+ */
+public class FrontEndPerfTest {
+    private static final int[] NUM_CLIENTS = new int[]{10, 100, 1000};
+    private static final int GETS = 50000;
+    private static final int KEYS = 1000;
+    private static final int SERVICE_PORT = 51000;
+    private static final int ADMIN_PORT = 51100;
+    private static final int PIPELINED_GETS = 20000;
+    private static final int[] PIPELINE_WINDOWS = new int[]{1, 16, 128};
+
+    private ReportBuilder reportBuilder = new ReportBuilder();
+
+    @Test
+    public void test_front_end_throughput() throws InterruptedException, IOException {
+        reportBuilder.insert("gets: " + GETS + " spread over all clients, cached_keys: " + KEYS);
+        reportBuilder.lineSeparator();
+
+        int portOffset = 0;
+        for (FrontEnd frontEnd : FrontEnd.values()) {
+            reportBuilder.insert("front_end: " + frontEnd.getDesc());
+            for (int numClients : NUM_CLIENTS) {
+                Server server = startServer(frontEnd, SERVICE_PORT + portOffset, ADMIN_PORT + portOffset);
+                portOffset++;
+                benchmark(server, numClients);
+                server.shutdown();
+            }
+            reportBuilder.blankLine();
+        }
+        saveReport("front_end_throughput");
+    }
+
+    /**
+     * Runs the blocking front end with a platform thread per connection and with the connection handlers of
+     * {@link ExecutionMode#VIRTUAL}, i.e. virtual threads or, on JVMs without them, the bounded pool
+     */
+    @Test
+    public void test_execution_mode_throughput() throws InterruptedException, IOException {
+        reportBuilder.insert("gets: " + GETS + " spread over all clients, cached_keys: " + KEYS + ", front_end: " + FrontEnd.BLOCKING.getDesc());
+        reportBuilder.lineSeparator();
+
+        int portOffset = 50;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            ConnectionExecutor.setMode(mode);
+            reportBuilder.insert("execution_mode: " + mode.getDesc() + (ConnectionExecutor.isVirtual() ? " (virtual threads)" : ""));
+            for (int numClients : NUM_CLIENTS) {
+                Server server = startServer(FrontEnd.BLOCKING, SERVICE_PORT + portOffset, ADMIN_PORT + portOffset);
+                portOffset++;
+                benchmark(server, numClients);
+                server.shutdown();
+            }
+            reportBuilder.blankLine();
+        }
+        ConnectionExecutor.setMode(ExecutionMode.THREAD);
+        saveReport("execution_mode_throughput");
+    }
+
+    /**
+     * Runs GET requests of a single {@link Client} one after the other and with up to a window of requests in flight
+     * via its asynchronous API
+     */
+    @Test
+    public void test_pipelined_client() throws InterruptedException, IOException {
+        reportBuilder.insert("gets: " + PIPELINED_GETS + " by a single client, cached_keys: " + KEYS);
+        reportBuilder.lineSeparator();
+
+        int portOffset = 80;
+        for (FrontEnd frontEnd : FrontEnd.values()) {
+            reportBuilder.insert("front_end: " + frontEnd.getDesc());
+            Server server = startServer(frontEnd, SERVICE_PORT + portOffset, ADMIN_PORT + portOffset);
+            portOffset++;
+            Client client = new Client("127.0.0.1", server.getServicePort());
+            client.connect();
+
+            Random random = new Random(0);
+            LatencyHistogram latencies = new LatencyHistogram();
+            int errors = 0;
+            Stopwatch sw = new Stopwatch();
+            sw.tick();
+            for (int i = 0; i < PIPELINED_GETS; i++) {
+                long start = System.nanoTime();
+                IMessage response = client.get("key" + random.nextInt(KEYS));
+                latencies.record(System.nanoTime() - start);
+                if (response.getStatus() != Status.GET_SUCCESS)
+                    errors++;
+            }
+            sw.tock();
+            reportPipelined("synchronous", sw, latencies, errors);
+
+            for (int window : PIPELINE_WINDOWS)
+                benchmarkPipelined(client, window);
+            client.disconnect();
+            server.shutdown();
+            reportBuilder.blankLine();
+        }
+        saveReport("pipelined_client");
+    }
+
+    private void benchmarkPipelined(Client client, int window) throws InterruptedException {
+        Random random = new Random(0);
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicInteger errors = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(window);
+        Stopwatch sw = new Stopwatch();
+        sw.tick();
+        for (int i = 0; i < PIPELINED_GETS; i++) {
+            inFlight.acquire();
+            long start = System.nanoTime();
+            client.getAsync("key" + random.nextInt(KEYS)).thenAccept(response -> {
+                latencies.record(System.nanoTime() - start);
+                if (response.getStatus() != Status.GET_SUCCESS)
+                    errors.incrementAndGet();
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(window);
+        sw.tock();
+        reportPipelined("asynchronous, window: " + window, sw, latencies, errors.get());
+    }
+
+    private void reportPipelined(String mode, Stopwatch sw, LatencyHistogram latencies, int errors) {
+        Performance perf = new Performance().withRuntime(sw.getRuntimeInSeconds()).withNumOps(PIPELINED_GETS);
+        reportBuilder.insert(mode + ", throughput (ops/s): " + perf.getThroughput()
+                + ", latency: " + latencies.summarize() + ", errors: " + errors);
+    }
+
+    private Server startServer(FrontEnd frontEnd, int servicePort, int adminPort) throws InterruptedException {
+        String serverId = "perf_frontend_" + frontEnd.getDesc().toLowerCase() + "_" + servicePort;
+        Server server = new Server(serverId, servicePort, adminPort, "ERROR", frontEnd);
+        server.start();
+        while (!server.isRunning())
+            Thread.sleep(10);
+
+        String end = HashUtils.hash("127.0.0.1:" + servicePort);
+        Metadata metadata = new Metadata();
+        metadata.add(serverId, "127.0.0.1", servicePort, HashUtils.increaseHashBy1(end), end);
+        server.initKVServer(metadata, KEYS, "LRU");
+        server.startService();
+        for (int i = 0; i < KEYS; i++)
+            server.getCacheManager().put(new K("key" + i), new V("value" + i), null);
+        return server;
+    }
+
+    private void benchmark(Server server, int numClients) throws InterruptedException {
+        int getsPerClient = GETS / numClients;
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(numClients);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[numClients];
+        for (int c = 0; c < numClients; c++) {
+            final int seed = c;
+            threads[c] = new Thread(() -> {
+                Random random = new Random(seed);
+                FrameDecoder decoder = new FrameDecoder(WireProtocol.SERIALIZED);
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress("127.0.0.1", server.getServicePort()), 5000);
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = socket.getInputStream();
+                    connected.countDown();
+                    go.await();
+                    for (int i = 0; i < getsPerClient; i++) {
+                        byte[] request = MessageSerializer.serialize(new Message(Status.GET, new K("key" + random.nextInt(KEYS))));
+                        long start = System.nanoTime();
+                        out.write(request);
+                        out.flush();
+                        IMessage response = decoder.read(in);
+                        latencies.record(System.nanoTime() - start);
+                        if (response == null || response.getStatus() != Status.GET_SUCCESS)
+                            errors.incrementAndGet();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    errors.incrementAndGet();
+                    connected.countDown();
+                }
+            });
+            threads[c].start();
+        }
+        connected.await();
+        int serverThreads = Thread.activeCount() - numClients;
+
+        Stopwatch sw = new Stopwatch();
+        sw.tick();
+        go.countDown();
+        for (Thread t : threads)
+            t.join();
+        sw.tock();
+
+        Performance perf = new Performance().withRuntime(sw.getRuntimeInSeconds()).withNumOps((long) numClients * getsPerClient);
+        reportBuilder.insert("clients: " + numClients + ", throughput (ops/s): " + perf.getThroughput()
+                + ", latency: " + latencies.summarize() + ", errors: " + errors.get()
+                + ", threads besides clients: " + serverThreads);
+    }
+
+    private void saveReport(String reportName) throws IOException {
+        Path perfDir = Paths.get(FileUtils.USER_DIR + SEP + "perf");
+        if (!FileUtils.dirExists(perfDir))
+            Files.createDirectories(perfDir);
+        reportBuilder.save(Paths.get(perfDir.toString() + SEP + reportName + ".txt"));
+    }
+}
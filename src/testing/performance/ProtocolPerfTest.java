@@ -0,0 +1,156 @@
+package testing.performance;
+
+import ecs.Metadata;
+import org.junit.Test;
+import protocol.Constants;
+import protocol.FrameDecoder;
+import protocol.kv.IMessage;
+import protocol.kv.IMessage.Status;
+import protocol.kv.K;
+import protocol.kv.Message;
+import protocol.kv.V;
+import protocol.kv.WireProtocol;
+import util.FileUtils;
+import util.HashUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static util.FileUtils.SEP;
+
+/**
+ * Benchmarks encoding and decoding the messages of the service port in both {@link WireProtocol}s in-process.
+ * Each case runs {@value #WARM_UP_ROUNDS} rounds to warm up the JIT before it measures, like a JMH benchmark in
+ * average time mode, and reports the time and the bytes allocated per operation as well as the size on the wire.
+ */
+public class ProtocolPerfTest {
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int OPS_PER_ROUND = 20000;
+    private static final int RING_SIZE = 10;
+
+    private ReportBuilder reportBuilder = new ReportBuilder();
+
+    /**
+     * prevents the JIT from eliminating the benchmarked code
+     */
+    private long blackhole;
+
+    @Test
+    public void test_encode_decode() throws IOException {
+        reportBuilder.insert("rounds: " + WARM_UP_ROUNDS + " warm-up + " + MEASURED_ROUNDS + " measured, ops_per_round: " + OPS_PER_ROUND);
+        reportBuilder.lineSeparator();
+
+        for (Map.Entry<String, IMessage> message : createMessages().entrySet()) {
+            reportBuilder.insert("message: " + message.getKey());
+            int ops = message.getValue().getV() != null && message.getValue().getV().get().length() > 10000
+                    ? OPS_PER_ROUND / 20 : OPS_PER_ROUND;
+            for (WireProtocol protocol : WireProtocol.values()) {
+                byte[] encoded = protocol.encode(message.getValue());
+                double[] encode = measure(ops, () -> blackhole += protocol.encode(message.getValue()).length);
+                double[] decode = measure(ops, () -> blackhole += protocol.decode(encoded).getStatus().ordinal());
+                reportBuilder.insert(String.format("%-10s bytes: %7d, encode: %9.0f ns/op %9.0f B/op, decode: %9.0f ns/op %9.0f B/op",
+                        protocol.getDesc(), encoded.length, encode[0], encode[1], decode[0], decode[1]));
+            }
+            reportBuilder.blankLine();
+        }
+        saveReport("protocol_encode_decode");
+    }
+
+    /**
+     * Receives a GET request the way the connections did before, with a read into a new buffer of
+     * {@link Constants#MAX_BUFFER_LENGTH} bytes per message, and with a {@link FrameDecoder} on pooled buffers
+     */
+    @Test
+    public void test_receive() throws IOException {
+        reportBuilder.insert("rounds: " + WARM_UP_ROUNDS + " warm-up + " + MEASURED_ROUNDS + " measured, ops_per_round: " + OPS_PER_ROUND);
+        reportBuilder.lineSeparator();
+
+        IMessage request = new Message(Status.GET, new K("key12345"));
+        for (WireProtocol protocol : WireProtocol.values()) {
+            byte[] encoded = protocol.encode(request);
+            ByteArrayInputStream in = new ByteArrayInputStream(encoded);
+            FrameDecoder decoder = new FrameDecoder(protocol);
+            double[] single = measure(OPS_PER_ROUND, () -> {
+                in.reset();
+                byte[] buffer = new byte[Constants.MAX_BUFFER_LENGTH];
+                int read = in.read(buffer, 0, buffer.length);
+                blackhole += protocol.decode(Arrays.copyOfRange(buffer, 0, read)).getStatus().ordinal();
+            });
+            double[] framed = measure(OPS_PER_ROUND, () -> {
+                in.reset();
+                try {
+                    blackhole += decoder.<IMessage>read(in).getStatus().ordinal();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            reportBuilder.insert(String.format("%-10s single read: %9.0f ns/op %9.0f B/op, frame decoder: %9.0f ns/op %9.0f B/op",
+                    protocol.getDesc(), single[0], single[1], framed[0], framed[1]));
+        }
+        saveReport("protocol_receive");
+    }
+
+    private Map<String, IMessage> createMessages() {
+        Map<String, IMessage> messages = new LinkedHashMap<>();
+        messages.put("GET request", new Message(Status.GET, new K("key12345")));
+        messages.put("PUT request, 1 KB value", new Message(Status.PUT, new K("key12345"), new V(value(1024))));
+        messages.put("GET_SUCCESS response, 100 KB value", new Message(Status.GET_SUCCESS, new K("key12345"), new V(value(100 * 1024))));
+
+        Metadata metadata = new Metadata();
+        String[] hashes = new String[RING_SIZE];
+        for (int i = 0; i < RING_SIZE; i++)
+            hashes[i] = HashUtils.hash("127.0.0.1:" + (50000 + i));
+        Arrays.sort(hashes);
+        for (int i = 0; i < RING_SIZE; i++)
+            metadata.add("node" + i, "127.0.0.1", 50000 + i,
+                    HashUtils.increaseHashBy1(hashes[(i - 1 + RING_SIZE) % RING_SIZE]), hashes[i]);
+        messages.put("SERVER_NOT_RESPONSIBLE response, " + RING_SIZE + " nodes", new Message(Status.SERVER_NOT_RESPONSIBLE, metadata));
+        return messages;
+    }
+
+    private static String value(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) ('a' + i % 26);
+        return new String(chars);
+    }
+
+    /**
+     * @return mean time in ns and mean bytes allocated per operation of the measured rounds
+     */
+    private double[] measure(int ops, Runnable op) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            for (int i = 0; i < ops; i++)
+                op.run();
+        }
+        Stopwatch sw = new Stopwatch();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        sw.tick();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            for (int i = 0; i < ops; i++)
+                op.run();
+        }
+        sw.tock();
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        long totalOps = (long) MEASURED_ROUNDS * ops;
+        return new double[]{sw.getRuntimeInMiliseconds() * 1000000 / totalOps, (double) allocated / totalOps};
+    }
+
+    private void saveReport(String reportName) throws IOException {
+        Path perfDir = Paths.get(FileUtils.USER_DIR + SEP + "perf");
+        if (!FileUtils.dirExists(perfDir))
+            Files.createDirectories(perfDir);
+        reportBuilder.save(Paths.get(perfDir.toString() + SEP + reportName + ".txt"));
+    }
+}
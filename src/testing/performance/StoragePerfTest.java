@@ -0,0 +1,71 @@
+package testing.performance;
+
+import org.junit.Test;
+import protocol.kv.K;
+import server.storage.disk.IPersistenceManager;
+import server.storage.disk.PersistenceManager;
+import util.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static util.FileUtils.SEP;
+
+/**
+ * Benchmarks the storage layer of a single server in-process, i.e. without network and serialization overhead
+ */
+public class StoragePerfTest {
+    private static final String DB_DIR = "perf_storage";
+
+    private static final int PUTS_PER_THREAD = 2000;
+    private static final int[] NUM_THREADS = new int[]{1, 4, 16, 64};
+
+    private ReportBuilder reportBuilder = new ReportBuilder();
+
+    @Test
+    public void test_put_contention() throws InterruptedException, IOException {
+        reportBuilder.insert("puts_per_thread: " + PUTS_PER_THREAD);
+        reportBuilder.lineSeparator();
+
+        for (int numThreads : NUM_THREADS) {
+            IPersistenceManager pm = new PersistenceManager(DB_DIR + SEP + "contention_" + numThreads);
+            byte[] value = new byte[1024];
+
+            Thread[] threads = new Thread[numThreads];
+            for (int t = 0; t < numThreads; t++) {
+                final int thread = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < PUTS_PER_THREAD; i++) {
+                        K key = new K("key_" + thread + "_" + i);
+                        pm.write(FileUtils.buildPath(pm.getDbPath(), key.getHashed(), key.getByteString()), value);
+                    }
+                });
+            }
+
+            Stopwatch sw = new Stopwatch();
+            sw.tick();
+            for (Thread t : threads)
+                t.start();
+            for (Thread t : threads)
+                t.join();
+            sw.tock();
+            pm.close();
+
+            Performance perf = new Performance().withRuntime(sw.getRuntimeInSeconds()).withNumOps((long) numThreads * PUTS_PER_THREAD);
+            reportBuilder.insert("threads: " + numThreads);
+            reportBuilder.insert("run_time (s): " + perf.getRuntime());
+            reportBuilder.insert("throughput (ops/s): " + perf.getThroughput());
+            reportBuilder.blankLine();
+        }
+        saveReport("put_contention_" + PersistenceManager.class.getSimpleName());
+    }
+
+    private void saveReport(String reportName) throws IOException {
+        Path perfDir = Paths.get(FileUtils.USER_DIR + SEP + "perf");
+        if (!FileUtils.dirExists(perfDir))
+            Files.createDirectories(perfDir);
+        reportBuilder.save(Paths.get(perfDir.toString() + SEP + reportName + ".txt"));
+    }
+}
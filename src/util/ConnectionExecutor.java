@@ -0,0 +1,173 @@
+package util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the handlers of connections, i.e. tasks that block on a socket for as long as the connection lasts, in the
+ * {@link ExecutionMode} of the process. Long-living listeners such as the accept loops keep their own threads.
+ * The mode is taken from the system property {@value #MODE_PROPERTY} unless set explicitly, e.g. by the server
+ * from its arguments, and defaults to {@link ExecutionMode#THREAD}.
+ * Virtual threads are created via reflection, as the code base targets Java 8. On JVMs without them, client
+ * connections are handled by a pool of at most {@value #MAX_POOLED_THREADS} platform threads, so that they do not
+ * exhaust the memory. Connections beyond that number are rejected rather than queued, as a queued handler would only
+ * run once another connection closes.
+ * Handlers of internal connections, i.e. those of the ECS, other servers, MapReduce and the response readers of the
+ * client, are run via
+ * {@link #executeInternal(Runnable)} instead, which never rejects them, so that clients cannot lock out the ECS.
+ * Replication, data transfers and MapReduce PUTs of other servers arrive on the service port like clients do, so a
+ * rejected service port connection gets another chance on one of at most {@value #MAX_RESERVED_THREADS} threads
+ * reserved for them ({@link #executeReserved(Runnable)}), which only serves it if it turns out to be internal.
+ */
+public class ConnectionExecutor {
+    private static Logger LOG = LogManager.getLogger(ConnectionExecutor.class);
+
+    public static final String MODE_PROPERTY = "kv.execution";
+    private static final int MAX_POOLED_THREADS = 512;
+    private static final int MAX_RESERVED_THREADS = 64;
+    private static final long POOLED_THREAD_KEEP_ALIVE_S = 60;
+
+    private static ExecutionMode mode;
+
+    /**
+     * runs the handlers in mode {@link ExecutionMode#VIRTUAL}, null in mode {@link ExecutionMode#THREAD}
+     */
+    private static ExecutorService executor;
+
+    /**
+     * runs the handlers of service port connections that {@link #execute(Runnable)} rejected
+     */
+    private static final ExecutorService reserve = createPool("connection-reserve-", MAX_RESERVED_THREADS);
+
+    static {
+        ExecutionMode configured = ExecutionMode.getByName(System.getProperty(MODE_PROPERTY));
+        setMode(configured == null ? ExecutionMode.THREAD : configured);
+    }
+
+    private ConnectionExecutor() {
+    }
+
+    /**
+     * Runs the handler of a client connection. Failures are logged, as nobody may wait for the returned future
+     *
+     * @param task the handler
+     * @return future to wait for the handler to finish
+     * @throws RejectedExecutionException if all {@value #MAX_POOLED_THREADS} pooled threads are busy
+     */
+    public static Future<?> execute(Runnable task) {
+        ExecutorService current;
+        synchronized (ConnectionExecutor.class) {
+            current = executor;
+        }
+        return execute(task, current);
+    }
+
+    /**
+     * Runs the handler of a service port connection that {@link #execute(Runnable)} rejected, on the threads reserved
+     * for internal connections. The handler must find out quickly whether the connection is internal and close it
+     * otherwise, so that clients do not occupy the reserve
+     *
+     * @param task the handler
+     * @return future to wait for the handler to finish
+     * @throws RejectedExecutionException if all {@value #MAX_RESERVED_THREADS} reserved threads are busy as well
+     */
+    public static Future<?> executeReserved(Runnable task) {
+        return execute(task, reserve);
+    }
+
+    /**
+     * Runs the handler of an internal connection like {@link #execute(Runnable)}, but on a virtual thread or a new
+     * platform thread of its own, so that it is never rejected or kept waiting by client connections
+     *
+     * @param task the handler
+     * @return future to wait for the handler to finish
+     */
+    public static Future<?> executeInternal(Runnable task) {
+        ExecutorService current;
+        synchronized (ConnectionExecutor.class) {
+            current = isVirtual() ? executor : null;
+        }
+        return execute(task, current);
+    }
+
+    /**
+     * @param executor executor to run the handler in, null to start a new platform thread
+     */
+    private static Future<?> execute(Runnable task, ExecutorService executor) {
+        Runnable logged = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                LOG.error("Connection handler failed", e);
+                throw e;
+            }
+        };
+        if (executor != null)
+            return executor.submit(logged);
+        FutureTask<?> future = new FutureTask<>(logged, null);
+        new Thread(future).start();
+        return future;
+    }
+
+    /**
+     * Sets how connection handlers are run from now on. Handlers already running are not affected
+     *
+     * @param mode the mode
+     */
+    public static synchronized void setMode(ExecutionMode mode) {
+        if (mode == ConnectionExecutor.mode)
+            return;
+        if (executor != null)
+            executor.shutdown();
+        executor = (mode == ExecutionMode.VIRTUAL) ? createVirtualExecutor() : null;
+        ConnectionExecutor.mode = mode;
+    }
+
+    public static synchronized ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return true if connection handlers currently run on virtual threads
+     */
+    public static synchronized boolean isVirtual() {
+        return executor != null && !(executor instanceof ThreadPoolExecutor);
+    }
+
+    private static ExecutorService createVirtualExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            ThreadFactory factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+            ExecutorService virtual = (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+            LOG.info("Running connection handlers on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.info("Virtual threads are not supported by this JVM. Running client connection handlers in a pool of at "
+                    + "most " + MAX_POOLED_THREADS + " threads");
+            return createPool("connection-", MAX_POOLED_THREADS);
+        }
+    }
+
+    private static ExecutorService createPool(String threadName, int maxThreads) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(0, maxThreads,
+                POOLED_THREAD_KEEP_ALIVE_S, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+            Thread thread = new Thread(task, threadName + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
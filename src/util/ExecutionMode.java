@@ -0,0 +1,38 @@
+package util;
+
+/**
+ * How the {@link ConnectionExecutor} runs the handlers of connections
+ */
+public enum ExecutionMode {
+    /**
+     * a new platform thread per connection
+     */
+    THREAD("THREAD"),
+
+    /**
+     * a virtual thread per connection if the JVM supports them, otherwise a bounded pool of platform threads
+     */
+    VIRTUAL("VIRTUAL");
+
+    private String desc;
+
+    ExecutionMode(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    /**
+     * @param name name of the mode, case insensitive
+     * @return the mode or null if there is none with that name
+     */
+    public static ExecutionMode getByName(String name) {
+        for (ExecutionMode mode : values()) {
+            if (mode.desc.equalsIgnoreCase(name))
+                return mode;
+        }
+        return null;
+    }
+}